@@ -4,14 +4,21 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 
+import lejos.nxt.Battery;
 import lejos.nxt.Button;
 import lejos.nxt.ButtonListener;
 import lejos.nxt.comm.Bluetooth;
 import lejos.nxt.comm.NXTConnection;
+import lejos.robotics.navigation.Pose;
+import lejos.util.Delay;
 import nxt.brick.Movement;
+import reallejos.shared.RobotFrame;
 import reallejos.shared.RobotOpcode;
+import reallejos.shared.RobotStatus;
 
 public class BrickCommClient {
+	// How often the status is sent while no commands are arriving
+	private static final int STATUS_INTERVAL = 100;
 
 	NXTConnection connection;
 	DataInputStream pcInput;
@@ -21,6 +28,14 @@ public class BrickCommClient {
 	boolean movingForwards = false, movingBackwards = false;
 	int turnRadius = 0;
 
+	// The number of frames carried out on this connection, and whether the
+	// last of them couldn't be made sense of, both guarded by this
+	private int framesDone = 0;
+	private boolean lastFrameFailed = false;
+	// Whether the frame being handled has hit something it can't make sense
+	// of
+	private boolean frameFailed = false;
+
 	public BrickCommClient(RobotController rc) {
 		this.rc = rc;
 	}
@@ -36,6 +51,49 @@ public class BrickCommClient {
 		this.connection.close();
 	}
 
+	/**
+	 * Sends the status to the PC. Called from both the controller and the
+	 * status thread.
+	 */
+	private void sendStatus() throws IOException {
+		Movement movement = this.rc.getMovementController();
+		Pose pose = movement.getPose();
+		int framesDone;
+		boolean failed;
+		synchronized (this) {
+			framesDone = this.framesDone;
+			failed = this.lastFrameFailed;
+		}
+		RobotStatus status = new RobotStatus(framesDone, pose.getX(),
+				pose.getY(), pose.getHeading(), movement.isMoving(),
+				movement.kickerIsDown, Battery.getVoltageMilliVolt(), failed);
+		synchronized (this.pcOutput) {
+			RobotFrame.writeHeader(this.pcOutput,
+					1 + RobotFrame.argumentSize(RobotOpcode.STATUS));
+			status.write(this.pcOutput);
+			this.pcOutput.flush();
+		}
+	}
+
+	/**
+	 * Sends the status every STATUS_INTERVAL, so the PC sees motions finish
+	 */
+	private class StatusThread extends Thread {
+		volatile boolean running = true;
+
+		@Override
+		public void run() {
+			try {
+				while (running) {
+					sendStatus();
+					Delay.msDelay(STATUS_INTERVAL);
+				}
+			} catch (IOException e) {
+				// The controller finds out about the connection too
+			}
+		}
+	}
+
 	private void handleStop() {
 		this.rc.getMovementController().stop();
 		this.movingForwards = false;
@@ -57,7 +115,7 @@ public class BrickCommClient {
 	}
 
 	private void handleKick() throws IOException {
-		int speed = this.pcInput.readInt();
+		int speed = this.pcInput.readUnsignedByte();
 		this.rc.getMovementController().kick(speed);
 	}
 
@@ -68,122 +126,213 @@ public class BrickCommClient {
 			this.rc.getMovementController().rotateLeft();
 	}
 
-	private void handleRotateBy() throws IOException {
-		int angle = this.pcInput.readInt();
-		double speed = this.pcInput.readDouble();
+	// The motions of a sequence finish before its next step starts, so
+	// they return straight away only outside one
+
+	private void handleRotateBy(boolean inSequence) throws IOException {
+		int angle = this.pcInput.readShort();
+		double speed = RobotFrame.readFixed(this.pcInput);
 		boolean immediateReturn = this.pcInput.readBoolean();
 		this.rc.getMovementController().setRotateSpeed(speed);
-		this.rc.getMovementController().rotate(angle, immediateReturn);
+		this.rc.getMovementController().rotate(angle,
+				immediateReturn && !inSequence);
 	}
 
-	private void handleArcForwards() throws IOException {
-		double radius = this.pcInput.readDouble();
-		int distance = this.pcInput.readInt();
-		int speed = this.pcInput.readInt();
+	private void handleArcForwards(boolean inSequence) throws IOException {
+		double radius = this.pcInput.readShort();
+		int distance = this.pcInput.readShort();
+		int speed = this.pcInput.readShort();
 		this.rc.getMovementController().setTravelSpeed(speed);
-		this.rc.getMovementController().travelArc(radius, distance, true);
+		this.rc.getMovementController().travelArc(radius, distance,
+				!inSequence);
 	}
 
-	private void handleTravel() throws IOException {
-		int distance = this.pcInput.readInt();
-		int speed = this.pcInput.readInt();
+	private void handleTravel(boolean inSequence) throws IOException {
+		int distance = this.pcInput.readShort();
+		int speed = this.pcInput.readShort();
 		this.rc.getMovementController().setTravelSpeed(speed);
-		this.rc.getMovementController().travel(distance, true);
+		this.rc.getMovementController().travel(distance, !inSequence);
 	}
 	
 	private void handleResetCatcher() throws IOException {
 		this.rc.getMovementController().resetCatcher();
 	}
 
+	private void handleWait() throws IOException {
+		int millis = this.pcInput.readShort();
+		if (millis > 0)
+			Delay.msDelay(millis);
+	}
+
+	// The test commands are answered by the status sent after their frame
+
 	private void handleTest() throws IOException {
-		this.pcOutput.writeBoolean(true);
-		this.pcOutput.flush();
 	}
 
 	@SuppressWarnings("unused")
 	private void handleTestINT() throws IOException {
-		this.pcOutput.writeBoolean(true);
-		this.pcOutput.flush();
 		int test = this.pcInput.readInt();
 	}
 
 	@SuppressWarnings("unused")
 	private void handleTestDOUBLE() throws IOException {
-		this.pcOutput.writeBoolean(true);
-		this.pcOutput.flush();
 		double test = this.pcInput.readDouble();
 	}
 
 	@SuppressWarnings("unused")
 	private void handleTestINTANDDOUBLE() throws IOException {
-		this.pcOutput.writeBoolean(true);
-		this.pcOutput.flush();
 		int testINT = this.pcInput.readInt();
 		double testDOUBLE = this.pcInput.readDouble();
 	}
 
+	/**
+	 * Carries out a command whose opcode has just been read
+	 * 
+	 * @param inSequence
+	 *            Whether the command is a step of a sequence
+	 * @return false if the PC has quit
+	 */
+	private boolean handleCommand(int opcode, int size, boolean inSequence)
+			throws IOException {
+		switch (opcode) {
+		case RobotOpcode.STOP:
+			handleStop();
+			break;
+		case RobotOpcode.FORWARDS:
+			handleForwards();
+			break;
+		case RobotOpcode.BACKWARDS:
+			handleBackwards();
+			break;
+		case RobotOpcode.KICK:
+			handleKick();
+			break;
+		case RobotOpcode.ROTATE_LEFT:
+			handleRotate(false);
+			break;
+		case RobotOpcode.ROTATE_RIGHT:
+			handleRotate(true);
+			break;
+		case RobotOpcode.ARC_FORWARDS:
+			handleArcForwards(inSequence);
+			break;
+		case RobotOpcode.ROTATE_BY:
+			handleRotateBy(inSequence);
+			break;
+		case RobotOpcode.TRAVEL:
+			handleTravel(inSequence);
+			break;
+		case RobotOpcode.CATCH:
+			handleCatch();
+			break;
+		case RobotOpcode.RESET_CATCHER:
+			handleResetCatcher();
+			break;
+		case RobotOpcode.TEST:
+			handleTest();
+			break;
+		case RobotOpcode.TESTINT:
+			handleTestINT();
+			break;
+		case RobotOpcode.TESTDOUBLE:
+			handleTestDOUBLE();
+			break;
+		case RobotOpcode.TESTINTANDDOUBLE:
+			handleTestINTANDDOUBLE();
+			break;
+		case RobotOpcode.WAIT:
+			handleWait();
+			break;
+
+		case RobotOpcode.QUIT:
+			return false;
+		default:
+			// Known to the protocol but not a command, such as STATUS, so
+			// its arguments are skipped to keep the rest of the frame in step
+			System.err.println("Unexpected opcode");
+			this.frameFailed = true;
+			skip(size);
+			break;
+		}
+		return true;
+	}
+
+	/**
+	 * Reads and carries out commands until length bytes have been read. The
+	 * steps of a sequence are carried out straight away, before anything
+	 * after the sequence is read. If the commands can't be made sense of, the
+	 * rest are skipped and the frame is marked as failed.
+	 * 
+	 * @param inSequence
+	 *            Whether the commands are the steps of a sequence
+	 * @return false if the PC has quit
+	 */
+	private boolean handleCommands(int length, boolean inSequence)
+			throws IOException {
+		while (length > 0) {
+			int opcode = this.pcInput.readUnsignedByte();
+			int size = RobotFrame.argumentSize(opcode);
+			length--;
+			if (size < 0 || size > length) {
+				// The rest can't be made sense of
+				System.err.println("Unknown opcode");
+				this.frameFailed = true;
+				skip(length);
+				return true;
+			}
+			length -= size;
+
+			if (opcode == RobotOpcode.SEQUENCE) {
+				int steps = this.pcInput.readUnsignedByte();
+				if (steps > length) {
+					System.err.println("Bad sequence");
+					this.frameFailed = true;
+					skip(length);
+					return true;
+				}
+				length -= steps;
+				if (!handleCommands(steps, true))
+					return false;
+			} else if (!handleCommand(opcode, size, inSequence)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void skip(int length) throws IOException {
+		for (; length > 0; length--)
+			this.pcInput.readByte();
+	}
+
 	public void runController() {
+		StatusThread statusThread = new StatusThread();
+		statusThread.setDaemon(true);
 		try {
 			System.out.println("Controller ready");
+			synchronized (this) {
+				this.framesDone = 0;
+				this.lastFrameFailed = false;
+			}
+			statusThread.start();
 			while (true) {
-				int opcode = this.pcInput.readInt();
-
-				switch (opcode) {
-				case RobotOpcode.STOP:
-					handleStop();
-					break;
-				case RobotOpcode.FORWARDS:
-					handleForwards();
-					break;
-				case RobotOpcode.BACKWARDS:
-					handleBackwards();
-					break;
-				case RobotOpcode.KICK:
-					handleKick();
-					break;
-				case RobotOpcode.ROTATE_LEFT:
-					handleRotate(false);
-					break;
-				case RobotOpcode.ROTATE_RIGHT:
-					handleRotate(true);
-					break;
-				case RobotOpcode.ARC_FORWARDS:
-					handleArcForwards();
-					break;
-				case RobotOpcode.ROTATE_BY:
-					handleRotateBy();
-					break;
-				case RobotOpcode.TRAVEL:
-					handleTravel();
-					break;
-				case RobotOpcode.CATCH:
-					handleCatch();
-					break;
-				case RobotOpcode.RESET_CATCHER:
-					handleResetCatcher();
-					break;
-				case RobotOpcode.TEST:
-					handleTest();
-					break;
-				case RobotOpcode.TESTINT:
-					handleTestINT();
-					break;
-				case RobotOpcode.TESTDOUBLE:
-					handleTestDOUBLE();
-					break;
-				case RobotOpcode.TESTINTANDDOUBLE:
-					handleTestINTANDDOUBLE();
-					break;
-
-				case RobotOpcode.QUIT:
+				// Each frame can hold several commands
+				int length = RobotFrame.readHeader(this.pcInput);
+				this.frameFailed = false;
+				if (!handleCommands(length, false))
 					return;
-				default:
-					System.err.println("Unknown opcode");
-					break;
+				// Failed frames are counted too, so that the PC can tell
+				// which frame failed and the frames after it still match
+				synchronized (this) {
+					this.framesDone++;
+					this.lastFrameFailed = this.frameFailed;
 				}
+				sendStatus();
 			}
 		} catch (IOException e) {
 			System.out.println("I/O Exception");
+		} finally {
+			statusThread.running = false;
 		}
 		Movement.floatWheels();
 	}
@@ -4,7 +4,9 @@ import lejos.nxt.Motor;
 import lejos.nxt.MotorPort;
 import lejos.nxt.NXTMotor;
 import lejos.nxt.NXTRegulatedMotor;
+import lejos.robotics.localization.OdometryPoseProvider;
 import lejos.robotics.navigation.DifferentialPilot;
+import lejos.robotics.navigation.Pose;
 import lejos.util.Delay;
 
 /**
@@ -35,8 +37,12 @@ public class Movement extends DifferentialPilot {
 
 	private static volatile boolean isKicking = false;
 
+	// Tracks the pose from the pilot's moves, for reporting to the PC
+	private final OdometryPoseProvider odometry;
+
 	public Movement(double trackWidth) {
 		super(TYRE_DIAMETER, trackWidth, LEFT_WHEEL, RIGHT_WHEEL);
+		odometry = new OdometryPoseProvider(this);
 		floatWheels();
 		resetCatcher();
 	}
@@ -98,6 +104,14 @@ public class Movement extends DifferentialPilot {
 		}
 	}
 	
+	/**
+	 * Gets the pose worked out from the wheels since start up, in
+	 * millimetres and degrees
+	 */
+	public Pose getPose() {
+		return odometry.getPose();
+	}
+
 	public boolean isReady() {
 		return true;
 	}
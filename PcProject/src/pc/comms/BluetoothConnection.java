@@ -154,8 +154,15 @@ public class BluetoothConnection {
     	
     }
     
+    /**
+     * This connection's protocol has no way for the robot to report its
+     * state, so this is always false.
+     * 
+     * @deprecated Use {@link BrickCommServer#getStatus()}, which the brick
+     *             keeps up to date
+     */
+    @Deprecated
     public boolean isMoving() {
-        // TODO Auto-generated method stub
         return false;
 }
 }
@@ -1,54 +1,154 @@
 package pc.comms;
 
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
 
-import lejos.pc.comm.NXTComm;
 import lejos.pc.comm.NXTCommException;
-import lejos.pc.comm.NXTCommFactory;
 import lejos.pc.comm.NXTInfo;
+import pc.logging.FrameTiming;
+import reallejos.shared.RobotFrame;
 import reallejos.shared.RobotOpcode;
+import reallejos.shared.RobotStatus;
 
 public class BrickCommServer {
-	NXTComm comm;
+	// How long to wait for the brick to carry out a test command
+	private static final long TEST_TIMEOUT = 5000;
+
+	BrickTransport transport;
 	DataInputStream brickInput;
 	DataOutputStream brickOutput;
 	private boolean connected;
 
-	private ExecutorService executor;
-	private List<StateChangeListener> stateChangeListeners;
-	
-	private final static ThreadFactory EXECUTOR_FACTORY = new ThreadFactory() {
-		
+	// Commands waiting for the sender thread
+	private final CommandQueue queue = new CommandQueue(
+			CommandQueue.DEFAULT_CAPACITY);
+	private final Thread sender = new Thread("BrickCommServer sender") {
 		@Override
-		public Thread newThread(Runnable runnable) {
-			Thread t = new Thread(runnable, "BrickCommServer executor");
-			t.setDaemon(true);
-			return t;
+		public void run() {
+			try {
+				while (true) {
+					CommandQueue.Entry entry = queue.take();
+					try {
+						if (send(entry))
+							queue.sent(entry);
+						else
+							queue.failed(entry);
+					} catch (RuntimeException e) {
+						// One bad frame mustn't stop every later command
+						System.err.println("Couldn't send commands: " + e);
+						e.printStackTrace();
+						queue.failed(entry);
+					}
+				}
+			} catch (InterruptedException e) {
+				// Shutting down
+			}
 		}
 	};
-
+	private List<StateChangeListener> stateChangeListeners;
+	// The latest frame strategies have decided on, which commands sent from
+	// now on are taken to come from
+	private volatile FrameTiming frameTiming;
+	// A moving average of the time it takes to send a frame of commands
+	private volatile long meanSendNanos;
+	// Held while writing a frame to the brick
+	private final Object outputLock = new Object();
+	// The number of frames sent on this connection, and the bytes in them,
+	// only changed while holding outputLock
+	private volatile int framesSent;
+	private volatile long bytesSent;
+	// The latest status from the brick, notified when it changes
+	private final Object statusLock = new Object();
+	private volatile RobotStatus status;
+	// The number of frames the brick has reported it couldn't carry out
+	private volatile int framesFailed;
+	
 	public BrickCommServer() {
 		stateChangeListeners = new ArrayList<BrickCommServer.StateChangeListener>();
 		connected = false;
-		executor = Executors.newSingleThreadExecutor(EXECUTOR_FACTORY);
+		sender.setDaemon(true);
+		sender.start();
 	}
 
 	public void connect(NXTInfo brickInfo) throws NXTCommException {
-		comm = NXTCommFactory.createNXTComm(brickInfo.protocol);
-		if (!comm.open(brickInfo))
-			return;
-		brickInput = new DataInputStream(comm.getInputStream());
-		brickOutput = new DataOutputStream(comm.getOutputStream());
+		NXTTransport transport = NXTTransport.open(brickInfo);
+		if (transport != null)
+			connect(transport);
+	}
+
+	/**
+	 * Starts talking to a brick over a connection that is already open
+	 */
+	public void connect(BrickTransport transport) {
+		this.transport = transport;
+		synchronized (outputLock) {
+			brickInput = new DataInputStream(transport.getInputStream());
+			brickOutput = new DataOutputStream(transport.getOutputStream());
+			framesSent = 0;
+			bytesSent = 0;
+		}
+		status = null;
+		framesFailed = 0;
+		final DataInputStream input = brickInput;
+		Thread reader = new Thread("BrickCommServer reader") {
+			@Override
+			public void run() {
+				read(input);
+			}
+		};
+		reader.setDaemon(true);
+		reader.start();
 		setConnected(true);
 	}
 
+	/**
+	 * Reads the status frames the brick sends until the connection closes
+	 */
+	private void read(DataInputStream input) {
+		try {
+			while (true) {
+				int length = RobotFrame.readHeader(input);
+				while (length > 0) {
+					int opcode = input.readUnsignedByte();
+					int size = RobotFrame.argumentSize(opcode);
+					length--;
+					if (opcode != RobotOpcode.STATUS || size > length) {
+						System.err.println("Unexpected opcode from brick: "
+								+ opcode);
+						input.skipBytes(length);
+						break;
+					}
+					length -= size;
+					RobotStatus received = RobotStatus.read(input);
+					// Every status repeats the flag until the next frame is
+					// done, so only the first report of a frame counts
+					RobotStatus previous = status;
+					if (received.failed
+							&& (previous == null || !previous.failed
+									|| previous.acknowledged != received.acknowledged)) {
+						framesFailed++;
+						System.err.println("Brick couldn't carry out frame "
+								+ received.acknowledged);
+					}
+					synchronized (statusLock) {
+						status = received;
+						statusLock.notifyAll();
+					}
+				}
+			}
+		} catch (IOException e) {
+			// Only a problem if the connection wasn't closed on purpose
+			if (input == brickInput) {
+				e.printStackTrace();
+				close();
+			}
+		}
+	}
+
 	public boolean isConnected() {
 		return connected;
 	}
@@ -64,15 +164,15 @@ public class BrickCommServer {
 	}
 
 	public void close() {
+		brickInput = null;
+		brickOutput = null;
 		try {
-			if (comm != null)
-				comm.close();
+			if (transport != null)
+				transport.close();
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 		
-		brickInput = null;
-		brickOutput = null;
 		setConnected(false);
 	}
 	
@@ -85,32 +185,192 @@ public class BrickCommServer {
 	}
 
 	/**
-	 * Executes a command asynchronously. Returns immediately and is safe to
-	 * call from any thread.
+	 * Sets the frame that strategies have most recently decided on, so that
+	 * the latency from that frame to commands being sent can be recorded
 	 */
-	public void execute(final RobotCommand.Command command) {
-		executor.execute(new Runnable() {
+	public void setFrameTiming(FrameTiming frameTiming) {
+		this.frameTiming = frameTiming;
+	}
 
-			@Override
-			public void run() {
-				BrickCommServer.this.executeSync(command);
+	/**
+	 * Gets a moving average of the time it takes to send a frame of commands
+	 * and flush it to the brick, in nanoseconds
+	 */
+	public long getMeanSendNanos() {
+		return meanSendNanos;
+	}
+
+	/**
+	 * Gets the latest status the brick has sent, or null if it hasn't sent
+	 * one since connecting
+	 */
+	public RobotStatus getStatus() {
+		return status;
+	}
+
+	/**
+	 * Checks whether the brick is still carrying out commands it has been
+	 * sent, or is moving. Always false if the brick hasn't sent its status.
+	 */
+	public boolean isBusy() {
+		RobotStatus status = this.status;
+		return status != null
+				&& (status.moving || !status.hasAcknowledged(framesSent));
+	}
+
+	/**
+	 * Gets the number of frames sent since connecting. Once a frame has been
+	 * sent, this is its number for waitForAcknowledgement.
+	 */
+	public int getFramesSent() {
+		return framesSent;
+	}
+
+	/**
+	 * Gets the number of frames the brick has reported it couldn't make
+	 * sense of since connecting. Such frames are still acknowledged.
+	 */
+	public int getFramesFailed() {
+		return framesFailed;
+	}
+
+	/**
+	 * Gets the number of bytes sent since connecting
+	 */
+	public long getBytesSent() {
+		return bytesSent;
+	}
+
+	/**
+	 * Waits until the brick has carried out a frame
+	 * 
+	 * @param frame
+	 *            The number of frames sent up to and including the frame
+	 * @return false if it wasn't carried out within the timeout. A frame the
+	 *         brick couldn't make sense of counts as carried out; see
+	 *         getFramesFailed.
+	 */
+	public boolean waitForAcknowledgement(int frame, long timeoutMillis)
+			throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		synchronized (statusLock) {
+			while (status == null || !status.hasAcknowledged(frame)) {
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0)
+					return false;
+				statusLock.wait(remaining);
 			}
-		});
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the queue of commands waiting to be sent, for its statistics
+	 */
+	public CommandQueue getQueue() {
+		return queue;
+	}
+
+	/**
+	 * Executes commands asynchronously. Returns immediately and is safe to
+	 * call from any thread. Commands given together are sent together, in
+	 * order; a single motion command replaces any motion commands still
+	 * waiting to be sent since the last kick or catch.
+	 * 
+	 * @return false if the commands were rejected because the queue is full
+	 *         of kicks, catches and sequences, which are never dropped
+	 * @throws IllegalArgumentException
+	 *             if the commands don't fit in one frame, or a sequence
+	 *             among them is too long
+	 */
+	public boolean execute(RobotCommand.Command... commands) {
+		return queue.put(createEntry(commands));
+	}
+
+	/**
+	 * Executes commands synchronously, waiting until they have been sent or
+	 * replaced by newer commands. Never call this method from GUI or frame
+	 * grabber thread!
+	 * 
+	 * @return false if the commands were rejected, as for execute
+	 * @throws IllegalArgumentException
+	 *             as for execute
+	 */
+	public boolean executeSync(RobotCommand.Command... commands) {
+		CommandQueue.Entry entry = createEntry(commands);
+		if (!queue.put(entry))
+			return false;
+		try {
+			queue.waitFor(entry);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return true;
+	}
+
+	/**
+	 * Waits until every command executed so far has been sent, or replaced
+	 * by newer commands
+	 */
+	public void waitUntilSent() throws InterruptedException {
+		queue.waitUntilEmpty();
+	}
+
+	/**
+	 * Encodes the commands into a frame on the caller's thread, so that a
+	 * frame that can't be sent is reported to whoever asked for it
+	 */
+	private CommandQueue.Entry createEntry(RobotCommand.Command[] commands) {
+		ByteArrayOutputStream frame = new ByteArrayOutputStream();
+		try {
+			DataOutputStream frameOutput = new DataOutputStream(frame);
+			for (RobotCommand.Command command : commands)
+				command.sendToBrick(frameOutput);
+		} catch (IOException e) {
+			// Writing to memory never fails
+			throw new IllegalStateException(e);
+		}
+		if (frame.size() > RobotFrame.MAX_LENGTH)
+			throw new IllegalArgumentException("Commands too long for a frame: "
+					+ frame.size() + " bytes");
+
+		FrameTiming timing = this.frameTiming;
+		long enqueued = System.nanoTime();
+		if (timing != null)
+			timing.enqueued(enqueued);
+		return new CommandQueue.Entry(commands, frame.toByteArray(), timing,
+				enqueued);
 	}
 
 	/**
-	 * Executes a command synchronously. Never call this method from GUI or
-	 * frame grabber thread!
+	 * Writes an entry's frame to the brick
+	 * 
+	 * @return false if there is no connection or the write failed, so the
+	 *         commands never left the PC
 	 */
-	public void executeSync(RobotCommand.Command command) {
-		if (brickOutput == null)
-			return;
+	private boolean send(CommandQueue.Entry entry) {
+		DataOutputStream output = brickOutput;
+		if (output == null)
+			return false;
 		try {
-			command.sendToBrick(brickOutput);
-			brickOutput.flush();
+			long start = System.nanoTime();
+			// The commands given together go in one frame, with one flush
+			synchronized (outputLock) {
+				RobotFrame.writeHeader(output, entry.frame.length);
+				output.write(entry.frame);
+				output.flush();
+				framesSent++;
+				bytesSent += RobotFrame.HEADER_SIZE + entry.frame.length;
+			}
+			long flushed = System.nanoTime();
+			meanSendNanos += (flushed - start - meanSendNanos) / 8;
+			if (entry.timing != null)
+				entry.timing.flushed(entry.enqueued, flushed);
+			return true;
 		} catch (IOException e) {
 			e.printStackTrace();
 			close();
+			return false;
 		}
 	}
 
@@ -118,75 +378,97 @@ public class BrickCommServer {
 
 	@Deprecated
 	public void robotKick(int speed) throws IOException {
-		brickOutput.writeInt(RobotOpcode.KICK);
-		brickOutput.writeInt(speed);
-		brickOutput.flush();
+		executeSync(new RobotCommand.Kick(speed));
 	}
 
 	@Deprecated
 	public void robotCatch() throws IOException {
-		brickOutput.writeInt(RobotOpcode.CATCH);
-		brickOutput.flush();
+		executeSync(new RobotCommand.Catch());
 	}
 
 	@Deprecated
 	public void robotRotateBy(int angle, double speed) throws IOException {
-		brickOutput.writeInt(RobotOpcode.ROTATE_BY);
-		brickOutput.writeInt(angle);
-		brickOutput.writeDouble(speed);
-		brickOutput.flush();
+		executeSync(new RobotCommand.Rotate(angle, speed));
 	}
 
 	@Deprecated
 	public void robotArcForwards(double arcRadius, int distance, int speed)
 			throws IOException {
-		brickOutput.writeInt(RobotOpcode.ARC_FORWARDS);
-		brickOutput.writeDouble(arcRadius);
-		brickOutput.writeInt(distance);
-		brickOutput.writeInt(speed);
-		brickOutput.flush();
+		executeSync(new RobotCommand.TravelArc(arcRadius, distance, speed));
 	}
 
 	@Deprecated
 	public void robotTravel(int distance, int travelSpeed) throws IOException {
-		brickOutput.writeInt(RobotOpcode.TRAVEL);
-		brickOutput.writeInt(distance);
-		brickOutput.writeInt(travelSpeed);
+		executeSync(new RobotCommand.Travel(distance, travelSpeed));
+	}
+
+	// Test commands are written straight to the brick, and answered by the
+	// status it sends once it has carried them out
+
+	private void writeTestHeader(int opcode) throws IOException {
+		RobotFrame.writeHeader(brickOutput,
+				1 + RobotFrame.argumentSize(opcode));
+		brickOutput.writeByte(opcode);
+	}
+
+	/**
+	 * @return the frame's number
+	 */
+	private int flushTestFrame(int opcode) throws IOException {
 		brickOutput.flush();
+		bytesSent += RobotFrame.HEADER_SIZE + 1
+				+ RobotFrame.argumentSize(opcode);
+		return ++framesSent;
+	}
 
+	private boolean waitForTest(int frame) {
+		try {
+			return waitForAcknowledgement(frame, TEST_TIMEOUT);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
 	}
 
 	public boolean robotTest() throws IOException {
-		brickOutput.writeInt(RobotOpcode.TEST);
-		brickOutput.flush();
-		boolean robotReceived = brickInput.readBoolean();
-		return robotReceived;
+		int frame;
+		synchronized (outputLock) {
+			writeTestHeader(RobotOpcode.TEST);
+			frame = flushTestFrame(RobotOpcode.TEST);
+		}
+		return waitForTest(frame);
 	}
 
 	public boolean robotTestINT(int param) throws IOException {
-		brickOutput.writeInt(RobotOpcode.TESTINT);
-		brickOutput.writeInt(param);
-		brickOutput.flush();
-		boolean robotReceived = brickInput.readBoolean();
-		return robotReceived;
+		int frame;
+		synchronized (outputLock) {
+			writeTestHeader(RobotOpcode.TESTINT);
+			brickOutput.writeInt(param);
+			frame = flushTestFrame(RobotOpcode.TESTINT);
+		}
+		return waitForTest(frame);
 	}
 
 	public boolean robotTestDOUBLE(double param) throws IOException {
-		brickOutput.writeInt(RobotOpcode.TESTDOUBLE);
-		brickOutput.writeDouble(param);
-		brickOutput.flush();
-		boolean robotReceived = brickInput.readBoolean();
-		return robotReceived;
+		int frame;
+		synchronized (outputLock) {
+			writeTestHeader(RobotOpcode.TESTDOUBLE);
+			brickOutput.writeDouble(param);
+			frame = flushTestFrame(RobotOpcode.TESTDOUBLE);
+		}
+		return waitForTest(frame);
 	}
 
 	public boolean robotTestINTANDDOUBLE(int paramInt, double paramDouble)
 			throws IOException {
-		brickOutput.writeInt(RobotOpcode.TESTINTANDDOUBLE);
-		brickOutput.writeDouble(paramDouble);
-		brickOutput.writeInt(paramInt);
-		brickOutput.flush();
-		boolean robotReceived = brickInput.readBoolean();
-		return robotReceived;
+		int frame;
+		synchronized (outputLock) {
+			writeTestHeader(RobotOpcode.TESTINTANDDOUBLE);
+			brickOutput.writeInt(paramInt);
+			brickOutput.writeDouble(paramDouble);
+			frame = flushTestFrame(RobotOpcode.TESTINTANDDOUBLE);
+		}
+		return waitForTest(frame);
 	}
 
 	public interface StateChangeListener {
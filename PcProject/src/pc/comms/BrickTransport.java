@@ -0,0 +1,21 @@
+package pc.comms;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A connection to a brick, or to something standing in for one, which
+ * BrickCommServer sends commands over and reads the brick's status from
+ */
+public interface BrickTransport {
+	public InputStream getInputStream();
+
+	/**
+	 * Gets the stream commands are written to. Nothing written is sent until
+	 * the stream is flushed.
+	 */
+	public OutputStream getOutputStream();
+
+	public void close() throws IOException;
+}
@@ -0,0 +1,210 @@
+package pc.comms;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+import pc.logging.FrameTiming;
+
+/**
+ * The commands waiting to be sent to a brick. A motion command replaces any
+ * motion commands still waiting behind the last kick or catch, so that the
+ * robot never carries out a movement that has already been decided against,
+ * while kicks and catches are always sent in order with the movements before
+ * them. The queue is bounded; once it is full, the oldest waiting motion is
+ * dropped. Kicks, catches and sequences are never dropped, so if nothing but
+ * those is waiting, the new entry is rejected instead.
+ */
+public class CommandQueue {
+	public static final int DEFAULT_CAPACITY = 16;
+
+	/**
+	 * Commands that were queued together and are sent together, in order
+	 */
+	static class Entry {
+		final RobotCommand.Command[] commands;
+		// The commands encoded, without the frame header
+		final byte[] frame;
+		final FrameTiming timing;
+		final long enqueued;
+		// Set once the entry has been sent, superseded or dropped
+		boolean done = false;
+
+		Entry(RobotCommand.Command[] commands, byte[] frame,
+				FrameTiming timing, long enqueued) {
+			this.commands = commands;
+			this.frame = frame;
+			this.timing = timing;
+			this.enqueued = enqueued;
+		}
+
+		/**
+		 * Only a motion on its own can be superseded; the movements of a
+		 * manoeuvre only make sense together
+		 */
+		boolean isMotion() {
+			return this.commands.length == 1
+					&& this.commands[0] instanceof RobotCommand.Motion;
+		}
+	}
+
+	private final int capacity;
+	private final ArrayDeque<Entry> pending = new ArrayDeque<Entry>();
+
+	private long queued = 0;
+	private long sent = 0;
+	private long superseded = 0;
+	private long dropped = 0;
+	private long rejected = 0;
+	private int maxDepth = 0;
+	// Set from when the sender takes an entry until it has been sent
+	private boolean sending = false;
+
+	public CommandQueue(int capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Adds an entry to the end of the queue, superseding or dropping older
+	 * motions as needed
+	 * 
+	 * @return false if the queue is full of entries that can't be dropped, in
+	 *         which case the entry is rejected and finished straight away
+	 */
+	synchronized boolean put(Entry entry) {
+		this.queued++;
+		if (entry.isMotion()) {
+			// Only the motions since the last kick or catch can go
+			Iterator<Entry> it = this.pending.descendingIterator();
+			while (it.hasNext()) {
+				Entry waiting = it.next();
+				if (!waiting.isMotion())
+					break;
+				it.remove();
+				finish(waiting);
+				this.superseded++;
+			}
+		}
+		if (this.pending.size() >= this.capacity) {
+			Entry oldest = null;
+			for (Entry waiting : this.pending) {
+				if (waiting.isMotion()) {
+					oldest = waiting;
+					break;
+				}
+			}
+			if (oldest == null) {
+				System.err.println("Command queue full of kicks, catches and "
+						+ "sequences; rejecting "
+						+ (entry.isMotion() ? "a motion" : "a manoeuvre"));
+				this.rejected++;
+				finish(entry);
+				return false;
+			}
+			this.pending.remove(oldest);
+			finish(oldest);
+			this.dropped++;
+		}
+		this.pending.addLast(entry);
+		this.maxDepth = Math.max(this.maxDepth, this.pending.size());
+		notifyAll();
+		return true;
+	}
+
+	/**
+	 * Takes the entry at the front of the queue, waiting for one to be added
+	 * if it is empty
+	 */
+	synchronized Entry take() throws InterruptedException {
+		while (this.pending.isEmpty())
+			wait();
+		this.sending = true;
+		return this.pending.pollFirst();
+	}
+
+	/**
+	 * Records that an entry taken from the queue has been sent
+	 */
+	synchronized void sent(Entry entry) {
+		this.sent++;
+		this.sending = false;
+		finish(entry);
+	}
+
+	/**
+	 * Records that an entry taken from the queue couldn't be sent, counting
+	 * it as dropped
+	 */
+	synchronized void failed(Entry entry) {
+		this.dropped++;
+		this.sending = false;
+		finish(entry);
+	}
+
+	/**
+	 * Waits until an entry has been sent, superseded or dropped
+	 */
+	synchronized void waitFor(Entry entry) throws InterruptedException {
+		while (!entry.done)
+			wait();
+	}
+
+	/**
+	 * Waits until nothing is waiting to be sent or being sent
+	 */
+	synchronized void waitUntilEmpty() throws InterruptedException {
+		while (!this.pending.isEmpty() || this.sending)
+			wait();
+	}
+
+	private void finish(Entry entry) {
+		entry.done = true;
+		notifyAll();
+	}
+
+	/** Gets the number of entries waiting to be sent */
+	public synchronized int getDepth() {
+		return this.pending.size();
+	}
+
+	/** Gets the most entries that have been waiting at once */
+	public synchronized int getMaxDepth() {
+		return this.maxDepth;
+	}
+
+	public synchronized long getQueued() {
+		return this.queued;
+	}
+
+	public synchronized long getSent() {
+		return this.sent;
+	}
+
+	/** Gets the number of motions replaced by a newer motion */
+	public synchronized long getSuperseded() {
+		return this.superseded;
+	}
+
+	/**
+	 * Gets the number of entries dropped because the queue was full, or
+	 * because they couldn't be sent
+	 */
+	public synchronized long getDropped() {
+		return this.dropped;
+	}
+
+	/**
+	 * Gets the number of entries rejected because the queue was full of
+	 * entries that can't be dropped
+	 */
+	public synchronized long getRejected() {
+		return this.rejected;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format(
+				"queued %d, sent %d, superseded %d, dropped %d, rejected %d, depth %d (max %d)",
+				this.queued, this.sent, this.superseded, this.dropped,
+				this.rejected, this.pending.size(), this.maxDepth);
+	}
+}
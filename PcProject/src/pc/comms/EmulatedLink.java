@@ -0,0 +1,223 @@
+package pc.comms;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+
+/**
+ * An in-process connection between the PC and something standing in for a
+ * brick, which delays what is sent over it the way a real link does. Each
+ * flush is sent as one packet, which takes its size over the bandwidth to go
+ * out, one packet at a time in each direction, and then arrives after the
+ * latency.
+ *
+ * The NXT defaults roughly match the 50ms round trips BtTest measured over
+ * Bluetooth.
+ */
+public class EmulatedLink {
+	/** The one way latency of NXT Bluetooth, in milliseconds */
+	public static final double NXT_LATENCY = 25;
+	/** The bandwidth of NXT Bluetooth, in bytes per second */
+	public static final double NXT_BANDWIDTH = 3000;
+
+	private final Pipe toBrick;
+	private final Pipe toPc;
+
+	/**
+	 * @param latency
+	 *            The one way latency in milliseconds
+	 * @param bandwidth
+	 *            The bandwidth in each direction in bytes per second, or 0
+	 *            for no limit
+	 */
+	public EmulatedLink(double latency, double bandwidth) {
+		this.toBrick = new Pipe(latency, bandwidth);
+		this.toPc = new Pipe(latency, bandwidth);
+	}
+
+	/**
+	 * Makes a link that behaves like NXT Bluetooth
+	 */
+	public static EmulatedLink nxtBluetooth() {
+		return new EmulatedLink(NXT_LATENCY, NXT_BANDWIDTH);
+	}
+
+	/**
+	 * Makes a link with no delay at all, for running the PC against a
+	 * simulated brick as fast as possible
+	 */
+	public static EmulatedLink inMemory() {
+		return new EmulatedLink(0, 0);
+	}
+
+	/**
+	 * Gets the PC's end of the link, for BrickCommServer.connect
+	 */
+	public BrickTransport getPcEnd() {
+		return new BrickTransport() {
+			@Override
+			public InputStream getInputStream() {
+				return EmulatedLink.this.toPc.input;
+			}
+
+			@Override
+			public OutputStream getOutputStream() {
+				return EmulatedLink.this.toBrick.output;
+			}
+
+			@Override
+			public void close() {
+				EmulatedLink.this.close();
+			}
+		};
+	}
+
+	/** Gets the stream the brick reads commands from */
+	public InputStream getBrickInput() {
+		return this.toBrick.input;
+	}
+
+	/** Gets the stream the brick writes its status to */
+	public OutputStream getBrickOutput() {
+		return this.toPc.output;
+	}
+
+	/**
+	 * Closes both directions; anything still in flight is lost
+	 */
+	public void close() {
+		this.toBrick.close();
+		this.toPc.close();
+	}
+
+	private static class Packet {
+		final byte[] bytes;
+		final long arrives;
+		int read = 0;
+
+		Packet(byte[] bytes, long arrives) {
+			this.bytes = bytes;
+			this.arrives = arrives;
+		}
+	}
+
+	/**
+	 * One direction of the link
+	 */
+	private static class Pipe {
+		private final long latencyNanos;
+		private final double nanosPerByte;
+		// Guarded by this
+		private final ArrayDeque<Packet> inFlight = new ArrayDeque<Packet>();
+		private long lineFree = 0;
+		private boolean closed = false;
+
+		Pipe(double latency, double bandwidth) {
+			this.latencyNanos = (long) (latency * 1e6);
+			this.nanosPerByte = bandwidth > 0 ? 1e9 / bandwidth : 0;
+		}
+
+		synchronized void send(byte[] bytes) throws IOException {
+			if (this.closed)
+				throw new IOException("Link closed");
+			long now = System.nanoTime();
+			long sent = Math.max(now, this.lineFree)
+					+ (long) (bytes.length * this.nanosPerByte);
+			this.lineFree = sent;
+			this.inFlight.addLast(new Packet(bytes, sent + this.latencyNanos));
+			notifyAll();
+		}
+
+		/**
+		 * Waits for the next packet to arrive
+		 *
+		 * @return the packet, or null if the pipe has been closed
+		 */
+		synchronized Packet arrived() throws IOException {
+			try {
+				while (true) {
+					if (this.closed)
+						return null;
+					Packet next = this.inFlight.peekFirst();
+					if (next == null) {
+						wait();
+						continue;
+					}
+					long remaining = next.arrives - System.nanoTime();
+					if (remaining <= 0)
+						return next;
+					wait(remaining / 1000000, (int) (remaining % 1000000));
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+		}
+
+		synchronized void close() {
+			this.closed = true;
+			notifyAll();
+		}
+
+		final OutputStream output = new OutputStream() {
+			// Written to by one thread at a time
+			private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+			@Override
+			public void write(int b) {
+				this.buffer.write(b);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+				this.buffer.write(b, off, len);
+			}
+
+			@Override
+			public void flush() throws IOException {
+				if (this.buffer.size() == 0)
+					return;
+				send(this.buffer.toByteArray());
+				this.buffer.reset();
+			}
+
+			@Override
+			public void close() {
+				Pipe.this.close();
+			}
+		};
+
+		final InputStream input = new InputStream() {
+			@Override
+			public int read() throws IOException {
+				byte[] b = new byte[1];
+				return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				if (len == 0)
+					return 0;
+				synchronized (Pipe.this) {
+					Packet packet = arrived();
+					if (packet == null)
+						return -1;
+					int count = Math.min(len, packet.bytes.length - packet.read);
+					System.arraycopy(packet.bytes, packet.read, b, off, count);
+					packet.read += count;
+					if (packet.read == packet.bytes.length)
+						Pipe.this.inFlight.removeFirst();
+					return count;
+				}
+			}
+
+			@Override
+			public void close() {
+				Pipe.this.close();
+			}
+		};
+	}
+}
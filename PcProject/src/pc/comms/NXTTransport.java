@@ -0,0 +1,48 @@
+package pc.comms;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import lejos.pc.comm.NXTComm;
+import lejos.pc.comm.NXTCommException;
+import lejos.pc.comm.NXTCommFactory;
+import lejos.pc.comm.NXTInfo;
+
+/**
+ * A connection to a real brick over Bluetooth or USB
+ */
+public class NXTTransport implements BrickTransport {
+	private final NXTComm comm;
+
+	private NXTTransport(NXTComm comm) {
+		this.comm = comm;
+	}
+
+	/**
+	 * Connects to a brick
+	 * 
+	 * @return the connection, or null if the brick couldn't be opened
+	 */
+	public static NXTTransport open(NXTInfo brickInfo) throws NXTCommException {
+		NXTComm comm = NXTCommFactory.createNXTComm(brickInfo.protocol);
+		if (!comm.open(brickInfo))
+			return null;
+		return new NXTTransport(comm);
+	}
+
+	@Override
+	public InputStream getInputStream() {
+		return this.comm.getInputStream();
+	}
+
+	@Override
+	public OutputStream getOutputStream() {
+		return this.comm.getOutputStream();
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.comm.close();
+	}
+}
@@ -1,46 +1,60 @@
 package pc.comms;
 
+import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 
+import reallejos.shared.RobotFrame;
 import reallejos.shared.RobotOpcode;
 
 public class RobotCommand {
 	private RobotCommand() {
 	}
 
+	/**
+	 * A command to the brick. Commands write themselves in the RobotFrame
+	 * format; the frame header is written by BrickCommServer, which can put
+	 * several commands in one frame.
+	 */
 	public interface Command {
 		public void sendToBrick(DataOutputStream outputStream)
 				throws IOException;
 	}
 
+	/**
+	 * A command that moves the robot. A newer motion command makes any that
+	 * are still waiting to be sent stale, so they are dropped rather than sent.
+	 */
+	public interface Motion extends Command {
+	}
+
 	private static abstract class GenericCommand implements Command {
 		protected abstract int getOpcode();
 
 		@Override
 		public void sendToBrick(DataOutputStream outputStream)
 				throws IOException {
-			outputStream.writeInt(getOpcode());
+			outputStream.writeByte(getOpcode());
 		}
 	}
 	
 	// Classes below represent every possible brick command
 
-	public static class Stop extends GenericCommand {
+	public static class Stop extends GenericCommand implements Motion {
 		@Override
 		protected int getOpcode() {
 			return RobotOpcode.STOP;
 		}
 	}
 
-	public static class Forwards extends GenericCommand {
+	public static class Forwards extends GenericCommand implements Motion {
 		@Override
 		protected int getOpcode() {
 			return RobotOpcode.FORWARDS;
 		}
 	}
 
-	public static class Backwards extends GenericCommand {
+	public static class Backwards extends GenericCommand implements Motion {
 		@Override
 		protected int getOpcode() {
 			return RobotOpcode.BACKWARDS;
@@ -63,7 +77,7 @@ public class RobotCommand {
 		public void sendToBrick(DataOutputStream outputStream)
 				throws IOException {
 			super.sendToBrick(outputStream);
-			outputStream.writeInt(speed);
+			outputStream.writeByte(Math.max(0, Math.min(100, speed)));
 		}
 	}
 
@@ -75,23 +89,23 @@ public class RobotCommand {
 	}
 
 
-	public static class RotateLeft extends GenericCommand {
+	public static class RotateLeft extends GenericCommand implements Motion {
 		@Override
 		protected int getOpcode() {
 			return RobotOpcode.ROTATE_LEFT;
 		}
 	}
 
-	public static class RotateRight extends GenericCommand {
+	public static class RotateRight extends GenericCommand implements Motion {
 		@Override
 		protected int getOpcode() {
 			return RobotOpcode.ROTATE_RIGHT;
 		}
 	}
 
-	public static class Rotate extends GenericCommand {
+	public static class Rotate extends GenericCommand implements Motion {
 		private int angle;
-		private double speed; // Is double necessary here?
+		private double speed; // Sent in tenths
 		private boolean immediateReturn;
 
 		public Rotate(int angle, double speed, boolean immediateReturn){
@@ -113,13 +127,13 @@ public class RobotCommand {
 		public void sendToBrick(DataOutputStream outputStream)
 				throws IOException {
 			super.sendToBrick(outputStream);
-			outputStream.writeInt(angle);
-			outputStream.writeDouble(speed);
+			RobotFrame.writeShort(outputStream, angle);
+			RobotFrame.writeFixed(outputStream, speed);
 			outputStream.writeBoolean(immediateReturn);
 		}
 	}
 
-	public static class TravelArc extends GenericCommand {
+	public static class TravelArc extends GenericCommand implements Motion {
 		private double arcRadius;
 		private int distance;
 		private int speed;
@@ -139,13 +153,13 @@ public class RobotCommand {
 		public void sendToBrick(DataOutputStream outputStream)
 				throws IOException {
 			super.sendToBrick(outputStream);
-			outputStream.writeDouble(arcRadius);
-			outputStream.writeInt(distance);
-			outputStream.writeInt(speed);
+			RobotFrame.writeShort(outputStream, arcRadius);
+			RobotFrame.writeShort(outputStream, distance);
+			RobotFrame.writeShort(outputStream, speed);
 		}
 	}
 
-	public static class Travel extends GenericCommand {
+	public static class Travel extends GenericCommand implements Motion {
 		private int distance;
 		private int travelSpeed;
 		
@@ -163,8 +177,8 @@ public class RobotCommand {
 		public void sendToBrick(DataOutputStream outputStream)
 				throws IOException {
 			super.sendToBrick(outputStream);
-			outputStream.writeInt(distance);
-			outputStream.writeInt(travelSpeed);
+			RobotFrame.writeShort(outputStream, distance);
+			RobotFrame.writeShort(outputStream, travelSpeed);
 		}
 	}
 	
@@ -174,4 +188,62 @@ public class RobotCommand {
 			return RobotOpcode.RESET_CATCHER;
 		}
 	}
+
+	/**
+	 * Waits before the next step of a sequence
+	 */
+	public static class Wait extends GenericCommand {
+		private int millis;
+
+		public Wait(int millis) {
+			this.millis = millis;
+		}
+
+		@Override
+		protected int getOpcode() {
+			return RobotOpcode.WAIT;
+		}
+
+		@Override
+		public void sendToBrick(DataOutputStream outputStream)
+				throws IOException {
+			super.sendToBrick(outputStream);
+			RobotFrame.writeShort(outputStream, millis);
+		}
+	}
+
+	/**
+	 * A manoeuvre made of several commands, which is sent to the brick as one
+	 * command and carried out there step by step, so that the timing between
+	 * the steps doesn't depend on the link. Each motion in it finishes before
+	 * the next step starts. It is never replaced by a newer motion, and
+	 * replaces none itself.
+	 */
+	public static class Sequence extends GenericCommand {
+		private Command[] steps;
+
+		public Sequence(Command... steps) {
+			this.steps = steps;
+		}
+
+		@Override
+		protected int getOpcode() {
+			return RobotOpcode.SEQUENCE;
+		}
+
+		@Override
+		public void sendToBrick(DataOutputStream outputStream)
+				throws IOException {
+			ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+			DataOutputStream encodedOutput = new DataOutputStream(encoded);
+			for (Command step : steps)
+				step.sendToBrick(encodedOutput);
+			if (encoded.size() > RobotFrame.MAX_LENGTH)
+				throw new IllegalArgumentException("Sequence too long: "
+						+ encoded.size());
+			super.sendToBrick(outputStream);
+			outputStream.writeByte(encoded.size());
+			encoded.writeTo(outputStream);
+		}
+	}
 }
@@ -0,0 +1,621 @@
+package pc.comms;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import reallejos.shared.RobotFrame;
+import reallejos.shared.RobotOpcode;
+import reallejos.shared.RobotStatus;
+
+/**
+ * Stands in for a brick running BrickCommClient. It reads frames of commands,
+ * carries them out on a simulated differential drive the way Movement's
+ * DifferentialPilot does, and sends its status back.
+ *
+ * The simulation has its own clock, which only moves on when step is called,
+ * either by startClock at any multiple of real time or by a simulation that
+ * keeps its own time. Commands the real brick waits for, a rotate that
+ * doesn't return immediately, a kick or a wait, hold up the rest of the frame
+ * until that much simulated time has passed.
+ *
+ * Positions are in millimetres and headings in degrees anticlockwise from
+ * the x axis, as leJOS has them.
+ *
+ * Run on its own, it serves one TCP connection at a time in real time, for
+ * SocketTransport.
+ *
+ * Usage: SimulatedBrick [port] [keeper]
+ */
+public class SimulatedBrick {
+	public static final int DEFAULT_PORT = 8999;
+	public static final double STRIKER_TRACK_WIDTH = 121;
+	public static final double KEEPER_TRACK_WIDTH = 133;
+	/**
+	 * How far the keeper moves for each millimetre the pilot travels; its
+	 * drive is geared up and faces backwards, so the strategies send it a
+	 * third of the distance, negated
+	 */
+	public static final double KEEPER_TRAVEL_RATIO = -3;
+	/** How far the keeper turns for each degree the pilot rotates */
+	public static final double KEEPER_ROTATE_RATIO = 3;
+	public static final double WHEEL_DIAMETER = 56;
+	/** The fastest the wheel motors turn, in degrees per second */
+	public static final double MAX_MOTOR_SPEED = 900;
+	/** How long a kick takes, in seconds */
+	public static final double KICK_TIME = 0.3;
+	/** How long resetting the catcher takes, in seconds */
+	public static final double RESET_CATCHER_TIME = 1;
+	/** How often the status is sent between frames, in seconds */
+	public static final double STATUS_INTERVAL = 0.1;
+	/** How often startClock steps the simulation, in milliseconds */
+	private static final int CLOCK_TICK = 10;
+	/** The travel speed BrickCommClient starts with */
+	private static final double INITIAL_TRAVEL_SPEED = 300;
+	private static final int BATTERY_MILLIVOLTS = 8000;
+
+	/**
+	 * Told about each kick, from the thread carrying out commands
+	 */
+	public interface KickListener {
+		public void kicked(SimulatedBrick brick, int speed);
+	}
+
+	private final double maxTravelSpeed;
+	private final double maxRotateSpeed;
+	private final double travelRatio, rotateRatio;
+	private final List<KickListener> kickListeners = new CopyOnWriteArrayList<KickListener>();
+
+	// Guarded by this
+	private double time = 0;
+	private double x = 0, y = 0, heading = 0;
+	private double travelSpeed, rotateSpeed;
+	// The current motion, and how many seconds are left of it
+	private double velocity = 0, angularVelocity = 0;
+	private double remaining = 0;
+	private boolean kickerDown = true;
+	private int framesDone = 0;
+	// Whether the last frame done couldn't be made sense of, and whether the
+	// one being decoded can't, which only the decoder touches
+	private boolean lastFrameFailed = false;
+	private boolean frameFailed = false;
+	// The frames the decoder has started on, and what it is waiting for
+	private int framesStarted = 0;
+	private boolean decoding = false;
+	private boolean waitingForFrame = false, waitingUntilStill = false;
+	private double waitingUntil = Double.NaN;
+	private double nextStatus = 0;
+	private boolean closed = false;
+	private DataOutputStream output;
+
+	private Thread decoder;
+	private Thread clock;
+
+	/**
+	 * @param trackWidth
+	 *            The distance between the wheels, in millimetres
+	 */
+	public SimulatedBrick(double trackWidth) {
+		this(trackWidth, 1, 1);
+	}
+
+	/**
+	 * @param trackWidth
+	 *            The distance between the wheels, in millimetres
+	 * @param travelRatio
+	 *            How far the robot moves forwards for each millimetre the
+	 *            pilot travels
+	 * @param rotateRatio
+	 *            How far the robot turns anticlockwise for each degree the
+	 *            pilot rotates
+	 */
+	public SimulatedBrick(double trackWidth, double travelRatio,
+			double rotateRatio) {
+		this.travelRatio = travelRatio;
+		this.rotateRatio = rotateRatio;
+		this.maxTravelSpeed = MAX_MOTOR_SPEED / 360 * Math.PI * WHEEL_DIAMETER;
+		this.maxRotateSpeed = Math.toDegrees(this.maxTravelSpeed
+				/ (trackWidth / 2));
+		this.travelSpeed = INITIAL_TRAVEL_SPEED;
+		// DifferentialPilot's default
+		this.rotateSpeed = 0.8 * this.maxRotateSpeed;
+	}
+
+	public void addKickListener(KickListener listener) {
+		this.kickListeners.add(listener);
+	}
+
+	/**
+	 * Starts carrying out the commands read from a connection, as
+	 * BrickCommClient.runController does
+	 */
+	public synchronized void connect(InputStream input, OutputStream output) {
+		this.output = new DataOutputStream(output);
+		this.framesDone = 0;
+		this.lastFrameFailed = false;
+		this.framesStarted = 0;
+		this.decoding = true;
+		final DataInputStream commands = new DataInputStream(input);
+		this.decoder = new Thread("Simulated brick") {
+			@Override
+			public void run() {
+				decode(commands);
+			}
+		};
+		this.decoder.setDaemon(true);
+		this.decoder.start();
+	}
+
+	/**
+	 * Starts carrying out the commands sent over the brick's end of a link
+	 */
+	public void connect(EmulatedLink link) {
+		connect(link.getBrickInput(), link.getBrickOutput());
+	}
+
+	/**
+	 * Starts a thread which moves the simulation on in step with real time
+	 *
+	 * @param timeScale
+	 *            How many simulated seconds pass each real second
+	 */
+	public synchronized void startClock(final double timeScale) {
+		this.clock = new Thread("Simulated brick clock") {
+			@Override
+			public void run() {
+				long last = System.nanoTime();
+				try {
+					while (!isClosed()) {
+						Thread.sleep(CLOCK_TICK);
+						long now = System.nanoTime();
+						step((now - last) / 1e9 * timeScale);
+						last = now;
+					}
+				} catch (InterruptedException e) {
+					// Closed
+				}
+			}
+		};
+		this.clock.setDaemon(true);
+		this.clock.start();
+	}
+
+	/**
+	 * Stops the simulation, and anything waiting on it
+	 */
+	public synchronized void close() {
+		this.closed = true;
+		notifyAll();
+		if (this.clock != null)
+			this.clock.interrupt();
+	}
+
+	private synchronized boolean isClosed() {
+		return this.closed;
+	}
+
+	/**
+	 * Moves the simulation on
+	 *
+	 * @param seconds
+	 *            The simulated time that has passed
+	 */
+	public void step(double seconds) {
+		boolean statusDue;
+		synchronized (this) {
+			double left = seconds;
+			while (left > 0 && this.remaining > 0) {
+				double dt = Math.min(left, this.remaining);
+				integrate(dt);
+				this.remaining -= dt;
+				left -= dt;
+			}
+			if (this.remaining <= 0)
+				setMotion(0, 0, 0);
+			this.time += seconds;
+			statusDue = this.output != null && this.time >= this.nextStatus;
+			notifyAll();
+		}
+		if (statusDue)
+			sendStatus();
+	}
+
+	/**
+	 * Moves the robot along the arc it is following
+	 */
+	private void integrate(double dt) {
+		double h0 = Math.toRadians(this.heading);
+		double w = Math.toRadians(this.angularVelocity);
+		if (Math.abs(w) < 1e-9) {
+			this.x += this.velocity * Math.cos(h0) * dt;
+			this.y += this.velocity * Math.sin(h0) * dt;
+		} else {
+			double h1 = h0 + w * dt;
+			double r = this.velocity / w;
+			this.x += r * (Math.sin(h1) - Math.sin(h0));
+			this.y += r * (Math.cos(h0) - Math.cos(h1));
+		}
+		this.heading = normalise(this.heading + this.angularVelocity * dt);
+	}
+
+	private static double normalise(double angle) {
+		angle %= 360;
+		if (angle >= 180)
+			angle -= 360;
+		else if (angle < -180)
+			angle += 360;
+		return angle;
+	}
+
+	private void setMotion(double velocity, double angularVelocity,
+			double seconds) {
+		this.velocity = velocity;
+		this.angularVelocity = angularVelocity;
+		this.remaining = seconds;
+	}
+
+	/**
+	 * Starts the robot moving as the pilot would move
+	 */
+	private synchronized void startMotion(double velocity,
+			double angularVelocity, double seconds) {
+		setMotion(velocity * this.travelRatio, angularVelocity
+				* this.rotateRatio, seconds);
+		notifyAll();
+	}
+
+	/**
+	 * Waits for a time to pass in the simulation
+	 */
+	private synchronized void waitFor(double seconds)
+			throws InterruptedException {
+		double until = this.time + seconds;
+		this.waitingUntil = until;
+		notifyAll();
+		while (this.time < until && !this.closed)
+			wait();
+		this.waitingUntil = Double.NaN;
+	}
+
+	/**
+	 * Waits for the current motion to finish
+	 */
+	private synchronized void waitUntilStill() throws InterruptedException {
+		this.waitingUntilStill = true;
+		notifyAll();
+		while (this.remaining > 0 && !this.closed)
+			wait();
+		this.waitingUntilStill = false;
+	}
+
+	/**
+	 * Checks whether the decoder is waiting for simulated time to pass
+	 */
+	private boolean isWaitingForTime() {
+		return this.time < this.waitingUntil || this.waitingUntilStill
+				&& this.remaining > 0;
+	}
+
+	/**
+	 * Waits until the decoder has got as far as it can with the frames sent
+	 * so far: it has started on all of them and is waiting for another, or is
+	 * waiting for simulated time to pass. A simulation keeping its own time
+	 * calls this before each step, so that commands sent since the last step
+	 * take effect from this one.
+	 *
+	 * @param frames
+	 *            The number of frames sent since connecting, as
+	 *            BrickCommServer.getFramesSent counts them
+	 */
+	public synchronized void waitUntilIdle(int frames)
+			throws InterruptedException {
+		while (!this.closed && this.decoding && !isWaitingForTime()
+				&& !(this.waitingForFrame && this.framesStarted >= frames))
+			wait();
+	}
+
+	private void decode(DataInputStream input) {
+		try {
+			while (true) {
+				synchronized (this) {
+					this.waitingForFrame = true;
+					notifyAll();
+				}
+				int length = RobotFrame.readHeader(input);
+				synchronized (this) {
+					this.waitingForFrame = false;
+					this.framesStarted++;
+				}
+				this.frameFailed = false;
+				if (!handleCommands(input, length, false))
+					break;
+				synchronized (this) {
+					this.framesDone++;
+					this.lastFrameFailed = this.frameFailed;
+				}
+				sendStatus();
+			}
+		} catch (IOException e) {
+			// The connection has closed
+		} catch (InterruptedException e) {
+			// So has the simulation
+		}
+		// As BrickCommClient floats the wheels
+		synchronized (this) {
+			this.decoding = false;
+			setMotion(0, 0, 0);
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Reads and carries out commands until length bytes have been read, as
+	 * BrickCommClient.handleCommands does
+	 *
+	 * @param inSequence
+	 *            Whether the commands are the steps of a sequence, whose
+	 *            motions finish before the next step starts
+	 * @return false if the PC has quit
+	 */
+	private boolean handleCommands(DataInputStream input, int length,
+			boolean inSequence) throws IOException, InterruptedException {
+		while (length > 0) {
+			int opcode = input.readUnsignedByte();
+			int size = RobotFrame.argumentSize(opcode);
+			length--;
+			if (size < 0 || size > length) {
+				System.err.println("Simulated brick: unknown opcode " + opcode);
+				this.frameFailed = true;
+				input.skipBytes(length);
+				return true;
+			}
+			length -= size;
+
+			if (opcode == RobotOpcode.SEQUENCE) {
+				int steps = input.readUnsignedByte();
+				if (steps > length) {
+					System.err.println("Simulated brick: bad sequence");
+					this.frameFailed = true;
+					input.skipBytes(length);
+					return true;
+				}
+				length -= steps;
+				if (!handleCommands(input, steps, true))
+					return false;
+			} else if (!handleCommand(input, opcode, size, inSequence)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean handleCommand(DataInputStream input, int opcode,
+			int size, boolean inSequence) throws IOException,
+			InterruptedException {
+		switch (opcode) {
+		case RobotOpcode.STOP:
+			startMotion(0, 0, 0);
+			break;
+		case RobotOpcode.FORWARDS:
+			startMotion(getTravelSpeed(), 0, Double.POSITIVE_INFINITY);
+			break;
+		case RobotOpcode.BACKWARDS:
+			startMotion(-getTravelSpeed(), 0, Double.POSITIVE_INFINITY);
+			break;
+		case RobotOpcode.ROTATE_LEFT:
+			startMotion(0, getRotateSpeed(), Double.POSITIVE_INFINITY);
+			break;
+		case RobotOpcode.ROTATE_RIGHT:
+			startMotion(0, -getRotateSpeed(), Double.POSITIVE_INFINITY);
+			break;
+		case RobotOpcode.ROTATE_BY: {
+			int angle = input.readShort();
+			double speed = setRotateSpeed(RobotFrame.readFixed(input));
+			boolean immediateReturn = input.readBoolean();
+			startMotion(0, Math.signum(angle) * speed, speed > 0 ? Math.abs(angle)
+					/ speed : 0);
+			if (!immediateReturn || inSequence)
+				waitUntilStill();
+			break;
+		}
+		case RobotOpcode.ARC_FORWARDS: {
+			double radius = input.readShort();
+			int distance = input.readShort();
+			double speed = setTravelSpeed(input.readShort());
+			double velocity = Math.signum(distance) * speed;
+			if (radius == 0 || speed == 0)
+				startMotion(0, 0, 0);
+			else
+				startMotion(velocity, Math.toDegrees(velocity / radius),
+						Math.abs(distance) / speed);
+			if (inSequence)
+				waitUntilStill();
+			break;
+		}
+		case RobotOpcode.TRAVEL: {
+			int distance = input.readShort();
+			double speed = setTravelSpeed(input.readShort());
+			startMotion(Math.signum(distance) * speed, 0,
+					speed > 0 ? Math.abs(distance) / speed : 0);
+			if (inSequence)
+				waitUntilStill();
+			break;
+		}
+		case RobotOpcode.KICK: {
+			int speed = input.readUnsignedByte();
+			// Movement.kick does nothing unless the kicker is down
+			boolean kicked;
+			synchronized (this) {
+				kicked = this.kickerDown;
+				this.kickerDown = false;
+			}
+			if (kicked) {
+				for (KickListener listener : this.kickListeners)
+					listener.kicked(this, speed);
+				waitFor(KICK_TIME);
+			}
+			break;
+		}
+		case RobotOpcode.CATCH:
+			synchronized (this) {
+				this.kickerDown = true;
+			}
+			break;
+		case RobotOpcode.RESET_CATCHER:
+			waitFor(RESET_CATCHER_TIME);
+			// Movement.resetCatcher ends by raising the kicker again
+			synchronized (this) {
+				this.kickerDown = false;
+			}
+			break;
+		case RobotOpcode.WAIT:
+			waitFor(input.readShort() / 1000.0);
+			break;
+		case RobotOpcode.QUIT:
+			return false;
+		case RobotOpcode.TEST:
+		case RobotOpcode.TESTINT:
+		case RobotOpcode.TESTDOUBLE:
+		case RobotOpcode.TESTINTANDDOUBLE:
+			// Their arguments are ignored
+			input.skipBytes(size);
+			break;
+		default:
+			// As BrickCommClient, for opcodes that aren't commands
+			System.err.println("Simulated brick: unexpected opcode "
+					+ opcode);
+			this.frameFailed = true;
+			input.skipBytes(size);
+			break;
+		}
+		return true;
+	}
+
+	private synchronized double getTravelSpeed() {
+		return this.travelSpeed;
+	}
+
+	private synchronized double getRotateSpeed() {
+		return this.rotateSpeed;
+	}
+
+	/**
+	 * @return the speed actually set, which DifferentialPilot limits
+	 */
+	private synchronized double setTravelSpeed(double speed) {
+		this.travelSpeed = Math.min(Math.abs(speed), this.maxTravelSpeed);
+		return this.travelSpeed;
+	}
+
+	private synchronized double setRotateSpeed(double speed) {
+		this.rotateSpeed = Math.min(Math.abs(speed), this.maxRotateSpeed);
+		return this.rotateSpeed;
+	}
+
+	private void sendStatus() {
+		DataOutputStream output;
+		RobotStatus status;
+		synchronized (this) {
+			output = this.output;
+			if (output == null)
+				return;
+			status = new RobotStatus(this.framesDone, (float) this.x,
+					(float) this.y, (float) this.heading, this.remaining > 0,
+					this.kickerDown, BATTERY_MILLIVOLTS, this.lastFrameFailed);
+			this.nextStatus = this.time + STATUS_INTERVAL;
+		}
+		try {
+			synchronized (output) {
+				RobotFrame.writeHeader(output,
+						1 + RobotFrame.argumentSize(RobotOpcode.STATUS));
+				status.write(output);
+				output.flush();
+			}
+		} catch (IOException e) {
+			// The decoder finds out about the connection closing
+		}
+	}
+
+	/** Gets the simulated time, in seconds */
+	public synchronized double getTime() {
+		return this.time;
+	}
+
+	public synchronized double getX() {
+		return this.x;
+	}
+
+	public synchronized double getY() {
+		return this.y;
+	}
+
+	public synchronized double getHeading() {
+		return this.heading;
+	}
+
+	/**
+	 * Gets the speed the robot is travelling forwards at, in millimetres per
+	 * second
+	 */
+	public synchronized double getVelocity() {
+		return this.velocity;
+	}
+
+	/**
+	 * Gets the speed the robot is turning anticlockwise at, in degrees per
+	 * second
+	 */
+	public synchronized double getAngularVelocity() {
+		return this.angularVelocity;
+	}
+
+	public synchronized boolean isMoving() {
+		return this.remaining > 0;
+	}
+
+	public synchronized boolean isKickerDown() {
+		return this.kickerDown;
+	}
+
+	/**
+	 * Puts the robot somewhere, for instance after it has been moved by
+	 * something other than its wheels
+	 */
+	public synchronized void setPose(double x, double y, double heading) {
+		this.x = x;
+		this.y = y;
+		this.heading = normalise(heading);
+	}
+
+	public static void main(String[] args) throws IOException,
+			InterruptedException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		boolean keeper = args.length > 1 && args[1].equals("keeper");
+		SimulatedBrick brick = keeper ? new SimulatedBrick(
+				KEEPER_TRACK_WIDTH, KEEPER_TRAVEL_RATIO, KEEPER_ROTATE_RATIO)
+				: new SimulatedBrick(STRIKER_TRACK_WIDTH);
+		brick.startClock(1);
+		ServerSocket server = new ServerSocket(port);
+		System.out.println("Simulated " + (keeper ? "keeper" : "striker")
+				+ " waiting on port " + port);
+		while (true) {
+			Socket socket = server.accept();
+			socket.setTcpNoDelay(true);
+			System.out.println("Connected to " + socket.getRemoteSocketAddress());
+			// As SocketTransport, each status goes out whole when flushed
+			brick.connect(socket.getInputStream(), new BufferedOutputStream(
+					socket.getOutputStream(), RobotFrame.HEADER_SIZE
+							+ RobotFrame.MAX_LENGTH));
+			brick.decoder.join();
+			socket.close();
+			System.out.println("Disconnected");
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package pc.comms;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+import reallejos.shared.RobotFrame;
+
+/**
+ * A connection to a brick, or a simulated one, over TCP
+ */
+public class SocketTransport implements BrickTransport {
+	private final Socket socket;
+	private final InputStream input;
+	private final OutputStream output;
+
+	public SocketTransport(Socket socket) throws IOException {
+		this.socket = socket;
+		// Frames are flushed whole, so there's nothing to gain from waiting
+		// to fill a packet
+		socket.setTcpNoDelay(true);
+		this.input = socket.getInputStream();
+		// Held until flushed, as BrickTransport requires, so that a frame
+		// goes out in one segment rather than one per field
+		this.output = new BufferedOutputStream(socket.getOutputStream(),
+				RobotFrame.HEADER_SIZE + RobotFrame.MAX_LENGTH);
+	}
+
+	public static SocketTransport connect(String host, int port)
+			throws IOException {
+		return new SocketTransport(new Socket(host, port));
+	}
+
+	@Override
+	public InputStream getInputStream() {
+		return this.input;
+	}
+
+	@Override
+	public OutputStream getOutputStream() {
+		return this.output;
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.socket.close();
+	}
+}
@@ -0,0 +1,79 @@
+package pc.logging;
+
+/**
+ * The times at which a single frame passed each stage between the camera and
+ * the robots, so that the latency of each stage can be recorded in
+ * LatencyMetrics. Every time is from System.nanoTime.
+ */
+public class FrameTiming {
+	private final long captured;
+	private volatile long recognised;
+	private volatile long decided;
+
+	/**
+	 * @param capturedMicros
+	 *            When the frame was captured, in microseconds on the
+	 *            System.nanoTime clock, as passed to VideoReceivers
+	 */
+	public FrameTiming(long capturedMicros) {
+		this.captured = capturedMicros * 1000;
+	}
+
+	/**
+	 * Records that vision has finished finding the objects in the frame
+	 */
+	public void recognised() {
+		this.recognised = System.nanoTime();
+		LatencyMetrics.CAPTURE_TO_RECOGNISED.record(this.recognised
+				- this.captured);
+	}
+
+	/**
+	 * Records that a strategy has decided what to do from the frame. Only the
+	 * first strategy to decide is recorded.
+	 */
+	public synchronized void decided() {
+		if (this.decided != 0)
+			return;
+		this.decided = System.nanoTime();
+		if (this.recognised != 0)
+			LatencyMetrics.RECOGNISED_TO_DECISION.record(this.decided
+					- this.recognised);
+	}
+
+	/**
+	 * Records that a command decided on from the frame was queued to be sent
+	 *
+	 * @param enqueued
+	 *            When the command was queued
+	 */
+	public void enqueued(long enqueued) {
+		if (this.decided != 0)
+			LatencyMetrics.DECISION_TO_ENQUEUE.record(enqueued - this.decided);
+	}
+
+	/**
+	 * Records that a command decided on from the frame was sent to a brick
+	 *
+	 * @param enqueued
+	 *            When the command was queued
+	 * @param flushed
+	 *            When the last of the command's bytes were flushed
+	 */
+	public void flushed(long enqueued, long flushed) {
+		LatencyMetrics.ENQUEUE_TO_FLUSHED.record(flushed - enqueued);
+		LatencyMetrics.CAPTURE_TO_FLUSHED.record(flushed - this.captured);
+	}
+
+	public long getCaptured() {
+		return this.captured;
+	}
+
+	public long getRecognised() {
+		return this.recognised;
+	}
+
+	public long getDecided() {
+		return this.decided;
+	}
+}
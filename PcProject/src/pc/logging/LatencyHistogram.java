@@ -0,0 +1,133 @@
+package pc.logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies which can be recorded to from any thread without
+ * locking. Like HdrHistogram, values are grouped into buckets whose width
+ * grows with the value, so that every bucket has the same relative precision
+ * (about 3%) from a microsecond up to minutes.
+ */
+public class LatencyHistogram {
+	// Each power of two is split into 2^SUB_BUCKET_BITS buckets
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	// Values are recorded in nanoseconds, and anything under a microsecond
+	// is counted as a microsecond
+	private static final int MIN_EXPONENT = 10;
+	private static final int MAX_EXPONENT = 40;
+	private static final int NUM_BUCKETS = (MAX_EXPONENT - MIN_EXPONENT + 1)
+			* SUB_BUCKETS;
+
+	private final String name;
+	private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	public LatencyHistogram(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Records a latency
+	 *
+	 * @param nanos
+	 *            The latency in nanoseconds. Negative values, which can only
+	 *            come from timestamps on different clocks, are ignored.
+	 */
+	public void record(long nanos) {
+		if (nanos < 0)
+			return;
+		this.counts.incrementAndGet(bucket(nanos));
+		this.count.incrementAndGet();
+		this.total.addAndGet(nanos);
+		long currentMax;
+		while (nanos > (currentMax = this.max.get())
+				&& !this.max.compareAndSet(currentMax, nanos))
+			;
+	}
+
+	private static int bucket(long nanos) {
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		if (exponent < MIN_EXPONENT)
+			return 0;
+		if (exponent > MAX_EXPONENT)
+			return NUM_BUCKETS - 1;
+		int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS))
+				& (SUB_BUCKETS - 1);
+		return (exponent - MIN_EXPONENT) * SUB_BUCKETS + subBucket;
+	}
+
+	// The largest value that falls in a bucket
+	private static long bucketTop(int bucket) {
+		int exponent = MIN_EXPONENT + bucket / SUB_BUCKETS;
+		int subBucket = bucket % SUB_BUCKETS;
+		return (1L << exponent)
+				+ ((subBucket + 1L) << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+
+	public long getCount() {
+		return this.count.get();
+	}
+
+	public double getMeanMillis() {
+		long n = this.count.get();
+		return n == 0 ? 0 : this.total.get() / (1e6 * n);
+	}
+
+	public double getMaxMillis() {
+		return this.max.get() / 1e6;
+	}
+
+	/**
+	 * Gets the latency below which a fraction of the recorded latencies fall
+	 *
+	 * @param fraction
+	 *            Between 0 and 1, eg. 0.99 for the 99th percentile
+	 * @return the latency in milliseconds, accurate to the width of a bucket
+	 */
+	public double getPercentileMillis(double fraction) {
+		long n = 0;
+		long[] snapshot = new long[NUM_BUCKETS];
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			snapshot[i] = this.counts.get(i);
+			n += snapshot[i];
+		}
+		if (n == 0)
+			return 0;
+		long target = Math.max(1, (long) Math.ceil(fraction * n));
+		long seen = 0;
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= target)
+				return Math.min(bucketTop(i), this.max.get()) / 1e6;
+		}
+		return getMaxMillis();
+	}
+
+	/**
+	 * Forgets every latency recorded so far
+	 */
+	public void reset() {
+		for (int i = 0; i < NUM_BUCKETS; i++)
+			this.counts.set(i, 0);
+		this.count.set(0);
+		this.total.set(0);
+		this.max.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"%s: %d, mean %.2fms, p50 %.2fms, p90 %.2fms, p99 %.2fms, max %.2fms",
+				this.name, getCount(), getMeanMillis(),
+				getPercentileMillis(0.5), getPercentileMillis(0.9),
+				getPercentileMillis(0.99), getMaxMillis());
+	}
+}
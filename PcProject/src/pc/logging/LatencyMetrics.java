@@ -0,0 +1,113 @@
+package pc.logging;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import pc.comms.CommandQueue;
+import pc.vision.StageTiming;
+
+/**
+ * The latency histograms for each stage between a frame being captured and
+ * the commands decided on from it leaving for the brick. Frames are followed
+ * through the stages by FrameTiming.
+ */
+public class LatencyMetrics {
+	public static final LatencyHistogram CAPTURE_TO_RECOGNISED = new LatencyHistogram(
+			"capture -> recognised");
+	public static final LatencyHistogram RECOGNISED_TO_DECISION = new LatencyHistogram(
+			"recognised -> decision");
+	public static final LatencyHistogram DECISION_TO_ENQUEUE = new LatencyHistogram(
+			"decision -> enqueue");
+	public static final LatencyHistogram ENQUEUE_TO_FLUSHED = new LatencyHistogram(
+			"enqueue -> flushed");
+	public static final LatencyHistogram CAPTURE_TO_FLUSHED = new LatencyHistogram(
+			"capture -> flushed");
+
+	private static Timer dumpTimer;
+	// The queues commands wait in before being sent, which are dumped with
+	// the histograms
+	private static final Map<String, CommandQueue> commandQueues = new LinkedHashMap<String, CommandQueue>();
+	// The timings of the video pipeline's stages, dumped in the same way
+	private static final List<StageTiming> stageTimings = new ArrayList<StageTiming>();
+
+	private LatencyMetrics() {
+	}
+
+	/**
+	 * Gets every histogram, in the order of the stages
+	 */
+	public static List<LatencyHistogram> getHistograms() {
+		return Arrays.asList(CAPTURE_TO_RECOGNISED, RECOGNISED_TO_DECISION,
+				DECISION_TO_ENQUEUE, ENQUEUE_TO_FLUSHED, CAPTURE_TO_FLUSHED);
+	}
+
+	public static void reset() {
+		for (LatencyHistogram histogram : getHistograms())
+			histogram.reset();
+	}
+
+	/**
+	 * Adds a brick's command queue, whose statistics are printed by dump
+	 * 
+	 * @param name
+	 *            The name of the brick
+	 */
+	public static synchronized void addCommandQueue(String name,
+			CommandQueue queue) {
+		commandQueues.put(name, queue);
+	}
+
+	/**
+	 * Adds the timing of a stage of the video pipeline, which is printed by
+	 * dump
+	 */
+	public static synchronized void addStageTiming(StageTiming timing) {
+		stageTimings.add(timing);
+	}
+
+	/**
+	 * Prints every histogram, stage timing and command queue to standard
+	 * output
+	 */
+	public static synchronized void dump() {
+		StringBuilder dump = new StringBuilder("Latency:");
+		for (LatencyHistogram histogram : getHistograms())
+			dump.append("\n  ").append(histogram);
+		for (StageTiming timing : stageTimings)
+			dump.append("\n  ").append(timing);
+		for (Map.Entry<String, CommandQueue> queue : commandQueues.entrySet())
+			dump.append("\n  ").append(queue.getKey()).append(" commands: ")
+					.append(queue.getValue());
+		System.out.println(dump);
+	}
+
+	/**
+	 * Starts printing every histogram periodically, replacing any previous
+	 * period
+	 *
+	 * @param periodMillis
+	 *            The time between dumps
+	 */
+	public static synchronized void startDumping(long periodMillis) {
+		stopDumping();
+		dumpTimer = new Timer("Latency dump", true);
+		dumpTimer.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				dump();
+			}
+		}, periodMillis, periodMillis);
+	}
+
+	public static synchronized void stopDumping() {
+		if (dumpTimer != null) {
+			dumpTimer.cancel();
+			dumpTimer = null;
+		}
+	}
+}
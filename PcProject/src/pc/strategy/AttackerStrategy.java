@@ -4,15 +4,14 @@ import pc.comms.BrickCommServer;
 import pc.comms.RobotCommand;
 import pc.strategy.Operation;
 import pc.vision.PitchConstants;
-import pc.world.oldmodel.WorldState;
+import pc.world.WorldSnapshot;
 
 public class AttackerStrategy extends GeneralStrategy {
 
 	private static final int KICK_TIMEOUT = 120000000;
 	
 	private BrickCommServer brick;
-	private ControlThread controlThread;
-	private boolean stopControlThread;
+	private Control control;
 	private boolean ballInEnemyAttackerArea = false;
 	private boolean justCaught = true;
 	private boolean fromSide = false;
@@ -21,22 +20,21 @@ public class AttackerStrategy extends GeneralStrategy {
 
 	public AttackerStrategy(BrickCommServer brick) {
 		this.brick = brick;
-		controlThread = new ControlThread();
+		control = new Control();
 	}
 
 	@Override
-	public void stopControlThread() {
-		stopControlThread = true;
+	public ControlTicker getTicker() {
+		return control.ticker;
 	}
 
 	@Override
-	public void startControlThread() {
-		stopControlThread = false;
-		controlThread.start();
+	public void act() {
+		control.act();
 	}
 
 	@Override
-	public void sendWorldState(WorldState worldState) {
+	public void sendWorldState(WorldSnapshot worldState) {
 		super.sendWorldState(worldState);
 
 		if (worldState.weAreShootingRight && ballX > defenderCheck
@@ -48,8 +46,8 @@ public class AttackerStrategy extends GeneralStrategy {
 		}
 		if ((ballX < leftCheck || ballX > rightCheck)
 				&& !ballInEnemyAttackerArea) {
-			synchronized (controlThread) {
-				controlThread.operation.op = Operation.Type.DO_NOTHING;
+			synchronized (control) {
+				control.operation.op = Operation.Type.DO_NOTHING;
 			}
 			return;
 		}
@@ -58,69 +56,70 @@ public class AttackerStrategy extends GeneralStrategy {
 		} else {
 			fromSide = false;
 		}
-		synchronized (controlThread) {
+		synchronized (control) {
 			if (ballInEnemyAttackerArea) { 
-				controlThread.operation = returnToOrigin(RobotType.ATTACKER);
+				control.operation = returnToOrigin(RobotType.ATTACKER);
 			} else {
 				if (!ballCaughtAttacker) {
-					controlThread.operation = catchBall(RobotType.ATTACKER);
+					control.operation = catchBall(RobotType.ATTACKER);
 					justCaught = true;
 					timerOn = false;
 				} else {
-					controlThread.operation = scoreGoal(RobotType.ATTACKER);
+					control.operation = scoreGoal(RobotType.ATTACKER);
 					if (!timerOn) {
 					timerOn = true;
-					kickTimer = System.currentTimeMillis();
+					kickTimer = StrategyClock.currentTimeMillis();
 					}
 					if (justCaught && fromSide) {
-						controlThread.operation.op = Operation.Type.ATKROTATE;
-						controlThread.operation.rotateBy = (int) calculateAngle(attackerRobotX, attackerRobotY, attackerOrientation, leftCheck, attackerRobotY);
-						controlThread.operation.rotateSpeed = 50;
-						if (Math.abs(controlThread.operation.rotateBy) < 10) {
-							controlThread.operation.op = Operation.Type.DO_NOTHING;
+						control.operation.op = Operation.Type.ATKROTATE;
+						control.operation.rotateBy = (int) calculateAngle(attackerRobotX, attackerRobotY, attackerOrientation, leftCheck, attackerRobotY);
+						control.operation.rotateSpeed = 50;
+						if (Math.abs(control.operation.rotateBy) < 10) {
+							control.operation.op = Operation.Type.DO_NOTHING;
 						}
-						if (controlThread.operation.op == Operation.Type.DO_NOTHING) {
+						if (control.operation.op == Operation.Type.DO_NOTHING) {
 							justCaught = false;
 						}
 					}
 					
 				}
 				// kicks if detected false catch
-				if ((timerOn && (System.currentTimeMillis() - kickTimer) > KICK_TIMEOUT) || (ballCaughtAttacker
+				if ((timerOn && (StrategyClock.currentTimeMillis() - kickTimer) > KICK_TIMEOUT) || (ballCaughtAttacker
 						&& (Math.hypot(ballX - attackerRobotX, ballY
 								- attackerRobotY) > 60) && !worldState.ballNotOnPitch)) {
-					controlThread.operation.op = Operation.Type.ATKKICK;
+					control.operation.op = Operation.Type.ATKKICK;
 				}
 			}
 		}
 	}
 
-	private class ControlThread extends Thread {
+	private class Control {
 		public Operation operation = new Operation();
+		private final ControlTicker ticker = new ControlTicker(brick);
 
 		private long lastKickerEventTime = 0;
 
-		public ControlThread() {
-			super("Robot control thread");
-			setDaemon(true);
-		}
-
-		@Override
-		public void run() {
-			try {
+		/**
+		 * Sends the commands for the operation decided on, unless it was
+		 * already acted on
+		 */
+		public void act() {
 //				Operation.Type prevOp = null;
-				while (!stopControlThread) {
-					int travelDist, rotateBy, rotateSpeed, travelSpeed;
-					Operation.Type op;
-					double radius;
-					synchronized (this) {
-						op = this.operation.op;
-						rotateBy = this.operation.rotateBy;
-						rotateSpeed = this.operation.rotateSpeed;
-						travelDist = this.operation.travelDistance;
-						travelSpeed = this.operation.travelSpeed;
-						radius = this.operation.radius;
-					}
+			int travelDist, rotateBy, rotateSpeed, travelSpeed;
+			Operation.Type op;
+			double radius;
+			Operation decided;
+			synchronized (this) {
+				decided = new Operation(this.operation);
+				if (!ticker.shouldAct(decided))
+					return;
+				op = this.operation.op;
+				rotateBy = this.operation.rotateBy;
+				rotateSpeed = this.operation.rotateSpeed;
+				travelDist = this.operation.travelDistance;
+				travelSpeed = this.operation.travelSpeed;
+				radius = this.operation.radius;
+			}
 
 //					if (prevOp != null) {
 //						if (!op.equals(prevOp)){
@@ -131,76 +130,88 @@ public class AttackerStrategy extends GeneralStrategy {
 //					}
 //					prevOp = op;
 
-					switch (op) {
-					case DO_NOTHING:
-						break;
-					case ATKCATCH:
-						if (System.currentTimeMillis() - lastKickerEventTime > 1000) {
-							brick.execute(new RobotCommand.Catch());
-							ballCaughtAttacker = true;
-							lastKickerEventTime = System.currentTimeMillis();
-						}
-						break;
-					case ATKMOVEKICK:
-						if (System.currentTimeMillis() - lastKickerEventTime > 1000) {
-							brick.execute(new RobotCommand.Travel(100, 10000));
-							brick.execute(new RobotCommand.Kick(100));
-							ballCaughtAttacker = false;
-							lastKickerEventTime = System.currentTimeMillis();
-						}
-						break;
-					case ATKKICK:
-						if (System.currentTimeMillis() - lastKickerEventTime > 1000) {
-							brick.execute(new RobotCommand.Kick(100));
-							ballCaughtAttacker = false;
-							lastKickerEventTime = System.currentTimeMillis();
-						}
-						break;
-					case ATKCONFUSEKICKRIGHT:
-						if (System.currentTimeMillis() - lastKickerEventTime > 1000) {
-							brick.execute(new RobotCommand.Rotate(75, 100, false));
-							brick.execute(new RobotCommand.Rotate(-100, 1000, false));
-							brick.execute(new RobotCommand.Travel(100, 10000));
-							brick.execute(new RobotCommand.Kick(100));
-							ballCaughtAttacker = false;
-							lastKickerEventTime = System.currentTimeMillis();
-						}
-						break;
-					case ATKCONFUSEKICKLEFT:
-						if (System.currentTimeMillis() - lastKickerEventTime > 1000) {
-							brick.execute(new RobotCommand.Rotate(-75, 100, false));
-							brick.execute(new RobotCommand.Rotate(100, 1000, false));
-							brick.execute(new RobotCommand.Travel(100, 10000));
-							brick.execute(new RobotCommand.Kick(100));
-							ballCaughtAttacker = false;
-							lastKickerEventTime = System.currentTimeMillis();
-						}
-						break;
-					case ATKROTATE:
-						brick.execute(new RobotCommand.Rotate(-rotateBy,
-								rotateSpeed));
-						break;
-					case ATKTRAVEL:
-						brick.execute(new RobotCommand.Travel(travelDist,
-								travelSpeed));
-						break;
-					case ATKARC_LEFT:
-						brick.execute(new RobotCommand.TravelArc(radius,
-								travelDist, travelSpeed));
-						break;
-					case ATKARC_RIGHT:
-						brick.execute(new RobotCommand.TravelArc(-radius,
-								travelDist, travelSpeed));
-						break;
-					default:
-						break;
-					}
-					Thread.sleep(StrategyController.STRATEGY_TICK);
+			// Cleared if the kicker guard holds an operation back, so that
+			// the ticker doesn't hold back its repeats as well
+			boolean acted = true;
+			switch (op) {
+			case DO_NOTHING:
+				break;
+			case ATKCATCH:
+				if (StrategyClock.currentTimeMillis() - lastKickerEventTime > 1000) {
+					brick.execute(new RobotCommand.Catch());
+					ballCaughtAttacker = true;
+					lastKickerEventTime = StrategyClock.currentTimeMillis();
+				} else {
+					acted = false;
+				}
+				break;
+			case ATKMOVEKICK:
+				if (StrategyClock.currentTimeMillis() - lastKickerEventTime > 1000) {
+					brick.execute(new RobotCommand.Sequence(
+							new RobotCommand.Travel(100, 10000),
+							new RobotCommand.Kick(100)));
+					ballCaughtAttacker = false;
+					lastKickerEventTime = StrategyClock.currentTimeMillis();
+				} else {
+					acted = false;
+				}
+				break;
+			case ATKKICK:
+				if (StrategyClock.currentTimeMillis() - lastKickerEventTime > 1000) {
+					brick.execute(new RobotCommand.Kick(100));
+					ballCaughtAttacker = false;
+					lastKickerEventTime = StrategyClock.currentTimeMillis();
+				} else {
+					acted = false;
 				}
-			} catch (InterruptedException e) {
-				e.printStackTrace();
+				break;
+			case ATKCONFUSEKICKRIGHT:
+				if (StrategyClock.currentTimeMillis() - lastKickerEventTime > 1000) {
+					brick.execute(new RobotCommand.Sequence(
+							new RobotCommand.Rotate(75, 100, false),
+							new RobotCommand.Rotate(-100, 1000, false),
+							new RobotCommand.Travel(100, 10000),
+							new RobotCommand.Kick(100)));
+					ballCaughtAttacker = false;
+					lastKickerEventTime = StrategyClock.currentTimeMillis();
+				} else {
+					acted = false;
+				}
+				break;
+			case ATKCONFUSEKICKLEFT:
+				if (StrategyClock.currentTimeMillis() - lastKickerEventTime > 1000) {
+					brick.execute(new RobotCommand.Sequence(
+							new RobotCommand.Rotate(-75, 100, false),
+							new RobotCommand.Rotate(100, 1000, false),
+							new RobotCommand.Travel(100, 10000),
+							new RobotCommand.Kick(100)));
+					ballCaughtAttacker = false;
+					lastKickerEventTime = StrategyClock.currentTimeMillis();
+				} else {
+					acted = false;
+				}
+				break;
+			case ATKROTATE:
+				brick.execute(new RobotCommand.Rotate(-rotateBy,
+						rotateSpeed));
+				break;
+			case ATKTRAVEL:
+				brick.execute(new RobotCommand.Travel(travelDist,
+						travelSpeed));
+				break;
+			case ATKARC_LEFT:
+				brick.execute(new RobotCommand.TravelArc(radius,
+						travelDist, travelSpeed));
+				break;
+			case ATKARC_RIGHT:
+				brick.execute(new RobotCommand.TravelArc(-radius,
+						travelDist, travelSpeed));
+				break;
+			default:
+				break;
 			}
-
+			if (acted)
+				ticker.markActed(decided);
 		}
 
 	}
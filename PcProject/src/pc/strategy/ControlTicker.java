@@ -0,0 +1,91 @@
+package pc.strategy;
+
+import pc.comms.BrickCommServer;
+
+/**
+ * Paces a strategy. StrategyScheduler runs the strategy on each new world
+ * state, but never sooner after the last time than the brick link takes to
+ * send a command, so that a fast camera can't queue up commands faster than
+ * Bluetooth can carry them. The strategy then only sends commands if the
+ * operation it decided on is not close to the last one it acted on, and
+ * marks the operation as acted on once it has sent them.
+ */
+public class ControlTicker {
+	/** The shortest time between ticks, in milliseconds */
+	public static final int MIN_INTERVAL = 10;
+	/**
+	 * A close operation is acted on again after this long, in
+	 * milliseconds, in case the robot didn't finish it. It isn't while a
+	 * brick reports it is still carrying out commands or moving.
+	 */
+	public static final int REPEAT_INTERVAL = 500;
+
+	private final BrickCommServer[] bricks;
+	private Operation lastOperation;
+	private long lastActed = 0;
+
+	/**
+	 * @param bricks
+	 *            The bricks the strategy sends commands to
+	 */
+	public ControlTicker(BrickCommServer... bricks) {
+		this.bricks = bricks;
+	}
+
+	public BrickCommServer[] getBricks() {
+		return this.bricks;
+	}
+
+	/**
+	 * Gets the shortest time allowed between ticks, which is the mean time
+	 * the slowest brick takes to send a command, between MIN_INTERVAL and
+	 * STRATEGY_TICK
+	 * 
+	 * @return the interval in nanoseconds
+	 */
+	public long getMinInterval() {
+		long interval = MIN_INTERVAL * 1000000L;
+		for (BrickCommServer brick : this.bricks)
+			interval = Math.max(interval, brick.getMeanSendNanos());
+		return Math.min(interval, StrategyController.STRATEGY_TICK * 1000000L);
+	}
+
+	private boolean isBusy() {
+		for (BrickCommServer brick : this.bricks)
+			if (brick.isBusy())
+				return true;
+		return false;
+	}
+
+	/**
+	 * Checks whether the strategy should act on an operation. It should
+	 * unless it is close to the last operation acted on, as
+	 * Operation.isCloseTo has it, and that was less than REPEAT_INTERVAL ago
+	 * or the robot is still busy with it. Nothing is remembered until
+	 * markActed is called.
+	 * 
+	 * @param operation
+	 *            A copy of the operation the strategy has decided on
+	 */
+	public synchronized boolean shouldAct(Operation operation) {
+		long now = StrategyClock.nanoTime();
+		if (operation.isCloseTo(this.lastOperation)
+				&& (now - this.lastActed < REPEAT_INTERVAL * 1000000L || isBusy()))
+			return false;
+		return true;
+	}
+
+	/**
+	 * Remembers an operation as acted on, once its commands have been
+	 * executed. An operation that was held back without sending anything,
+	 * such as a kick too soon after the last, shouldn't be marked, so that
+	 * it is tried again on the next tick.
+	 * 
+	 * @param operation
+	 *            The operation passed to shouldAct
+	 */
+	public synchronized void markActed(Operation operation) {
+		this.lastOperation = operation;
+		this.lastActed = StrategyClock.nanoTime();
+	}
+}
@@ -4,14 +4,13 @@ import pc.prediction.Calculations;
 import pc.strategy.Operation.Type;
 import pc.strategy.interfaces.Strategy;
 import pc.vision.PitchConstants;
-import pc.world.oldmodel.WorldState;
+import pc.world.WorldSnapshot;
 
-public class GeneralStrategy implements Strategy {
+public abstract class GeneralStrategy implements Strategy {
 
 	private static final int ATTACKER_SPEED_CONSTANT = 50;
 	private static final int DEFENDER_SPEED_CONSTANT = 0;
 
-	protected ControlThread controlThread;
 	protected float attackerRobotX;
 	protected float attackerRobotY;
 	protected float defenderRobotX;
@@ -52,28 +51,6 @@ public class GeneralStrategy implements Strategy {
 	protected boolean attackerNotOnPitch;
 	private int BOUNCE_SHOT_DISTANCE = 50;
 
-	@Override
-	public void stopControlThread() {
-		controlThread.stop();
-	}
-
-	@Override
-	public void startControlThread() {
-		controlThread.start();
-	}
-
-	private class ControlThread extends Thread {
-
-		public ControlThread() {
-			super("Robot control thread");
-			setDaemon(true);
-		}
-
-		@Override
-		public void run() {
-		}
-	}
-
 	public enum RobotType {
 		ATTACKER, DEFENDER
 	}
@@ -519,7 +496,7 @@ public class GeneralStrategy implements Strategy {
 	}
 
 	@Override
-	public void sendWorldState(WorldState worldState) {
+	public void sendWorldState(WorldSnapshot worldState) {
 		attackerRobotX = worldState.getAttackerRobot().x;
 		attackerRobotY = worldState.getAttackerRobot().y;
 		defenderRobotX = worldState.getDefenderRobot().x;
@@ -6,7 +6,7 @@ import java.util.Deque;
 import pc.comms.BrickCommServer;
 import pc.comms.RobotCommand;
 import pc.vision.Vector2f;
-import pc.world.oldmodel.WorldState;
+import pc.world.WorldSnapshot;
 
 /* This is a class that manages the strategy for the defender robot to intercept
  * an incoming ball. If the ball is moving away from the robot then
@@ -14,26 +14,26 @@ import pc.world.oldmodel.WorldState;
  */
 public class InterceptorStrategy extends GeneralStrategy {
 	private BrickCommServer brick;
-	private ControlThread controlThread;
+	private Control control;
 	private Deque<Vector2f> ballPositions = new ArrayDeque<Vector2f>();
 	private boolean needReset = false;
 	public InterceptorStrategy(BrickCommServer brick) {
 		this.brick = brick;
-		controlThread = new ControlThread();
+		control = new Control();
 	}
 
 	@Override
-	public void stopControlThread() {
-		controlThread.stop();
+	public ControlTicker getTicker() {
+		return control.ticker;
 	}
 
 	@Override
-	public void startControlThread() {
-		controlThread.start();
+	public void act() {
+		control.act();
 	}
 
 	@Override
-	public void sendWorldState(WorldState worldState) {
+	public void sendWorldState(WorldSnapshot worldState) {
 		super.sendWorldState(worldState);
 		boolean ballInAttackerArea = false;
 		ballPositions.addLast(new Vector2f(worldState.getBall().x, worldState
@@ -68,82 +68,81 @@ public class InterceptorStrategy extends GeneralStrategy {
 
 		dist = targetY - defenderRobotY;
 
-		synchronized (controlThread) {
+		synchronized (control) {
 			if (ballInAttackerArea || Math.abs(defenderRobotX - defenderCheck) < 20 ||  Math.abs(defenderRobotX - ourGoalX) < 40 || needReset) {
 				needReset = true;
-				controlThread.operation = travelToNoArc(RobotType.DEFENDER,
+				control.operation = travelToNoArc(RobotType.DEFENDER,
 						defenderResetX, defenderResetY, 20);
-				if (controlThread.operation.op == Operation.Type.DO_NOTHING) {
+				if (control.operation.op == Operation.Type.DO_NOTHING) {
 					needReset = false;
 				}
 			} else {
-			controlThread.operation.rotateBy = (int) ang1;
-			controlThread.operation.travelDistance = (int) (dist * 0.8);
-			if (Math.abs(controlThread.operation.rotateBy) > 3) {
-				controlThread.operation.op = Operation.Type.DEFROTATE;
+			control.operation.rotateBy = (int) ang1;
+			control.operation.travelDistance = (int) (dist * 0.8);
+			if (Math.abs(control.operation.rotateBy) > 3) {
+				control.operation.op = Operation.Type.DEFROTATE;
 			} else {
-				controlThread.operation.op = Operation.Type.DEFTRAVEL;
+				control.operation.op = Operation.Type.DEFTRAVEL;
 				}	
 			}
 
 		}
 	}
 
-	private class ControlThread extends Thread {
+	private class Control {
 		public Operation operation = new Operation();
-		private ControlThread controlThread;
+		private final ControlTicker ticker = new ControlTicker(brick);
 		private long lastKickerEventTime = 0;
 
-		public ControlThread() {
-			super("Robot control thread");
-			setDaemon(true);
-		}
-
-		@Override
-		public void run() {
-			try {
-				while (true) {
-					Operation.Type op;
-					int rotateBy, travelDist;
-					synchronized (this) {
-						op = this.operation.op;
-						rotateBy = this.operation.rotateBy;
-						travelDist = this.operation.travelDistance;
-					}
+		/**
+		 * Sends the commands for the operation decided on, unless it was
+		 * already acted on
+		 */
+		public void act() {
+			Operation.Type op;
+			int rotateBy, travelDist;
+			Operation decided;
+			synchronized (this) {
+				decided = new Operation(this.operation);
+				if (!ticker.shouldAct(decided))
+					return;
+				op = this.operation.op;
+				rotateBy = this.operation.rotateBy;
+				travelDist = this.operation.travelDistance;
+			}
 //					System.out.println("operation: " + op + " rotateBy: "
 //							 + rotateBy + " travelDist: " + travelDist);
-					switch (op) {
-					case DEFROTATE:
-						if (rotateBy != 0) {
-						brick.executeSync(new RobotCommand.Rotate(
-								rotateBy, Math.abs(rotateBy)));
-						}
-						break;
-					case DEFTRAVEL:
-						 if (travelDist != 0) {
-							brick.execute(new RobotCommand.Travel(
-									travelDist / 3,
-									Math.abs(travelDist) * 3 + 25));
-						}
-						break;
-					case DEFKICK:
-						if (System.currentTimeMillis() - lastKickerEventTime > 1000) {
-						//	brick.execute(new RobotCommand.Kick(30));
-							ballCaughtDefender = false;
-							lastKickerEventTime = System.currentTimeMillis();
-						}
-						break;
-					default:
-						break;
-					}
-					Thread.sleep(StrategyController.STRATEGY_TICK); // TODO: Test lower values for this and
-										// see where it breaks.
+			// Cleared if the kicker guard holds an operation back, so that
+			// the ticker doesn't hold back its repeats as well
+			boolean acted = true;
+			switch (op) {
+			case DEFROTATE:
+				if (rotateBy != 0) {
+				brick.executeSync(new RobotCommand.Rotate(
+						rotateBy, Math.abs(rotateBy)));
+				}
+				break;
+			case DEFTRAVEL:
+				 if (travelDist != 0) {
+					brick.execute(new RobotCommand.Travel(
+							travelDist / 3,
+							Math.abs(travelDist) * 3 + 25));
+				}
+				break;
+			case DEFKICK:
+				if (StrategyClock.currentTimeMillis() - lastKickerEventTime > 1000) {
+				//	brick.execute(new RobotCommand.Kick(30));
+					ballCaughtDefender = false;
+					lastKickerEventTime = StrategyClock.currentTimeMillis();
+				} else {
+					acted = false;
 				}
-				// } catch (IOException e) {
-				// e.printStackTrace();
-			} catch (InterruptedException e) {
-				e.printStackTrace();
+				break;
+			default:
+				break;
 			}
+			if (acted)
+				ticker.markActed(decided);
 		}
 
 	}
@@ -2,7 +2,7 @@ package pc.strategy;
 
 import pc.comms.BrickCommServer;
 import pc.comms.RobotCommand;
-import pc.world.oldmodel.WorldState;
+import pc.world.WorldSnapshot;
 
 /**
  * This is a strategy to "mark" the enemy attacker when their defender has the
@@ -17,25 +17,25 @@ import pc.world.oldmodel.WorldState;
 public class MarkingStrategy extends GeneralStrategy {
 
 	private BrickCommServer brick;
-	private ControlThread controlThread;
+	private Control control;
 
 	public MarkingStrategy(BrickCommServer brick) {
 		this.brick = brick;
-		this.controlThread = new ControlThread();
+		this.control = new Control();
 	}
 
 	@Override
-	public void stopControlThread() {
-		this.controlThread.stop();
+	public ControlTicker getTicker() {
+		return this.control.ticker;
 	}
 
 	@Override
-	public void startControlThread() {
-		this.controlThread.start();
+	public void act() {
+		this.control.act();
 	}
 
 	@Override
-	public void sendWorldState(WorldState worldState) {
+	public void sendWorldState(WorldSnapshot worldState) {
 //		System.out.println("Marking");
 		float robotX = worldState.getAttackerRobot().x;
 		float robotY = worldState.getAttackerRobot().y;
@@ -65,130 +65,132 @@ public class MarkingStrategy extends GeneralStrategy {
 		double robotToTargetDistance = Math.hypot(targetX - robotX, targetY
 				- robotY);
 
-		synchronized (this.controlThread) {
-			this.controlThread.operation.op = Operation.Type.DO_NOTHING;
+		synchronized (this.control) {
+			this.control.operation.op = Operation.Type.DO_NOTHING;
 
 			if (Math.abs(robotToTargetDistance) > 15) {
 				
 				//Decide if we'll go forward or backwards
 				if (Math.abs(robotToTargetAngle) < 90) {
-					this.controlThread.operation.travelDistance = (int) robotToTargetDistance;
+					this.control.operation.travelDistance = (int) robotToTargetDistance;
 				} else {
-					this.controlThread.operation.travelDistance = (int) -robotToTargetDistance;
+					this.control.operation.travelDistance = (int) -robotToTargetDistance;
 				}
 				
 				//Decide if we need to go in a straight line or arc to the target
 				if (Math.abs(robotToTargetAngle) > 45) {
-					controlThread.operation.op = Operation.Type.ATKROTATE;
-					controlThread.operation.rotateBy = (int) -robotToTargetAngle;
+					control.operation.op = Operation.Type.ATKROTATE;
+					control.operation.rotateBy = (int) -robotToTargetAngle;
 				}
 				else if (Math.abs(robotToTargetAngle) > 150 || Math.abs(robotToTargetAngle) < 10) {
 					//Go in a straight line
-					this.controlThread.operation.op = Operation.Type.ATKTRAVEL;
+					this.control.operation.op = Operation.Type.ATKTRAVEL;
 					//System.out.println("Straight line: " + targetY);
 				} //Now we decide if we need to go left or right 
 				else if (robotToTargetAngle > 10) {
-					this.controlThread.operation.op = Operation.Type.ATKARC_LEFT;
+					this.control.operation.op = Operation.Type.ATKARC_LEFT;
 					if (robotToTargetAngle > 90) {
 						//We're going backwards, so reverse the direction
-						this.controlThread.operation.op = Operation.Type.ATKARC_RIGHT;
+						this.control.operation.op = Operation.Type.ATKARC_RIGHT;
 					}
-					this.controlThread.operation.radius = robotToTargetDistance * 10;
+					this.control.operation.radius = robotToTargetDistance * 10;
 				} else if (robotToTargetAngle < 10) {
-					this.controlThread.operation.op = Operation.Type.ATKARC_RIGHT;
+					this.control.operation.op = Operation.Type.ATKARC_RIGHT;
 					if (robotToTargetAngle < -90) {
 						//We're going backwards, so reverse the direction
-						this.controlThread.operation.op = Operation.Type.ATKARC_LEFT;
+						this.control.operation.op = Operation.Type.ATKARC_LEFT;
 					}
-					this.controlThread.operation.radius = robotToTargetDistance * 10;
+					this.control.operation.radius = robotToTargetDistance * 10;
 				}
 
-				this.controlThread.operation.travelSpeed = (int) (200);
+				this.control.operation.travelSpeed = (int) (200);
 			} else {
 				if (robotO >= 0 && robotO <= 85) {
-					this.controlThread.operation.op = Operation.Type.ATKROTATE;
-					this.controlThread.operation.rotateBy = (int) (90 - robotO);
+					this.control.operation.op = Operation.Type.ATKROTATE;
+					this.control.operation.rotateBy = (int) (90 - robotO);
 				//	System.out.println("Rotating to align");
 				} else if (robotO >= 95 && robotO <= 179) {
-					this.controlThread.operation.op = Operation.Type.ATKROTATE;
-					this.controlThread.operation.rotateBy = (int) -(90 - robotO);
+					this.control.operation.op = Operation.Type.ATKROTATE;
+					this.control.operation.rotateBy = (int) -(90 - robotO);
 				//	System.out.println("Rotating to align");
 				} else if (robotO >= 180 && robotO <= 265) {
-					this.controlThread.operation.op = Operation.Type.ATKROTATE;
-					this.controlThread.operation.rotateBy = (int) (270 - robotO);
+					this.control.operation.op = Operation.Type.ATKROTATE;
+					this.control.operation.rotateBy = (int) (270 - robotO);
 				//	System.out.println("Rotating to align");
 				} else if (robotO >= 275 && robotO <= 360) {
-					this.controlThread.operation.op = Operation.Type.ATKROTATE;
-					this.controlThread.operation.rotateBy = (int) -(270 - robotO);
+					this.control.operation.op = Operation.Type.ATKROTATE;
+					this.control.operation.rotateBy = (int) -(270 - robotO);
 				//	System.out.println("Rotating to align");
 				} else {
-					this.controlThread.operation.op = Operation.Type.DO_NOTHING;
+					this.control.operation.op = Operation.Type.DO_NOTHING;
 				}
 			}
 			if (ballCaughtAttacker && (Math.hypot(ballX - attackerRobotX, ballY - attackerRobotY) > 45)) {
-				controlThread.operation.op = Operation.Type.ATKKICK;
+				control.operation.op = Operation.Type.ATKKICK;
 			}
 		}
 	}
 
-	private class ControlThread extends Thread {
+	private class Control {
 		public Operation operation = new Operation();
+		private final ControlTicker ticker = new ControlTicker(brick);
 		
 		private long lastKickerEventTime = 0;
 
-		public ControlThread() {
-			super("Robot control thread");
-			setDaemon(true);
-		}
+		/**
+		 * Sends the commands for the operation decided on, unless it was
+		 * already acted on
+		 */
+		public void act() {
+			int travelDist, rotateBy, travelSpeed;
+			Operation.Type op;
+			double radius;
+			Operation decided;
+			synchronized (this) {
+				decided = new Operation(this.operation);
+				if (!ticker.shouldAct(decided))
+					return;
+				op = this.operation.op;
+				rotateBy = this.operation.rotateBy;
+				travelDist = this.operation.travelDistance;
+				travelSpeed = this.operation.travelSpeed;
+				radius = this.operation.radius;
+			}
 
-		@Override
-		public void run() {
-			try {
-				while (true) {
-					int travelDist, rotateBy, travelSpeed;
-					Operation.Type op;
-					double radius;
-					synchronized (this) {
-						op = this.operation.op;
-						rotateBy = this.operation.rotateBy;
-						travelDist = this.operation.travelDistance;
-						travelSpeed = this.operation.travelSpeed;
-						radius = this.operation.radius;
-					}
 
+			// Cleared if the kicker guard holds an operation back, so that
+			// the ticker doesn't hold back its repeats as well
+			boolean acted = true;
+			switch (op) {
+			case DO_NOTHING:
 
-					switch (op) {
-					case DO_NOTHING:
-
-						break;
-					case ATKKICK:
-						if (System.currentTimeMillis() - lastKickerEventTime > 500) {
-							brick.execute(new RobotCommand.Kick(100));
-							ballCaughtAttacker = false;
-							lastKickerEventTime = System.currentTimeMillis();
-						}
-						break;
-					case ATKTRAVEL:
-						brick.executeSync(new RobotCommand.Travel(travelDist, travelSpeed));
-						break;
-					case ATKARC_LEFT:
-						brick.executeSync(new RobotCommand.TravelArc(radius, travelDist, travelSpeed));
-						break;
-					case ATKARC_RIGHT:
-						brick.executeSync(new RobotCommand.TravelArc(-radius, travelDist, travelSpeed));
-						break;
-					case ATKROTATE:
-						brick.executeSync(new RobotCommand.Rotate(-rotateBy, Math.abs(rotateBy)));
-						break;
-					default:
-						break;
-					}
-					Thread.sleep(StrategyController.STRATEGY_TICK);
+				break;
+			case ATKKICK:
+				if (StrategyClock.currentTimeMillis() - lastKickerEventTime > 500) {
+					brick.execute(new RobotCommand.Kick(100));
+					ballCaughtAttacker = false;
+					lastKickerEventTime = StrategyClock.currentTimeMillis();
+				} else {
+					acted = false;
 				}
-			} catch (InterruptedException e) {
-				e.printStackTrace();
+				break;
+			case ATKTRAVEL:
+				brick.executeSync(new RobotCommand.Travel(travelDist, travelSpeed));
+				break;
+			case ATKARC_LEFT:
+				brick.executeSync(new RobotCommand.TravelArc(radius, travelDist, travelSpeed));
+				break;
+			case ATKARC_RIGHT:
+				brick.executeSync(new RobotCommand.TravelArc(-radius, travelDist, travelSpeed));
+				break;
+			case ATKROTATE:
+				brick.executeSync(new RobotCommand.Rotate(-rotateBy, Math.abs(rotateBy)));
+				break;
+			default:
+				break;
 			}
-
+			if (acted)
+				ticker.markActed(decided);
 		}
 
 	}
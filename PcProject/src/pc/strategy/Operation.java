@@ -9,5 +9,82 @@ public class Operation {
 	public Type op = Type.DO_NOTHING;
 	public double radius;
 	public int travelDistance, travelSpeed, rotateBy, rotateSpeed;
-	
+
+	/**
+	 * How far apart rotations can be and still count as the same, in
+	 * degrees. Rotations are compared by where they leave the robot facing,
+	 * so one of 179 is close to one of -175.
+	 */
+	public static final int ANGLE_TOLERANCE = 10;
+	/** How far apart distances and radii can be and still count as the same */
+	public static final int DISTANCE_TOLERANCE = 10;
+	/** The fraction speeds can differ by and still count as the same */
+	public static final double SPEED_TOLERANCE = 0.2;
+
+	public Operation() {
+	}
+
+	/**
+	 * Copies another operation, so that it can be kept after the original is
+	 * changed
+	 */
+	public Operation(Operation other) {
+		this.op = other.op;
+		this.radius = other.radius;
+		this.travelDistance = other.travelDistance;
+		this.travelSpeed = other.travelSpeed;
+		this.rotateBy = other.rotateBy;
+		this.rotateSpeed = other.rotateSpeed;
+	}
+
+	/**
+	 * Checks whether another operation is near enough to this one to need
+	 * no new commands. The values are recalculated from vision every frame,
+	 * so they hardly ever repeat exactly even when the robot is doing what
+	 * it should.
+	 */
+	public boolean isCloseTo(Operation other) {
+		return other != null
+				&& this.op == other.op
+				&& Math.abs(angleBetween(this.rotateBy, other.rotateBy)) <= ANGLE_TOLERANCE
+				&& Math.abs(this.travelDistance - other.travelDistance) <= DISTANCE_TOLERANCE
+				&& Math.abs(this.radius - other.radius) <= DISTANCE_TOLERANCE
+				&& isSpeedClose(this.travelSpeed, other.travelSpeed)
+				&& isSpeedClose(this.rotateSpeed, other.rotateSpeed);
+	}
+
+	/** Gets a - b in degrees, between -180 and 180 */
+	private static int angleBetween(int a, int b) {
+		return ((a - b) % 360 + 540) % 360 - 180;
+	}
+
+	private static boolean isSpeedClose(int speed, int other) {
+		return Math.abs(speed - other) <= SPEED_TOLERANCE
+				* Math.max(Math.abs(speed), Math.abs(other));
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof Operation))
+			return false;
+		Operation other = (Operation) obj;
+		return this.op == other.op
+				&& Double.compare(this.radius, other.radius) == 0
+				&& this.travelDistance == other.travelDistance
+				&& this.travelSpeed == other.travelSpeed
+				&& this.rotateBy == other.rotateBy
+				&& this.rotateSpeed == other.rotateSpeed;
+	}
+
+	@Override
+	public int hashCode() {
+		long radiusBits = Double.doubleToLongBits(this.radius);
+		int hash = this.op.hashCode();
+		hash = 31 * hash + (int) (radiusBits ^ (radiusBits >>> 32));
+		hash = 31 * hash + this.travelDistance;
+		hash = 31 * hash + this.travelSpeed;
+		hash = 31 * hash + this.rotateBy;
+		hash = 31 * hash + this.rotateSpeed;
+		return hash;
+	}
 }
@@ -10,14 +10,13 @@ import pc.strategy.GeneralStrategy.RobotType;
 import pc.vision.PitchConstants;
 import pc.vision.Position;
 import pc.vision.Vector2f;
-import pc.world.oldmodel.WorldState;
+import pc.world.WorldSnapshot;
 
 public class PassingStrategy extends GeneralStrategy {
 
 	private BrickCommServer attackerBrick;
 	private BrickCommServer defenderBrick;
-	private ControlThread controlThread;
-	private boolean stopControlThread;
+	private Control control;
 	protected boolean ballIsOnSlopeEdge;
 	protected boolean ballIsOnSideEdge;
 	protected boolean ballIsOnGoalLine;
@@ -39,22 +38,21 @@ public class PassingStrategy extends GeneralStrategy {
 			BrickCommServer defenderBrick) {
 		this.attackerBrick = attackerBrick;
 		this.defenderBrick = defenderBrick;
-		this.controlThread = new ControlThread();
+		this.control = new Control();
 	}
 
 	@Override
-	public void stopControlThread() {
-		stopControlThread = true;
+	public ControlTicker getTicker() {
+		return control.ticker;
 	}
 
 	@Override
-	public void startControlThread() {
-		stopControlThread = false;
-		this.controlThread.start();
+	public void act() {
+		control.act();
 	}
 
 	@Override
-	public void sendWorldState(WorldState worldState) {
+	public void sendWorldState(WorldSnapshot worldState) {
 		super.sendWorldState(worldState);
 		defenderAngleToGoal = calculateAngle(defenderRobotX, defenderRobotY, defenderOrientation, ourGoalX, ourGoalY[1]);
 		distFromBall = Math.hypot(ballX - defenderRobotX, ballY
@@ -269,76 +267,76 @@ public class PassingStrategy extends GeneralStrategy {
 		double distanceToBall = Math.hypot(ballX - defenderRobotX, ballY
 				- defenderRobotY);
 		
-		synchronized (this.controlThread) {
-			this.controlThread.operation.op = Operation.Type.DO_NOTHING;
+		synchronized (this.control) {
+			this.control.operation.op = Operation.Type.DO_NOTHING;
 			if (!this.ballCaughtDefender) {
 				passTimerOn = false;
 				if (!ballIsOnSlopeEdge && !ballIsOnSideEdge && !ballIsOnGoalLine
 						 && !robotIsOnGoalLine && !ballIsOnDefCheck) {
 					defenderHasArrived = false;
 					if (!catcherIsUp && Math.abs(defenderAngleToGoal) > 45) {
-						this.controlThread.operation.op = Operation.Type.DEFKICK;
+						this.control.operation.op = Operation.Type.DEFKICK;
 					} else {
 						if (!defenderHasArrivedAtSafe && !defenderIsSafe) {
 						//	System.out.println("Ball is safe, make attacker safe");
-							this.controlThread.operation = travelTo(RobotType.DEFENDER,
+							this.control.operation = travelTo(RobotType.DEFENDER,
 									defenderResetX, defenderResetY, 40);
-							if (this.controlThread.operation.op == Operation.Type.DO_NOTHING) {
+							if (this.control.operation.op == Operation.Type.DO_NOTHING) {
 								defenderHasArrivedAtSafe = true;
 							}
 						} else {
 						//	System.out.println("Ball and robot are safe, catch ball");
 							affectBallCaught = true;
-							this.controlThread.operation = catchBall(RobotType.DEFENDER);
+							this.control.operation = catchBall(RobotType.DEFENDER);
 						}
 					}
 				} else {
 					if (!defenderHasArrivedAtSafe && !defenderIsSafe) {
 					//	System.out.println("Ball needs scooping, make attacker safe");
-						this.controlThread.operation = travelTo(RobotType.DEFENDER,
+						this.control.operation = travelTo(RobotType.DEFENDER,
 								defenderResetX, defenderResetY, 40);
-						if (this.controlThread.operation.op == Operation.Type.DO_NOTHING) {
+						if (this.control.operation.op == Operation.Type.DO_NOTHING) {
 							defenderHasArrivedAtSafe = true;
 						}
 					} else {
 						if (catcherIsUp && !ballIsMoving && !ballIsOnDefCheck) {
 							affectBallCaught = false;
-							this.controlThread.operation.op = Operation.Type.DEFCATCH;
+							this.control.operation.op = Operation.Type.DEFCATCH;
 						} else {
 							if (!defenderHasArrived) {
 								if (ballIsOnSlopeEdge) {
 									//System.out
 								//			.println("Ball on slope edge, scoup it out");
-									this.controlThread.operation = travelToNoArcNoReverse(
+									this.control.operation = travelToNoArcNoReverse(
 											RobotType.DEFENDER, targetX, targetY, 20);
 								}
 								if (ballIsOnSideEdge) {
 								//	System.out
 								//			.println("Ball on side edge, scoup it out");
-									this.controlThread.operation = travelToNoArcNoReverse(
+									this.control.operation = travelToNoArcNoReverse(
 											RobotType.DEFENDER, targetX, targetY, 30);
 								}
 								if (ballIsOnSideEdge && ballIsOnSlopeEdge) {
 									//System.out.println("Ball in corner, scoup it out");
-									this.controlThread.operation = travelToNoArcNoReverse(
+									this.control.operation = travelToNoArcNoReverse(
 											RobotType.DEFENDER, targetX, targetY, 30);
 								}
 								if (ballIsOnGoalLine) {
 								//	System.out
 								//			.println("Ball on goal line, scoup it out");
-									this.controlThread.operation = travelToNoArcNoReverse(
+									this.control.operation = travelToNoArcNoReverse(
 											RobotType.DEFENDER, targetX, ballY, 40);
 								}
 								if (ballIsOnDefCheck) {
 								//	System.out.println("Ball on def check, grab it");
-									this.controlThread.operation = travelToNoArcNoReverse(
+									this.control.operation = travelToNoArcNoReverse(
 											RobotType.DEFENDER, targetX, ballY, 15);
 								}
 								if (ballIsOnDefCheck && ballIsOnSideEdge) {
 								//	System.out.println("Ball not catchable");
-									this.controlThread.operation.op = Operation.Type.DO_NOTHING;
+									this.control.operation.op = Operation.Type.DO_NOTHING;
 								}
-								if (this.controlThread.operation.op == Operation.Type.DO_NOTHING) {
+								if (this.control.operation.op == Operation.Type.DO_NOTHING) {
 									defenderHasArrived = true;
 								}
 							} else {
@@ -357,56 +355,56 @@ public class PassingStrategy extends GeneralStrategy {
 
 									}
 									if (Math.abs(angToBall) > 4) {
-										this.controlThread.operation.op = Operation.Type.DEFROTATE;
-										this.controlThread.operation.rotateBy = (int) (angToBall / 2.8);
-										if (this.controlThread.operation.rotateBy > 0) {
-											this.controlThread.operation.rotateBy = this.controlThread.operation.rotateBy + 3;
+										this.control.operation.op = Operation.Type.DEFROTATE;
+										this.control.operation.rotateBy = (int) (angToBall / 2.8);
+										if (this.control.operation.rotateBy > 0) {
+											this.control.operation.rotateBy = this.control.operation.rotateBy + 3;
 										} else {
-											this.controlThread.operation.rotateBy = this.controlThread.operation.rotateBy - 3;
+											this.control.operation.rotateBy = this.control.operation.rotateBy - 3;
 										}
 									} else if (Math.abs(distanceToBall) > 40) {
-										this.controlThread.operation.op = Operation.Type.DEFTRAVEL;
-										this.controlThread.operation.travelDistance = -(int) (distanceToBall / 3);
-										this.controlThread.operation.travelSpeed = (int) (Math
+										this.control.operation.op = Operation.Type.DEFTRAVEL;
+										this.control.operation.travelDistance = -(int) (distanceToBall / 3);
+										this.control.operation.travelSpeed = (int) (Math
 												.abs(distanceToBall) / 3) + 15;
 									} else if (ballIsOnDefCheck
 											&& Math.abs(distanceToBall) > 25) {
-										this.controlThread.operation.op = Operation.Type.DEFTRAVEL;
-										this.controlThread.operation.travelDistance = -(int) (distanceToBall / 3);
-										this.controlThread.operation.travelSpeed = (int) (Math
+										this.control.operation.op = Operation.Type.DEFTRAVEL;
+										this.control.operation.travelDistance = -(int) (distanceToBall / 3);
+										this.control.operation.travelSpeed = (int) (Math
 												.abs(distanceToBall) / 3) + 5;
 									}
-									this.controlThread.operation.rotateSpeed = (int) (Math
+									this.control.operation.rotateSpeed = (int) (Math
 											.abs(angToBall)) + 50;
 
 									if ((distanceToBall < 42 && !ballIsOnDefCheck)
-											|| this.controlThread.operation.op == Operation.Type.DO_NOTHING) {
-										this.controlThread.operation.op = Operation.Type.DEFROTATE;
+											|| this.control.operation.op == Operation.Type.DO_NOTHING) {
+										this.control.operation.op = Operation.Type.DEFROTATE;
 										if (ballIsOnSideEdge || ballIsOnSlopeEdge) {
 											if (worldState.weAreShootingRight) {
 												if (ballY < 220) {
-													this.controlThread.operation.rotateBy = 100;
+													this.control.operation.rotateBy = 100;
 												} else {
-													this.controlThread.operation.rotateBy = -100;
+													this.control.operation.rotateBy = -100;
 												}
 											} else {
 												if (ballY < 220) {
-													this.controlThread.operation.rotateBy = -100;
+													this.control.operation.rotateBy = -100;
 												} else {
-													this.controlThread.operation.rotateBy = 100;
+													this.control.operation.rotateBy = 100;
 												}
 											}
 										}
 										if (ballIsOnGoalLine) {
-											this.controlThread.operation.rotateBy = -(int) calculateAngle(
+											this.control.operation.rotateBy = -(int) calculateAngle(
 													defenderRobotX, defenderRobotY,
 													defenderOrientation,
 													defenderRobotX, defenderRobotY - 50) / 3;
 										}
 										if (ballIsOnDefCheck) {
-											this.controlThread.operation.op = Operation.Type.DEFCATCH;
+											this.control.operation.op = Operation.Type.DEFCATCH;
 										}
-										this.controlThread.operation.rotateSpeed = 50;
+										this.control.operation.rotateSpeed = 50;
 										defenderHasArrivedAtSafe = true;
 									}
 								}
@@ -416,16 +414,16 @@ public class PassingStrategy extends GeneralStrategy {
 				}
 			} else {
 				defenderHasArrivedAtSafe = false;
-				this.controlThread.operation = passBall(RobotType.DEFENDER,
+				this.control.operation = passBall(RobotType.DEFENDER,
 						RobotType.ATTACKER);
-				if (this.controlThread.operation.op == Operation.Type.ROTATENMOVE) {
+				if (this.control.operation.op == Operation.Type.ROTATENMOVE) {
 					if (!passTimerOn) {
-						passTimer = System.currentTimeMillis();
+						passTimer = StrategyClock.currentTimeMillis();
 						passTimerOn = true;
 					}
 					if (passTimerOn
-							&& System.currentTimeMillis() - passTimer > 8000) {
-						this.controlThread.operation.op = Operation.Type.DEFKICK;
+							&& StrategyClock.currentTimeMillis() - passTimer > 8000) {
+						this.control.operation.op = Operation.Type.DEFKICK;
 					}
 				}
 			}
@@ -434,16 +432,16 @@ public class PassingStrategy extends GeneralStrategy {
 					&& (Math.hypot(ballX - defenderRobotX, ballY
 							- defenderRobotY) > 50)
 					&& !worldState.ballNotOnPitch) {
-				controlThread.operation.op = Operation.Type.DEFKICK;
+				control.operation.op = Operation.Type.DEFKICK;
 			}
 			if ((ballCaughtDefender && worldState.ballNotOnPitch)) {
-				controlThread.operation.op = Operation.Type.DEFROTATE;
-				controlThread.operation.rotateBy = (int) calculateAngle(
+				control.operation.op = Operation.Type.DEFROTATE;
+				control.operation.rotateBy = (int) calculateAngle(
 						defenderRobotX, defenderRobotY, defenderOrientation,
 						worldState.dividers[1], (PitchConstants
 								.getPitchOutlineBottom() - PitchConstants
 								.getPitchOutlineTop()));
-				controlThread.operation.rotateSpeed = 200;
+				control.operation.rotateSpeed = 200;
 			}
 			if (needReset
 					|| (robotIsOnGoalLine && (int) calculateAngle(
@@ -454,139 +452,150 @@ public class PassingStrategy extends GeneralStrategy {
 							(PitchConstants.getPitchOutlineBottom() - PitchConstants
 									.getPitchOutlineTop())) < 90)) {
 				needReset = true;
-				controlThread.operation = travelToNoArc(RobotType.DEFENDER,
+				control.operation = travelToNoArc(RobotType.DEFENDER,
 						defenderResetX, defenderResetY, 20);
-				if (controlThread.operation.op == Operation.Type.DO_NOTHING) {
+				if (control.operation.op == Operation.Type.DO_NOTHING) {
 					needReset = false;
 					defenderHasArrived = false;
 				}
 			}
 		}
-
 	}
 
-	private class ControlThread extends Thread {
+	private class Control {
 		public Operation operation = new Operation();
+		private final ControlTicker ticker = new ControlTicker(attackerBrick,
+				defenderBrick);
 
 		private long lastKickerEventTime = 0;
 
-		public ControlThread() {
-			super("Robot control thread");
-			setDaemon(true);
-		}
-
-		@Override
-		public void run() {
-			try {
-				while (!stopControlThread) {
-					int travelDist, rotateBy, travelSpeed, rotateSpeed;
-					double radius;
-					Operation.Type op;
-					synchronized (this) {
-						op = this.operation.op;
-						rotateBy = this.operation.rotateBy;
-						travelDist = this.operation.travelDistance;
-						travelSpeed = this.operation.travelSpeed;
-						rotateSpeed = this.operation.rotateSpeed;
-						radius = this.operation.radius;
+		/**
+		 * Sends the commands for the operation decided on, unless it was
+		 * already acted on
+		 */
+		public void act() {
+			int travelDist, rotateBy, travelSpeed, rotateSpeed;
+			double radius;
+			Operation.Type op;
+			Operation decided;
+			synchronized (this) {
+				decided = new Operation(this.operation);
+				if (!ticker.shouldAct(decided))
+					return;
+				op = this.operation.op;
+				rotateBy = this.operation.rotateBy;
+				travelDist = this.operation.travelDistance;
+				travelSpeed = this.operation.travelSpeed;
+				rotateSpeed = this.operation.rotateSpeed;
+				radius = this.operation.radius;
+			}
+			// System.out.println("ball on def check: " +
+			// ballIsOnDefCheck + " robot too close to goal: " +
+			// robotIsOnGoalLine + " Ball on slope Edge: "
+			// + ballIsOnSlopeEdge + " ball is on side edge: "
+			// + ballIsOnSideEdge + " Catcher is up: "
+			// + catcherIsUp + " ballIsOnGoalLine: " +
+			// ballIsOnGoalLine);
+			// System.out.println("ballCaught: " + ballCaughtDefender
+			// + " op: " + op);
+			// Cleared if the kicker guard holds an operation back, so that
+			// the ticker doesn't hold back its repeats as well
+			boolean acted = true;
+			switch (op) {
+			case DO_NOTHING:
+				break;
+			case ATKROTATE:
+				attackerBrick.executeSync(new RobotCommand.Rotate(
+						rotateBy, Math.abs(rotateBy)));
+				break;
+			case ATKTRAVEL:
+				attackerBrick.executeSync(new RobotCommand.Travel(
+						travelDist, travelSpeed));
+				break;
+			case DEFCATCH:
+				if (StrategyClock.currentTimeMillis() - lastKickerEventTime > 1000) {
+					catcherIsUp = false;
+					defenderBrick.execute(new RobotCommand.Catch());
+					if (affectBallCaught || distFromBall < 32) {
+						ballCaughtDefender = true;
 					}
-					// System.out.println("ball on def check: " +
-					// ballIsOnDefCheck + " robot too close to goal: " +
-					// robotIsOnGoalLine + " Ball on slope Edge: "
-					// + ballIsOnSlopeEdge + " ball is on side edge: "
-					// + ballIsOnSideEdge + " Catcher is up: "
-					// + catcherIsUp + " ballIsOnGoalLine: " +
-					// ballIsOnGoalLine);
-					// System.out.println("ballCaught: " + ballCaughtDefender
-					// + " op: " + op);
-					switch (op) {
-					case DO_NOTHING:
-						break;
-					case ATKROTATE:
-						attackerBrick.executeSync(new RobotCommand.Rotate(
-								rotateBy, Math.abs(rotateBy)));
-						break;
-					case ATKTRAVEL:
-						attackerBrick.executeSync(new RobotCommand.Travel(
-								travelDist, travelSpeed));
-						break;
-					case DEFCATCH:
-						if (System.currentTimeMillis() - lastKickerEventTime > 1000) {
-							catcherIsUp = false;
-							defenderBrick.execute(new RobotCommand.Catch());
-							if (affectBallCaught || distFromBall < 32) {
-								ballCaughtDefender = true;
-							}
-							lastKickerEventTime = System.currentTimeMillis();
-						}
-						break;
-					case DEFKICK:
-						if (System.currentTimeMillis() - lastKickerEventTime > 1000) {
-							catcherIsUp = true;
-							defenderBrick.execute(new RobotCommand.Kick(15));
-							ballCaughtDefender = false;
-							lastKickerEventTime = System.currentTimeMillis();
-						}
-						break;
-					case DEFCONFUSEKICK:
-						if (System.currentTimeMillis() - lastKickerEventTime > 1000) {
-							defenderBrick.execute(new RobotCommand.Rotate(25, 33, false));
-							defenderBrick.execute(new RobotCommand.Rotate(-33 , 1000, false));
-							defenderBrick.execute(new RobotCommand.Travel(-50, 10000));
-							defenderBrick.execute(new RobotCommand.Kick(100));
-							ballCaughtDefender = false;
-							lastKickerEventTime = System.currentTimeMillis();
-						}
-						break;
-					case DEFKICKSTRONG:
-						if (System.currentTimeMillis() - lastKickerEventTime > 1000) {
-							catcherIsUp = true;
-							defenderBrick.execute(new RobotCommand.Travel(-50, 100000));
-							if (Math.abs(defenderAngleToGoal) > 45) {
-								defenderBrick.execute(new RobotCommand.Kick(25));
-							}
-							ballCaughtDefender = false;
-							lastKickerEventTime = System.currentTimeMillis();
-						}
-						break;
-					case DEFROTATE:
-						defenderBrick.executeSync(new RobotCommand.Rotate(
-								rotateBy, Math.abs(rotateBy)));
-						break;
-					case DEFTRAVEL:
-						defenderBrick.executeSync(new RobotCommand.Travel(
-								travelDist, travelSpeed));
-						break;
-					case ROTATENMOVE:
-						attackerBrick.execute(new RobotCommand.Travel(
-								travelDist, travelSpeed));
-						defenderBrick.execute(new RobotCommand.Rotate(rotateBy,
-								Math.abs(rotateBy)));
-						break;
-					case MOVENROTATE:
-						defenderBrick.executeSync(new RobotCommand.Travel(
-								travelDist, travelSpeed));
-						attackerBrick.executeSync(new RobotCommand.Rotate(
-								rotateBy, Math.abs(rotateBy)));
-					case DEFARC_LEFT:
-						defenderBrick.executeSync(new RobotCommand.TravelArc(
-								radius, travelDist, travelSpeed));
-						break;
-					case DEFARC_RIGHT:
-						defenderBrick.executeSync(new RobotCommand.TravelArc(
-								-radius, travelDist, travelSpeed));
-						break;
-					default:
-
-						break;
+					lastKickerEventTime = StrategyClock.currentTimeMillis();
+				} else {
+					acted = false;
+				}
+				break;
+			case DEFKICK:
+				if (StrategyClock.currentTimeMillis() - lastKickerEventTime > 1000) {
+					catcherIsUp = true;
+					defenderBrick.execute(new RobotCommand.Kick(15));
+					ballCaughtDefender = false;
+					lastKickerEventTime = StrategyClock.currentTimeMillis();
+				} else {
+					acted = false;
+				}
+				break;
+			case DEFCONFUSEKICK:
+				if (StrategyClock.currentTimeMillis() - lastKickerEventTime > 1000) {
+					defenderBrick.execute(new RobotCommand.Sequence(
+							new RobotCommand.Rotate(25, 33, false),
+							new RobotCommand.Rotate(-33 , 1000, false),
+							new RobotCommand.Travel(-50, 10000),
+							new RobotCommand.Kick(100)));
+					ballCaughtDefender = false;
+					lastKickerEventTime = StrategyClock.currentTimeMillis();
+				} else {
+					acted = false;
+				}
+				break;
+			case DEFKICKSTRONG:
+				if (StrategyClock.currentTimeMillis() - lastKickerEventTime > 1000) {
+					catcherIsUp = true;
+					if (Math.abs(defenderAngleToGoal) > 45) {
+						defenderBrick.execute(new RobotCommand.Sequence(
+								new RobotCommand.Travel(-50, 100000),
+								new RobotCommand.Kick(25)));
+					} else {
+						defenderBrick.execute(new RobotCommand.Travel(-50, 100000));
 					}
-					Thread.sleep(StrategyController.STRATEGY_TICK);
+					ballCaughtDefender = false;
+					lastKickerEventTime = StrategyClock.currentTimeMillis();
+				} else {
+					acted = false;
 				}
+				break;
+			case DEFROTATE:
+				defenderBrick.executeSync(new RobotCommand.Rotate(
+						rotateBy, Math.abs(rotateBy)));
+				break;
+			case DEFTRAVEL:
+				defenderBrick.executeSync(new RobotCommand.Travel(
+						travelDist, travelSpeed));
+				break;
+			case ROTATENMOVE:
+				attackerBrick.execute(new RobotCommand.Travel(
+						travelDist, travelSpeed));
+				defenderBrick.execute(new RobotCommand.Rotate(rotateBy,
+						Math.abs(rotateBy)));
+				break;
+			case MOVENROTATE:
+				defenderBrick.executeSync(new RobotCommand.Travel(
+						travelDist, travelSpeed));
+				attackerBrick.executeSync(new RobotCommand.Rotate(
+						rotateBy, Math.abs(rotateBy)));
+			case DEFARC_LEFT:
+				defenderBrick.executeSync(new RobotCommand.TravelArc(
+						radius, travelDist, travelSpeed));
+				break;
+			case DEFARC_RIGHT:
+				defenderBrick.executeSync(new RobotCommand.TravelArc(
+						-radius, travelDist, travelSpeed));
+				break;
+			default:
 
-			}	catch (Exception e) {
-				e.printStackTrace();
+				break;
 			}
-
+			if (acted)
+				ticker.markActed(decided);
 		}
 
 	}
@@ -0,0 +1,48 @@
+package pc.strategy;
+
+/**
+ * The time as the strategies see it. It is the system clock unless a
+ * simulation that keeps its own time sets a source, so that the strategies'
+ * timeouts pass in simulated time however fast the simulation runs.
+ * Strategies only ever compare times from here with each other.
+ */
+public class StrategyClock {
+	/**
+	 * Gives the time in nanoseconds from some fixed point
+	 */
+	public interface Source {
+		public long nanoTime();
+	}
+
+	private static volatile Source source;
+
+	private StrategyClock() {
+	}
+
+	/**
+	 * Sets where the time comes from
+	 * 
+	 * @param source
+	 *            The source, or null for the system clock
+	 */
+	public static void setSource(Source source) {
+		StrategyClock.source = source;
+	}
+
+	/**
+	 * Gets the time in nanoseconds, like System.nanoTime
+	 */
+	public static long nanoTime() {
+		Source source = StrategyClock.source;
+		return source == null ? System.nanoTime() : source.nanoTime();
+	}
+
+	/**
+	 * Gets the time in milliseconds, like System.currentTimeMillis
+	 */
+	public static long currentTimeMillis() {
+		Source source = StrategyClock.source;
+		return source == null ? System.currentTimeMillis() : source
+				.nanoTime() / 1000000;
+	}
+}
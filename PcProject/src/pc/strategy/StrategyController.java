@@ -3,16 +3,21 @@ package pc.strategy;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
 import java.util.ArrayList;
+import java.util.List;
 
 import pc.comms.BrickCommServer;
 import pc.strategy.interfaces.Strategy;
 import pc.vision.interfaces.WorldStateReceiver;
-import pc.world.oldmodel.WorldState;
+import pc.world.WorldSnapshot;
 
 public class StrategyController implements WorldStateReceiver {
 
-	/** Measured in milliseconds */
-	public static final int STRATEGY_TICK = 100; // TODO: Test lower values for this and see where it breaks
+	/**
+	 * Measured in milliseconds. Strategies act on each new world state, but
+	 * no more often than their bricks can send commands, and this is the
+	 * longest they will wait for the brick between states.
+	 */
+	public static final int STRATEGY_TICK = 100;
 	
 	public enum StrategyType {
 		DO_NOTHING, PASSING, ATTACKING, DEFENDING, MARKING
@@ -33,8 +38,8 @@ public class StrategyController implements WorldStateReceiver {
 	public static boolean interceptorDefenceEnabled = false;
 	public static boolean bouncePassEnabled = false;
 	
-	private static ArrayList<Strategy> currentStrategies = new ArrayList<Strategy>();
-	private static ArrayList<Strategy> removedStrategies = new ArrayList<Strategy>();
+	// Runs whichever strategies are current
+	private final StrategyScheduler scheduler = new StrategyScheduler();
 
 	public StrategyController() {
 		this.bcsAttacker = new BrickCommServer();
@@ -63,17 +68,11 @@ public class StrategyController implements WorldStateReceiver {
 		pcs.removePropertyChangeListener(listener);
 	}
 
-	public static ArrayList<Strategy> getCurrentStrategies() {
-		return currentStrategies;
-	}
-
-	public static ArrayList<Strategy> getRemovedStrategies() {
-		return removedStrategies;
-	}
-
-	public static void setRemovedStrategies(
-			ArrayList<Strategy> removedStrategies) {
-		StrategyController.removedStrategies = removedStrategies;
+	/**
+	 * Gets the strategies currently being run
+	 */
+	public List<Strategy> getCurrentStrategies() {
+		return this.scheduler.getStrategies();
 	}
 
 	/**
@@ -84,66 +83,64 @@ public class StrategyController implements WorldStateReceiver {
 	 *            - The strategy type to run
 	 */
 	public void changeToStrategy(StrategyType type) {
-		// Stop old threads
-		for (Strategy s : StrategyController.currentStrategies) {
-			s.stopControlThread();
-			StrategyController.removedStrategies.add(s);
-		}
-		StrategyController.currentStrategies = new ArrayList<Strategy>();
-		
+		ArrayList<Strategy> strategies = new ArrayList<Strategy>();
 		switch (type) {
 		case DO_NOTHING:
 			break;
 		case PASSING:
-			Strategy ps = new PassingStrategy(this.bcsAttacker,
-					this.bcsDefender);
-			StrategyController.currentStrategies.add(ps);
-			ps.startControlThread();
+			strategies.add(new PassingStrategy(this.bcsAttacker,
+					this.bcsDefender));
 			break;
 		case ATTACKING:
-			Strategy as = new AttackerStrategy(this.bcsAttacker);
-			Strategy ic = new InterceptorStrategy(this.bcsDefender);
-			StrategyController.currentStrategies.add(as);
-			StrategyController.currentStrategies.add(ic);
-			as.startControlThread();
-			ic.startControlThread();
+			strategies.add(new AttackerStrategy(this.bcsAttacker));
+			strategies.add(new InterceptorStrategy(this.bcsDefender));
 			break;
 		case DEFENDING:
-			Strategy AS = new AttackerStrategy(this.bcsAttacker);
-			StrategyController.currentStrategies.add(AS);
-			AS.startControlThread();
+			strategies.add(new AttackerStrategy(this.bcsAttacker));
 			if (interceptorDefenceEnabled){
-				Strategy inter = new InterceptorStrategy(this.bcsDefender);
-				StrategyController.currentStrategies.add(inter);
-				inter.startControlThread();
+				strategies.add(new InterceptorStrategy(this.bcsDefender));
 			} else {
-				Strategy pds = new DefenderStrategy(this.bcsDefender);
-				StrategyController.currentStrategies.add(pds);
-				pds.startControlThread();
+				strategies.add(new DefenderStrategy(this.bcsDefender));
 			}
 			break;
 		case MARKING:
-			Strategy newMar = new newMarkingStrategy(this.bcsAttacker);
-			Strategy ics = new InterceptorStrategy(this.bcsDefender);
-			StrategyController.currentStrategies.add(newMar);
-			StrategyController.currentStrategies.add(ics);
-			newMar.startControlThread();
-			ics.startControlThread();
+			strategies.add(new newMarkingStrategy(this.bcsAttacker));
+			strategies.add(new InterceptorStrategy(this.bcsDefender));
 			break;
 		default:
 			break;
 		}
+		// The old strategies are stopped before this returns
+		this.scheduler.setStrategies(strategies);
 		StrategyType oldType = currentStrategy;
 		currentStrategy = type;
 		pcs.firePropertyChange("currentStrategy", oldType, currentStrategy);
 	}
 
 	@Override
-	public void sendWorldState(WorldState worldState) {
-		if (pauseStrategyController)
-			return;
-		// Check where the ball is, and make a decision on which strategies to
-		// run based upon that.
+	public void sendWorldState(WorldSnapshot worldState) {
+		if (!pauseStrategyController)
+			chooseStrategy(worldState);
+		this.scheduler.sendWorldState(worldState);
+	}
+
+	/**
+	 * Does what sendWorldState does, but runs the strategies on the calling
+	 * thread before returning. For simulations that keep their own time.
+	 * 
+	 * @return the number of strategies run, each of which made a decision
+	 */
+	public int decide(WorldSnapshot worldState) {
+		if (!pauseStrategyController)
+			chooseStrategy(worldState);
+		return this.scheduler.runNow(worldState);
+	}
+
+	/**
+	 * Checks where the ball is, and makes a decision on which strategies to
+	 * run based upon that.
+	 */
+	private void chooseStrategy(WorldSnapshot worldState) {
 		int defenderCheck = (worldState.weAreShootingRight) ? worldState.dividers[0]
 				: worldState.dividers[2];
 		int leftCheck = (worldState.weAreShootingRight) ? worldState.dividers[1]
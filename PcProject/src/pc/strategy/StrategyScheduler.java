@@ -0,0 +1,168 @@
+package pc.strategy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import pc.comms.BrickCommServer;
+import pc.logging.FrameTiming;
+import pc.strategy.interfaces.Strategy;
+import pc.vision.interfaces.WorldStateReceiver;
+import pc.world.WorldSnapshot;
+
+/**
+ * Runs the current strategies on a fixed pool of threads, so that changing
+ * strategy never starts or stops a thread.
+ *
+ * Each new world state is passed to every current strategy, which then acts
+ * on it. A strategy is only ever run on one thread at a time, at most once
+ * per ControlTicker minimum interval; if states arrive faster than that, it
+ * is given the latest one. Once setStrategies has stopped a strategy, it is
+ * never run again, so it can't send another command.
+ */
+public class StrategyScheduler implements WorldStateReceiver {
+	// One for each robot, so that a strategy waiting on one brick doesn't
+	// hold up the other robot
+	private static final int THREADS = 2;
+
+	private final ScheduledExecutorService executor = Executors
+			.newScheduledThreadPool(THREADS, new ThreadFactory() {
+				private int count = 0;
+
+				@Override
+				public synchronized Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "Strategy scheduler "
+							+ (++this.count));
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+	private final AtomicReference<List<Task>> tasks = new AtomicReference<List<Task>>(
+			Collections.<Task> emptyList());
+
+	/**
+	 * Runs a single strategy
+	 */
+	private class Task implements Runnable {
+		private final Strategy strategy;
+		private final ControlTicker ticker;
+		private final AtomicReference<WorldSnapshot> latest = new AtomicReference<WorldSnapshot>();
+		// Set while the task is waiting to be run, so that it's only
+		// scheduled once however many states arrive in the meantime
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+		private volatile long lastRun = 0;
+		// Guarded by this
+		private boolean stopped = false;
+
+		Task(Strategy strategy) {
+			this.strategy = strategy;
+			this.ticker = strategy.getTicker();
+		}
+
+		void sendWorldState(WorldSnapshot worldState) {
+			this.latest.set(worldState);
+			if (!this.scheduled.compareAndSet(false, true))
+				return;
+			long delay = this.lastRun + this.ticker.getMinInterval()
+					- StrategyClock.nanoTime();
+			StrategyScheduler.this.executor.schedule(this, Math.max(0, delay),
+					TimeUnit.NANOSECONDS);
+		}
+
+		@Override
+		public synchronized void run() {
+			// Cleared first so that a state arriving while the strategy runs
+			// schedules it again
+			this.scheduled.set(false);
+			runOn(this.latest.get());
+		}
+
+		/**
+		 * Runs the strategy on a world state, unless it has been stopped
+		 * 
+		 * @return whether it was run
+		 */
+		synchronized boolean runOn(WorldSnapshot worldState) {
+			if (this.stopped)
+				return false;
+			this.lastRun = StrategyClock.nanoTime();
+			try {
+				this.strategy.sendWorldState(worldState);
+				FrameTiming timing = worldState.getFrameTiming();
+				if (timing != null)
+					timing.decided();
+				// Commands sent from now on come from this frame
+				for (BrickCommServer brick : this.ticker.getBricks())
+					brick.setFrameTiming(timing);
+				this.strategy.act();
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+			}
+			return true;
+		}
+
+		/**
+		 * Stops the strategy, waiting for it to finish if it is running
+		 */
+		synchronized void stop() {
+			this.stopped = true;
+		}
+	}
+
+	/**
+	 * Replaces the running strategies. The old strategies are stopped before
+	 * this returns, waiting for any that are running to finish, so none of
+	 * their commands can be sent after the new strategies' commands.
+	 *
+	 * @param strategies
+	 *            The strategies to run from the next world state on
+	 */
+	public synchronized void setStrategies(List<Strategy> strategies) {
+		List<Task> newTasks = new ArrayList<Task>(strategies.size());
+		for (Strategy strategy : strategies)
+			newTasks.add(new Task(strategy));
+		// Nothing runs between the old strategies stopping and the new ones
+		// being published
+		for (Task task : this.tasks.get())
+			task.stop();
+		this.tasks.set(Collections.unmodifiableList(newTasks));
+	}
+
+	/**
+	 * Gets the strategies currently being run
+	 */
+	public List<Strategy> getStrategies() {
+		List<Strategy> strategies = new ArrayList<Strategy>();
+		for (Task task : this.tasks.get())
+			strategies.add(task.strategy);
+		return strategies;
+	}
+
+	@Override
+	public void sendWorldState(WorldSnapshot worldState) {
+		for (Task task : this.tasks.get())
+			task.sendWorldState(worldState);
+	}
+
+	/**
+	 * Runs every current strategy on a world state straight away, on the
+	 * calling thread, however soon after the last time it is. For
+	 * simulations that keep their own time, which call this instead of
+	 * sendWorldState.
+	 * 
+	 * @return the number of strategies run
+	 */
+	public int runNow(WorldSnapshot worldState) {
+		int run = 0;
+		for (Task task : this.tasks.get())
+			if (task.runOn(worldState))
+				run++;
+		return run;
+	}
+}
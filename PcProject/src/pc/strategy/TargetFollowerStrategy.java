@@ -7,7 +7,7 @@ import java.util.Deque;
 import pc.comms.BrickCommServer;
 import pc.vision.Vector2f;
 import pc.vision.interfaces.WorldStateReceiver;
-import pc.world.oldmodel.WorldState;
+import pc.world.WorldSnapshot;
 
 @Deprecated
 public class TargetFollowerStrategy implements WorldStateReceiver {
@@ -26,7 +26,7 @@ public class TargetFollowerStrategy implements WorldStateReceiver {
 	}
 
 	@Override
-	public void sendWorldState(WorldState worldState) {
+	public void sendWorldState(WorldSnapshot worldState) {
 		float robotX = worldState.getAttackerRobot().x, robotY = worldState
 				.getAttackerRobot().y;
 		float robotO = worldState.getAttackerRobot().orientation_angle;
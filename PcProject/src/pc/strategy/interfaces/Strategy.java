@@ -1,10 +1,25 @@
 package pc.strategy.interfaces;
 
+import pc.strategy.ControlTicker;
 import pc.vision.interfaces.WorldStateReceiver;
 
+/**
+ * A strategy is run by StrategyScheduler, which passes it each new world
+ * state and then has it act on what it decided. The scheduler never runs a
+ * strategy on more than one thread at a time, and a strategy must only send
+ * commands from act.
+ */
 public interface Strategy extends WorldStateReceiver{
-	
-	public void startControlThread();
-	public void stopControlThread();
+
+	/**
+	 * Sends the commands for what the strategy decided from the last world
+	 * state it received
+	 */
+	public void act();
+
+	/**
+	 * Gets the ticker that paces the strategy
+	 */
+	public ControlTicker getTicker();
 
 }
@@ -9,7 +9,7 @@ import pc.strategy.GeneralStrategy.RobotType;
 import pc.strategy.Operation.Type;
 import pc.vision.PitchConstants;
 import pc.vision.Vector2f;
-import pc.world.oldmodel.WorldState;
+import pc.world.WorldSnapshot;
 
 /** Manages the strategy for the defender robot to intercept
  * an incoming ball. If the ball is moving away from the robot then
@@ -18,28 +18,28 @@ import pc.world.oldmodel.WorldState;
 public class newMarkingStrategy extends GeneralStrategy {
 	private static final int attackerOffset = 0; // Used to properly centre the robot at the target Y position.
 	private BrickCommServer brick;
-	private ControlThread controlThread;
+	private Control control;
 	private Deque<Vector2f> ballPositions = new ArrayDeque<Vector2f>();
 	protected boolean catcherIsUp = true;
 	private boolean needReset = false;
 
 	public newMarkingStrategy(BrickCommServer brick) {
 		this.brick = brick;
-		controlThread = new ControlThread();
+		control = new Control();
 	}
 
 	@Override
-	public void stopControlThread() {
-		controlThread.stop();
+	public ControlTicker getTicker() {
+		return control.ticker;
 	}
 
 	@Override
-	public void startControlThread() {
-		controlThread.start();
+	public void act() {
+		control.act();
 	}
 
 	@Override
-	public void sendWorldState(WorldState worldState) {
+	public void sendWorldState(WorldSnapshot worldState) {
 		super.sendWorldState(worldState);
 		ballPositions.addLast(new Vector2f(worldState.getBall().x, worldState
 				.getBall().y));
@@ -74,79 +74,79 @@ public class newMarkingStrategy extends GeneralStrategy {
 			dist = 0;
 		}
 		
-		synchronized (controlThread) {
+		synchronized (control) {
 			if ((Math.abs(attackerRobotX - leftCheck) < 40 || Math.abs(attackerRobotX - rightCheck) < 40)  || needReset) {
-				controlThread.operation = travelToNoArc(RobotType.ATTACKER,
+				control.operation = travelToNoArc(RobotType.ATTACKER,
 						attackerResetX, attackerResetY, 20);
 				needReset = true;
-				if (controlThread.operation.op == Operation.Type.DO_NOTHING) {
+				if (control.operation.op == Operation.Type.DO_NOTHING) {
 					needReset = false;
 				}
 			} else {
-			controlThread.operation.rotateBy = (int) ang1;
-			controlThread.operation.travelDistance = (int) (dist * 0.8);
-			if (Math.abs(controlThread.operation.rotateBy) > 3) {
-				controlThread.operation.op = Operation.Type.ATKROTATE;
+			control.operation.rotateBy = (int) ang1;
+			control.operation.travelDistance = (int) (dist * 0.8);
+			if (Math.abs(control.operation.rotateBy) > 3) {
+				control.operation.op = Operation.Type.ATKROTATE;
 			} else {
-				controlThread.operation.op = Operation.Type.ATKTRAVEL;
+				control.operation.op = Operation.Type.ATKTRAVEL;
 				}	
 			}
 
 		}
-		
-		
 	}
-	private class ControlThread extends Thread {
+	private class Control {
 		public Operation operation = new Operation();
-		private ControlThread controlThread;
+		private final ControlTicker ticker = new ControlTicker(brick);
 		private long lastKickerEventTime = 0;
-		public ControlThread() {
-			super("Robot control thread");
-			setDaemon(true);
-		}
-
-		@Override
-		public void run() {
-			try {
-				while (true) {
-					Operation.Type op;
-					int rotateBy, travelDist;
-					synchronized (this) {
-						op = this.operation.op;
-						rotateBy = this.operation.rotateBy;
-						travelDist = this.operation.travelDistance;
-					}
+		/**
+		 * Sends the commands for the operation decided on, unless it was
+		 * already acted on
+		 */
+		public void act() {
+			Operation.Type op;
+			int rotateBy, travelDist;
+			Operation decided;
+			synchronized (this) {
+				decided = new Operation(this.operation);
+				if (!ticker.shouldAct(decided))
+					return;
+				op = this.operation.op;
+				rotateBy = this.operation.rotateBy;
+				travelDist = this.operation.travelDistance;
+			}
 //					System.out.println("operation: " + op + " rotateBy: "
 //							 + rotateBy + " travelDist: " + travelDist);
-					switch (op) {
-					case ATKROTATE:
-						if (rotateBy != 0) {
-						brick.executeSync(new RobotCommand.Rotate(
-								-rotateBy, Math.abs(rotateBy)));
-						}
-						break;
-					case ATKTRAVEL:
-						 if (travelDist != 0) {
-							brick.execute(new RobotCommand.Travel(
-									travelDist,
-									Math.abs(travelDist) * 10 + 25));
-						}
-						break;
-					case DEFKICK:
-						if (System.currentTimeMillis() - lastKickerEventTime > 1000) {
-						//	brick.execute(new RobotCommand.Kick(30));
-							ballCaughtDefender = false;
-							lastKickerEventTime = System.currentTimeMillis();
-						}
-						break;
-					default:
-						break;
-					}
-					Thread.sleep(StrategyController.STRATEGY_TICK);
+			// Cleared if the kicker guard holds an operation back, so that
+			// the ticker doesn't hold back its repeats as well
+			boolean acted = true;
+			switch (op) {
+			case ATKROTATE:
+				if (rotateBy != 0) {
+				brick.executeSync(new RobotCommand.Rotate(
+						-rotateBy, Math.abs(rotateBy)));
+				}
+				break;
+			case ATKTRAVEL:
+				 if (travelDist != 0) {
+					brick.execute(new RobotCommand.Travel(
+							travelDist,
+							Math.abs(travelDist) * 10 + 25));
+				}
+				break;
+			case DEFKICK:
+				if (StrategyClock.currentTimeMillis() - lastKickerEventTime > 1000) {
+				//	brick.execute(new RobotCommand.Kick(30));
+					ballCaughtDefender = false;
+					lastKickerEventTime = StrategyClock.currentTimeMillis();
+				} else {
+					acted = false;
 				}
-			} catch (InterruptedException e) {
-				e.printStackTrace();
+				break;
+			default:
+				break;
 			}
+			if (acted)
+				ticker.markActed(decided);
 		}
 	}
 }
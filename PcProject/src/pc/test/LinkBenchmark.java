@@ -0,0 +1,226 @@
+package pc.test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+
+import lejos.pc.comm.NXTInfo;
+import pc.comms.BrickCommServer;
+import pc.comms.BtInfo;
+import pc.comms.EmulatedLink;
+import pc.comms.RobotCommand;
+import pc.comms.SocketTransport;
+import reallejos.shared.RobotFrame;
+import reallejos.shared.RobotOpcode;
+import reallejos.shared.RobotStatus;
+
+/**
+ * Measures the link to the brick, so that changes to the protocol can be
+ * compared. For each kind of command, and for several commands batched into
+ * one frame, it prints:
+ *
+ * - the round trip time from executing a frame to the brick acknowledging
+ * it, one frame at a time
+ *
+ * - the commands and bytes per second when frames are sent back to back and
+ * only the last is waited for
+ *
+ * By default the brick is emulated, behind an EmulatedLink with the latency
+ * and bandwidth of NXT Bluetooth; it carries nothing out, so only the link is
+ * measured. Given the name of a brick in BtInfo it connects to the real
+ * brick instead, which does carry the commands out: put the robot on a stand.
+ * Given host:port it connects over TCP, for instance to a SimulatedBrick.
+ *
+ * Usage: LinkBenchmark [brick name | host:port | emulated] [round trips per
+ * benchmark] [latency ms] [bandwidth bytes/s]
+ */
+public class LinkBenchmark {
+	private static final int WARMUP = 10;
+	private static final long ACK_TIMEOUT = 5000;
+
+	private final BrickCommServer brick;
+	private final int roundTrips;
+
+	LinkBenchmark(BrickCommServer brick, int roundTrips) {
+		this.brick = brick;
+		this.roundTrips = roundTrips;
+	}
+
+	private void waitFor(int frame) throws InterruptedException {
+		if (!this.brick.waitForAcknowledgement(frame, ACK_TIMEOUT))
+			throw new IllegalStateException("Frame " + frame
+					+ " wasn't acknowledged");
+	}
+
+	private long roundTrip(RobotCommand.Command[] commands)
+			throws InterruptedException {
+		long start = System.nanoTime();
+		this.brick.executeSync(commands);
+		waitFor(this.brick.getFramesSent());
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * Runs a benchmark and prints its results
+	 *
+	 * @param commands
+	 *            The commands to send in each frame
+	 */
+	void measure(String name, RobotCommand.Command... commands)
+			throws InterruptedException {
+		for (int i = 0; i < WARMUP; i++)
+			roundTrip(commands);
+
+		long[] samples = new long[this.roundTrips];
+		for (int i = 0; i < this.roundTrips; i++)
+			samples[i] = roundTrip(commands);
+		Arrays.sort(samples);
+
+		// executeSync only waits for each frame to be sent, so none is ever
+		// waiting in the queue to be superseded
+		long bytesBefore = this.brick.getBytesSent();
+		long start = System.nanoTime();
+		for (int i = 0; i < this.roundTrips; i++)
+			this.brick.executeSync(commands);
+		waitFor(this.brick.getFramesSent());
+		double elapsed = (System.nanoTime() - start) / 1e9;
+		long bytes = this.brick.getBytesSent() - bytesBefore;
+
+		System.out.println(String.format(
+				"%-32s %4d B/frame  rtt p50 %7.2fms  p99 %7.2fms"
+						+ "  max %7.2fms  %8.1f cmds/s  %8.1f B/s", name,
+				bytes / this.roundTrips, percentile(samples, 0.5),
+				percentile(samples, 0.99),
+				samples[samples.length - 1] / 1e6, this.roundTrips
+						* commands.length / elapsed, bytes / elapsed));
+
+		// Leave the robot still for the next benchmark
+		this.brick.executeSync(new RobotCommand.Stop());
+	}
+
+	private static double percentile(long[] sorted, double p) {
+		int index = (int) Math.ceil(p * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+	}
+
+	void run() throws InterruptedException {
+		measure("Stop", new RobotCommand.Stop());
+		measure("Forwards", new RobotCommand.Forwards());
+		measure("Backwards", new RobotCommand.Backwards());
+		measure("RotateLeft", new RobotCommand.RotateLeft());
+		measure("RotateRight", new RobotCommand.RotateRight());
+		measure("Rotate", new RobotCommand.Rotate(1, 90));
+		measure("Travel", new RobotCommand.Travel(1, 100));
+		measure("TravelArc", new RobotCommand.TravelArc(100, 1, 100));
+		measure("Kick", new RobotCommand.Kick(10));
+		measure("Catch", new RobotCommand.Catch());
+		measure("Wait", new RobotCommand.Wait(0));
+		// ResetCatcher takes a second on the brick, so would only measure
+		// the catcher
+
+		RobotCommand.Command[] manoeuvre = { new RobotCommand.Rotate(1, 90),
+				new RobotCommand.Rotate(-1, 90),
+				new RobotCommand.Travel(1, 100), new RobotCommand.Kick(10) };
+		measure("Manoeuvre, 4 commands/frame", manoeuvre);
+		measure("Manoeuvre as a Sequence", new RobotCommand.Sequence(
+				manoeuvre));
+		RobotCommand.Command[] rotates = new RobotCommand.Command[16];
+		for (int i = 0; i < rotates.length; i++)
+			rotates[i] = new RobotCommand.Rotate(i % 2 == 0 ? 1 : -1, 90);
+		measure("Rotate, 16 commands/frame", rotates);
+	}
+
+	/**
+	 * Stands in for a brick at the other end of an EmulatedLink, by
+	 * acknowledging each frame as soon as it arrives
+	 */
+	private static class EchoBrick extends Thread {
+		private final DataInputStream input;
+		private final DataOutputStream output;
+
+		EchoBrick(EmulatedLink link) {
+			super("Echo brick");
+			setDaemon(true);
+			this.input = new DataInputStream(link.getBrickInput());
+			this.output = new DataOutputStream(link.getBrickOutput());
+		}
+
+		@Override
+		public void run() {
+			int frames = 0;
+			try {
+				while (true) {
+					// The steps of a sequence are just the commands after it
+					int length = RobotFrame.readHeader(this.input);
+					while (length > 0) {
+						int opcode = this.input.readUnsignedByte();
+						int size = Math.max(0, RobotFrame.argumentSize(opcode));
+						this.input.skipBytes(Math.min(size, length - 1));
+						length -= 1 + size;
+					}
+					frames++;
+					RobotFrame.writeHeader(this.output,
+							1 + RobotFrame.argumentSize(RobotOpcode.STATUS));
+					new RobotStatus(frames, 0, 0, 0, false, true, 0, false)
+							.write(this.output);
+					this.output.flush();
+				}
+			} catch (IOException e) {
+				// The link has been closed
+			}
+		}
+	}
+
+	private static NXTInfo findBrick(String name) throws IllegalAccessException {
+		for (Field field : BtInfo.class.getFields()) {
+			if (field.getType() != NXTInfo.class)
+				continue;
+			NXTInfo info = (NXTInfo) field.get(null);
+			if (info.name.equalsIgnoreCase(name))
+				return info;
+		}
+		return null;
+	}
+
+	public static void main(String[] args) throws Exception {
+		String target = args.length > 0 ? args[0] : "emulated";
+		int roundTrips = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+		BrickCommServer brick = new BrickCommServer();
+		if (target.equals("emulated")) {
+			double latency = args.length > 2 ? Double.parseDouble(args[2])
+					: EmulatedLink.NXT_LATENCY;
+			double bandwidth = args.length > 3 ? Double.parseDouble(args[3])
+					: EmulatedLink.NXT_BANDWIDTH;
+			EmulatedLink link = new EmulatedLink(latency, bandwidth);
+			new EchoBrick(link).start();
+			brick.connect(link.getPcEnd());
+			System.out.println("Emulated link, " + latency + "ms latency, "
+					+ bandwidth + " B/s");
+		} else if (target.contains(":")) {
+			int colon = target.lastIndexOf(':');
+			brick.connect(SocketTransport.connect(target.substring(0, colon),
+					Integer.parseInt(target.substring(colon + 1))));
+			System.out.println("TCP " + target);
+		} else {
+			NXTInfo info = findBrick(target);
+			if (info == null) {
+				System.err.println("No brick called " + target + " in BtInfo");
+				return;
+			}
+			brick.connect(info);
+			System.out.println("Brick " + info.name);
+		}
+		if (!brick.isConnected()) {
+			System.err.println("Couldn't connect");
+			return;
+		}
+
+		System.out.println(roundTrips + " round trips per benchmark");
+		new LinkBenchmark(brick, roundTrips).run();
+		brick.close();
+		System.exit(0);
+	}
+}
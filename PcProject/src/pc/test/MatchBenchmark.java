@@ -0,0 +1,101 @@
+package pc.test;
+
+import pc.strategy.StrategyClock;
+import pc.strategy.StrategyController;
+import pc.vision.PitchConstants;
+import pc.vision.YAMLConfig;
+import pc.world.Pitch;
+import pc.world.PitchSimulator;
+import pc.world.WorldSnapshot;
+
+/**
+ * Plays matches on a PitchSimulator as fast as the strategies can decide,
+ * with our strategies on both teams, and prints the score of each and how
+ * fast the strategy layer made its decisions: each strategy run on a world
+ * state is one decision. The strategies see the simulated time through
+ * StrategyClock.
+ *
+ * Run it from the PcProject directory so that constants/pitch0 is found.
+ *
+ * Usage: MatchBenchmark [matches] [seconds per match] [frames per second]
+ */
+public class MatchBenchmark {
+	private final PitchSimulator simulator;
+	private final StrategyController us = new StrategyController();
+	private final StrategyController them = new StrategyController();
+	private final double frameInterval;
+
+	private long decisions = 0;
+	private long frames = 0;
+
+	MatchBenchmark(final PitchSimulator simulator, double framesPerSecond) {
+		this.simulator = simulator;
+		this.frameInterval = 1 / framesPerSecond;
+		// The strategies' timeouts pass in simulated time
+		StrategyClock.setSource(new StrategyClock.Source() {
+			@Override
+			public long nanoTime() {
+				return (long) (simulator.getTime() * 1e9);
+			}
+		});
+		simulator.connect(this.us.bcsAttacker, this.us.bcsDefender,
+				this.them.bcsAttacker, this.them.bcsDefender);
+		this.us.setPaused(false);
+		this.them.setPaused(false);
+	}
+
+	/**
+	 * Plays a match, passing each frame to both teams
+	 */
+	void play(double seconds, boolean ourBall) throws InterruptedException {
+		this.simulator.reset(ourBall);
+		while (this.simulator.getMatchTime() < seconds) {
+			WorldSnapshot ours = this.simulator.publish();
+			this.decisions += this.us.decide(ours);
+			this.decisions += this.them.decide(this.simulator
+					.getEnemyWorldState().getSnapshot());
+			this.frames++;
+			this.simulator.advance(this.frameInterval);
+		}
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		int matches = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+		double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 60;
+		double framesPerSecond = args.length > 2 ? Double
+				.parseDouble(args[2]) : 25;
+
+		PitchConstants pitchConstants = new PitchConstants(0);
+		Pitch pitch = new Pitch(new YAMLConfig(), pitchConstants);
+		PitchSimulator simulator = new PitchSimulator(pitch, pitchConstants);
+		MatchBenchmark benchmark = new MatchBenchmark(simulator,
+				framesPerSecond);
+
+		System.out.println(String.format(
+				"%d matches of %.0fs at %.0f frames/s", matches, seconds,
+				framesPerSecond));
+		long start = System.nanoTime();
+		int goals = 0, enemyGoals = 0;
+		for (int i = 0; i < matches; i++) {
+			long matchStart = System.nanoTime();
+			benchmark.play(seconds, i % 2 == 0);
+			goals += simulator.getGoals();
+			enemyGoals += simulator.getEnemyGoals();
+			System.out.println(String.format("Match %3d  %2d - %-2d  %7.1fms",
+					i + 1, simulator.getGoals(), simulator.getEnemyGoals(),
+					(System.nanoTime() - matchStart) / 1e6));
+		}
+		double elapsed = (System.nanoTime() - start) / 1e9;
+
+		System.out.println(String.format("Total      %2d - %-2d", goals,
+				enemyGoals));
+		System.out.println(String.format(
+				"%.2f matches/s  %.0fx real time  %.0f frames/s"
+						+ "  %.0f decisions/s  %.1f us/decision", matches
+						/ elapsed, matches * seconds / elapsed,
+				benchmark.frames / elapsed, benchmark.decisions / elapsed,
+				elapsed * 1e6 / Math.max(1, benchmark.decisions)));
+		simulator.close();
+		System.exit(0);
+	}
+}
@@ -0,0 +1,320 @@
+package pc.test;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import pc.vision.ColourClassifier;
+import pc.vision.DistortionFix;
+import pc.vision.FrameReplay;
+import pc.vision.PitchConstants;
+import pc.vision.PixelBuffer;
+import pc.vision.Segmentation;
+import pc.vision.Vision;
+import pc.vision.VideoStream;
+import pc.vision.YAMLConfig;
+import pc.vision.interfaces.VideoReceiver;
+import pc.vision.recognisers.BallRecogniser;
+import pc.vision.recognisers.RobotRecogniser;
+import pc.world.DynamicWorldState;
+import pc.world.Pitch;
+import pc.world.StaticWorldState;
+import pc.world.oldmodel.WorldState;
+
+/**
+ * Measures the vision pipeline's hot paths, so that the effect of a change to
+ * the pipeline can be seen. Each benchmark is warmed up and then run for a
+ * fixed time, and its throughput, latency percentiles and the memory it
+ * allocates per operation are printed.
+ *
+ * Run it from the PcProject directory so that config.yml and constants/pitch0
+ * are found. By default it uses src/resources/pitch.jpg; a recording made
+ * with RunVision -record or -archive can be given instead, in which case its
+ * frames are used in turn.
+ *
+ * Usage: VisionBenchmark [image or recording] [seconds per benchmark]
+ *
+ * Allocation is only counted on the thread running the benchmark, so the
+ * searches Vision runs on its pool are not included.
+ */
+public class VisionBenchmark {
+	private static final double WARMUP_FRACTION = 0.5;
+	private static final int MAX_SAMPLES = 1 << 20;
+	// The time between frames from the camera, in microseconds
+	private static final long FRAME_MICROS = 40000;
+
+	/**
+	 * A single operation to be measured. op counts up from 0 so that a
+	 * benchmark can cycle through its inputs.
+	 */
+	private static abstract class Benchmark {
+		final String name;
+
+		Benchmark(String name) {
+			this.name = name;
+		}
+
+		abstract void run(int op);
+	}
+
+	private final List<BufferedImage> frames;
+	private final double seconds;
+	private final com.sun.management.ThreadMXBean threadBean;
+	// The capture timestamp of the last frame given to Vision, so that its
+	// filters see the same time steps as they do live
+	private long timestamp = 0;
+
+	VisionBenchmark(List<BufferedImage> frames, double seconds) {
+		this.frames = frames;
+		this.seconds = seconds;
+		java.lang.management.ThreadMXBean bean = ManagementFactory
+				.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean
+				&& ((com.sun.management.ThreadMXBean) bean)
+						.isThreadAllocatedMemorySupported())
+			this.threadBean = (com.sun.management.ThreadMXBean) bean;
+		else
+			this.threadBean = null;
+	}
+
+	private long allocatedBytes() {
+		if (this.threadBean == null)
+			return 0;
+		return this.threadBean.getThreadAllocatedBytes(Thread.currentThread()
+				.getId());
+	}
+
+	/**
+	 * Runs a benchmark and prints its results
+	 */
+	void measure(Benchmark benchmark) {
+		long warmupEnd = System.nanoTime()
+				+ (long) (this.seconds * WARMUP_FRACTION * 1e9);
+		int op = 0;
+		while (System.nanoTime() < warmupEnd)
+			benchmark.run(op++);
+
+		long[] samples = new long[MAX_SAMPLES];
+		int count = 0;
+		long allocatedBefore = allocatedBytes();
+		long start = System.nanoTime();
+		long end = start + (long) (this.seconds * 1e9);
+		long now = start;
+		while (now < end && count < MAX_SAMPLES) {
+			benchmark.run(op++);
+			long after = System.nanoTime();
+			samples[count++] = after - now;
+			now = after;
+		}
+		long allocated = allocatedBytes() - allocatedBefore;
+		double elapsed = (now - start) / 1e9;
+
+		Arrays.sort(samples, 0, count);
+		System.out.println(String.format(
+				"%-46s %10.1f ops/s  p50 %8.3fms  p90 %8.3fms  p99 %8.3fms"
+						+ "  p99.9 %8.3fms  max %8.3fms  %s",
+				benchmark.name, count / elapsed,
+				percentile(samples, count, 0.5),
+				percentile(samples, count, 0.9),
+				percentile(samples, count, 0.99),
+				percentile(samples, count, 0.999),
+				samples[count - 1] / 1e6,
+				this.threadBean == null ? "alloc n/a" : String.format(
+						"%10.0f B/op", (double) allocated / count)));
+	}
+
+	private static double percentile(long[] sorted, int count, double p) {
+		int index = (int) Math.ceil(p * count) - 1;
+		return sorted[Math.max(0, Math.min(count - 1, index))] / 1e6;
+	}
+
+	BufferedImage frame(int op) {
+		return this.frames.get(op % this.frames.size());
+	}
+
+	/**
+	 * Gets a capture timestamp one frame after the last
+	 */
+	long nextTimestamp() {
+		this.timestamp += FRAME_MICROS;
+		return this.timestamp;
+	}
+
+	void run() {
+		final YAMLConfig yamlConfig = new YAMLConfig();
+		final PitchConstants pitchConstants = new PitchConstants(0);
+		final Pitch pitch = new Pitch(yamlConfig, pitchConstants);
+		final DistortionFix distortionFix = new DistortionFix(yamlConfig,
+				pitchConstants);
+
+		// The whole of vision, as RunVision sets it up
+		final WorldState worldState = new WorldState(pitch);
+		final Vision vision = new Vision(worldState, pitchConstants,
+				new DynamicWorldState());
+		vision.addRecogniser(new BallRecogniser(vision, worldState,
+				pitchConstants, distortionFix, pitch));
+		vision.addRecogniser(new RobotRecogniser(vision, worldState,
+				pitchConstants, distortionFix, pitch));
+		measure(new Benchmark("Vision.sendFrame") {
+			@Override
+			void run(int op) {
+				vision.sendFrame(frame(op), FRAME_MICROS / 1e6f, op,
+						nextTimestamp());
+			}
+		});
+
+		measure(new Benchmark("DistortionFix.removeBarrelDistortion") {
+			@Override
+			void run(int op) {
+				distortionFix.removeBarrelDistortion(frame(op));
+			}
+		});
+
+		final Point2D.Double point = new Point2D.Double();
+		measure(new Benchmark("DistortionFix.barrelCorrect x1000") {
+			@Override
+			void run(int op) {
+				for (int i = 0; i < 1000; i++) {
+					point.setLocation(i % VideoStream.FRAME_WIDTH,
+							i % VideoStream.FRAME_HEIGHT);
+					distortionFix.barrelCorrect(point);
+				}
+			}
+		});
+
+		final PixelBuffer pixels = new PixelBuffer(VideoStream.FRAME_WIDTH,
+				VideoStream.FRAME_HEIGHT);
+		final ColourClassifier classifier = new ColourClassifier(
+				pitchConstants);
+		classifier.refresh();
+		final Segmentation segmentation = new Segmentation(
+				VideoStream.FRAME_WIDTH, VideoStream.FRAME_HEIGHT);
+		// Segmentation labels pixels lazily, so every pitch pixel is asked for
+		// to measure labelling the whole pitch
+		measure(new Benchmark("PixelBuffer.load + Segmentation (whole pitch)") {
+			int labels;
+
+			@Override
+			void run(int op) {
+				pixels.load(frame(op), pitchConstants.getPitchBounds());
+				segmentation.process(pixels, classifier,
+						pitchConstants.getDividers());
+				Rectangle region = segmentation.getRegion();
+				for (int row = region.y; row < region.y + region.height; row++)
+					for (int column = region.x; column < region.x
+							+ region.width; column++)
+						this.labels |= segmentation.getLabel(column, row);
+			}
+		});
+
+		measure(new Benchmark("ColourClassifier.isColour (pitch)") {
+			int found;
+
+			@Override
+			void run(int op) {
+				pixels.load(frame(op), pitchConstants.getPitchBounds());
+				Rectangle region = pixels.getRegion();
+				for (int row = region.y; row < region.y + region.height; row++)
+					for (int column = region.x; column < region.x
+							+ region.width; column++)
+						if (classifier.isColour(
+								pixels.rgb[pixels.index(column, row)],
+								PitchConstants.OBJECT_BALL))
+							this.found++;
+			}
+		});
+
+		// The recognisers on their own, searching the whole of the frame
+		// as they do when tracking is lost. The frame is segmented again
+		// each time, so that labelling the pixels they look at is included.
+		vision.sendFrame(frame(0), FRAME_MICROS / 1e6f, 0, nextTimestamp());
+		pixels.load(frame(0), pitchConstants.getPitchBounds());
+		final Segmentation visionSegmentation = vision.getSegmentation();
+		final BufferedImage debugOverlay = new BufferedImage(
+				VideoStream.FRAME_WIDTH, VideoStream.FRAME_HEIGHT,
+				BufferedImage.TYPE_INT_ARGB);
+		final Graphics2D debugGraphics = debugOverlay.createGraphics();
+		final BallRecogniser ballRecogniser = new BallRecogniser(vision,
+				new WorldState(pitch), pitchConstants, distortionFix, pitch);
+		ballRecogniser.setTracking(false);
+		measure(new Benchmark("BallRecogniser.processFrame") {
+			@Override
+			void run(int op) {
+				visionSegmentation.process(pixels, classifier,
+						pitchConstants.getDividers());
+				ballRecogniser.processFrame(pixels, frame(0), debugGraphics,
+						debugOverlay, new StaticWorldState());
+			}
+		});
+
+		final RobotRecogniser robotRecogniser = new RobotRecogniser(vision,
+				new WorldState(pitch), pitchConstants, distortionFix, pitch);
+		robotRecogniser.setTracking(false);
+		measure(new Benchmark("RobotRecogniser.processFrame (searchColumn x4)") {
+			@Override
+			void run(int op) {
+				visionSegmentation.process(pixels, classifier,
+						pitchConstants.getDividers());
+				robotRecogniser.processFrame(pixels, frame(0), debugGraphics,
+						debugOverlay, new StaticWorldState());
+			}
+		});
+	}
+
+	/**
+	 * Loads every frame of a recording into memory, so that reading them
+	 * isn't measured
+	 */
+	private static List<BufferedImage> loadRecording(File file)
+			throws IOException, InterruptedException {
+		final List<BufferedImage> frames = new ArrayList<BufferedImage>();
+		FrameReplay replay = new FrameReplay(file);
+		replay.setThrottled(false);
+		replay.addReceiver(new VideoReceiver() {
+			@Override
+			public void sendFrame(BufferedImage frame, float delta,
+					int frameCounter, long timestamp) {
+				frames.add(frame);
+			}
+		});
+		replay.start();
+		replay.join();
+		return frames;
+	}
+
+	public static void main(String[] args) throws Exception {
+		List<BufferedImage> frames;
+		if (args.length > 0) {
+			File file = new File(args[0]);
+			// Anything ImageIO can't read should be a recording
+			BufferedImage image = file.isDirectory() ? null : ImageIO
+					.read(file);
+			if (image == null)
+				frames = loadRecording(file);
+			else
+				frames = Arrays.asList(image);
+		} else {
+			frames = Arrays.asList(ImageIO.read(VisionBenchmark.class
+					.getResourceAsStream("/resources/pitch.jpg")));
+		}
+		if (frames.isEmpty()) {
+			System.err.println("No frames to benchmark with");
+			return;
+		}
+		double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 5;
+
+		System.out.println("Benchmarking with " + frames.size() + " frame(s), "
+				+ seconds + "s per benchmark");
+		new VisionBenchmark(frames, seconds).run();
+		System.exit(0);
+	}
+}
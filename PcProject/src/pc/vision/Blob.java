@@ -0,0 +1,108 @@
+package pc.vision;
+
+import java.awt.Rectangle;
+
+/**
+ * A connected group of pixels of a single object, as found by BlobLabeller.
+ * Keeps the area, bounding box and the first and second moments of the
+ * pixels, from which the centroid and orientation are derived.
+ */
+public class Blob {
+	private int area;
+	private int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+	private int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+	private long sumX, sumY, sumXX, sumYY, sumXY;
+
+	/**
+	 * Adds a horizontal run of pixels to the blob
+	 *
+	 * @param row
+	 *            The y value of the run
+	 * @param start
+	 *            The x value of the first pixel in the run
+	 * @param end
+	 *            The x value just past the last pixel in the run
+	 */
+	void addRun(int row, int start, int end) {
+		long length = end - start;
+		long last = end - 1;
+		long runSumX = (start + last) * length / 2;
+		long runSumXX = squareSum(last) - squareSum(start - 1);
+
+		this.area += length;
+		this.sumX += runSumX;
+		this.sumY += length * row;
+		this.sumXX += runSumXX;
+		this.sumYY += length * row * row;
+		this.sumXY += runSumX * row;
+
+		this.minX = Math.min(this.minX, start);
+		this.maxX = Math.max(this.maxX, end - 1);
+		this.minY = Math.min(this.minY, row);
+		this.maxY = Math.max(this.maxY, row);
+	}
+
+	// Sum of i^2 for i = 0..n
+	private static long squareSum(long n) {
+		if (n <= 0)
+			return 0;
+		return n * (n + 1) * (2 * n + 1) / 6;
+	}
+
+	/**
+	 * Gets the number of pixels in the blob
+	 */
+	public int getArea() {
+		return this.area;
+	}
+
+	/**
+	 * Gets the smallest rectangle containing every pixel in the blob
+	 */
+	public Rectangle getBounds() {
+		return new Rectangle(this.minX, this.minY, this.maxX - this.minX + 1,
+				this.maxY - this.minY + 1);
+	}
+
+	/**
+	 * Gets the mean position of the pixels in the blob
+	 */
+	public Vector2f getCentroid() {
+		return new Vector2f(1.0f * this.sumX / this.area, 1.0f * this.sumY
+				/ this.area);
+	}
+
+	/**
+	 * Gets the variance of the pixels' x values about the centroid
+	 */
+	public double getVarianceX() {
+		double mean = (double) this.sumX / this.area;
+		return (double) this.sumXX / this.area - mean * mean;
+	}
+
+	/**
+	 * Gets the variance of the pixels' y values about the centroid
+	 */
+	public double getVarianceY() {
+		double mean = (double) this.sumY / this.area;
+		return (double) this.sumYY / this.area - mean * mean;
+	}
+
+	/**
+	 * Gets the covariance of the pixels' x and y values
+	 */
+	public double getCovariance() {
+		return (double) this.sumXY / this.area - ((double) this.sumX / this.area)
+				* ((double) this.sumY / this.area);
+	}
+
+	/**
+	 * Gets the angle of the blob's major axis, from its second moments
+	 *
+	 * @return the angle in radians, between -pi/2 and pi/2
+	 */
+	public double getOrientation() {
+		return 0.5 * Math.atan2(2 * getCovariance(), getVarianceX()
+				- getVarianceY());
+	}
+}
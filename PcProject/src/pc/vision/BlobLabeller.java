@@ -0,0 +1,146 @@
+package pc.vision;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds the 8-connected blobs of an object in the label plane of a
+ * Segmentation. Each row is split into runs of matching pixels, runs that
+ * touch a run on the row above are merged with union-find, and the moments of
+ * each resulting set of runs make up a Blob.
+ *
+ * The run arrays are kept between calls, so a labeller must not be shared
+ * between threads.
+ */
+public class BlobLabeller {
+	private int[] runRow = new int[256];
+	private int[] runStart = new int[256];
+	private int[] runEnd = new int[256];
+	private int[] parent = new int[256];
+	private int[] blobIndex = new int[256];
+	private int numRuns;
+
+	/**
+	 * Finds every blob of an object within an area of the frame
+	 *
+	 * @param segmentation
+	 *            The segmentation of the frame
+	 * @param object
+	 *            One of the PitchConstants.OBJECT_* values
+	 * @param bounds
+	 *            The area to search, clipped to the pitch region
+	 * @return the blobs, in no particular order
+	 */
+	public List<Blob> findBlobs(Segmentation segmentation, int object,
+			Rectangle bounds) {
+		Rectangle area = bounds.intersection(segmentation.getRegion());
+		int mask = ColourClassifier.mask(object);
+		this.numRuns = 0;
+
+		int prevFirst = 0, prevLast = 0;
+		for (int row = area.y; row < area.y + area.height; row++) {
+			int first = this.numRuns;
+			// Index of the first run on the previous row that could still
+			// touch a run on this one
+			int p = prevFirst;
+			int column = area.x;
+			int right = area.x + area.width;
+			while (column < right) {
+				if ((segmentation.getLabel(column, row) & mask) == 0) {
+					column++;
+					continue;
+				}
+				int start = column;
+				while (column < right
+						&& (segmentation.getLabel(column, row) & mask) != 0)
+					column++;
+				int run = addRun(row, start, column);
+
+				// Diagonal neighbours count, so runs touch if they overlap
+				// when widened by one pixel
+				while (p < prevLast && this.runEnd[p] < start)
+					p++;
+				for (int q = p; q < prevLast && this.runStart[q] <= column; q++)
+					union(q, run);
+			}
+			prevFirst = first;
+			prevLast = this.numRuns;
+		}
+
+		List<Blob> blobs = new ArrayList<Blob>();
+		for (int run = 0; run < this.numRuns; run++) {
+			int root = find(run);
+			Blob blob;
+			if (root == run) {
+				this.blobIndex[run] = blobs.size();
+				blob = new Blob();
+				blobs.add(blob);
+			} else {
+				// Roots are always the lowest numbered run in their set, so
+				// they have already been given a blob
+				blob = blobs.get(this.blobIndex[root]);
+			}
+			blob.addRun(this.runRow[run], this.runStart[run], this.runEnd[run]);
+		}
+		return blobs;
+	}
+
+	/**
+	 * Finds the largest blob of an object within an area of the frame
+	 *
+	 * @return the largest blob, or null if no blob has at least
+	 *         Segmentation.MIN_POINTS pixels
+	 */
+	public Blob findLargest(Segmentation segmentation, int object,
+			Rectangle bounds) {
+		Blob best = null;
+		for (Blob blob : findBlobs(segmentation, object, bounds)) {
+			if (blob.getArea() >= Segmentation.MIN_POINTS
+					&& (best == null || blob.getArea() > best.getArea()))
+				best = blob;
+		}
+		return best;
+	}
+
+	private int addRun(int row, int start, int end) {
+		if (this.numRuns == this.runRow.length) {
+			int size = 2 * this.numRuns;
+			this.runRow = grow(this.runRow, size);
+			this.runStart = grow(this.runStart, size);
+			this.runEnd = grow(this.runEnd, size);
+			this.parent = grow(this.parent, size);
+			this.blobIndex = grow(this.blobIndex, size);
+		}
+		int run = this.numRuns++;
+		this.runRow[run] = row;
+		this.runStart[run] = start;
+		this.runEnd[run] = end;
+		this.parent[run] = run;
+		return run;
+	}
+
+	private static int[] grow(int[] array, int size) {
+		int[] result = new int[size];
+		System.arraycopy(array, 0, result, 0, array.length);
+		return result;
+	}
+
+	private int find(int run) {
+		while (this.parent[run] != run) {
+			// Path halving
+			this.parent[run] = this.parent[this.parent[run]];
+			run = this.parent[run];
+		}
+		return run;
+	}
+
+	private void union(int a, int b) {
+		a = find(a);
+		b = find(b);
+		if (a < b)
+			this.parent[b] = a;
+		else if (b < a)
+			this.parent[a] = b;
+	}
+}
@@ -0,0 +1,180 @@
+package pc.vision;
+
+import java.awt.Color;
+import java.util.Observable;
+import java.util.Observer;
+
+/**
+ * Classifies pixels into the threshold objects defined in PitchConstants
+ * using a lookup table indexed by quantised RGB value. Each entry is a bitmask
+ * with bit {@code 1 << object} set for every object (ball, blue, yellow, grey,
+ * green) whose RGB and HSV thresholds the colour falls within, so a single
+ * array lookup answers all of them at once.
+ *
+ * The table is compiled from the thresholds in PitchConstants and is only
+ * rebuilt when one of them changes.
+ */
+public class ColourClassifier implements Observer {
+	/** Default number of bits kept from each of the red, green and blue values */
+	public static final int DEFAULT_BITS_PER_CHANNEL = 7;
+
+	private final PitchConstants pitchConstants;
+	private final int bits;
+	private final int shift;
+
+	// Snapshot of the thresholds the current table was built from
+	private final float[][] lower = new float[PitchConstants.NUM_OBJECTS][PitchConstants.NUM_CHANNELS];
+	private final float[][] upper = new float[PitchConstants.NUM_OBJECTS][PitchConstants.NUM_CHANNELS];
+	private final boolean[][] inverted = new boolean[PitchConstants.NUM_OBJECTS][PitchConstants.NUM_CHANNELS];
+
+	private volatile byte[] table;
+	private volatile boolean dirty = true;
+
+	public ColourClassifier(PitchConstants pitchConstants) {
+		this(pitchConstants, DEFAULT_BITS_PER_CHANNEL);
+	}
+
+	/**
+	 * @param pitchConstants
+	 *            The thresholds to compile
+	 * @param bitsPerChannel
+	 *            How many of the most significant bits of each RGB value are
+	 *            used to index the table, between 1 and 8. 8 gives an exact
+	 *            (16MB) table.
+	 */
+	public ColourClassifier(PitchConstants pitchConstants, int bitsPerChannel) {
+		if (bitsPerChannel < 1 || bitsPerChannel > 8)
+			throw new IllegalArgumentException(
+					"bitsPerChannel must be between 1 and 8");
+		this.pitchConstants = pitchConstants;
+		this.bits = bitsPerChannel;
+		this.shift = 8 - bitsPerChannel;
+		pitchConstants.addObserver(this);
+		rebuild();
+	}
+
+	/**
+	 * Gets the bit used for an object in the masks returned by
+	 * {@link #classify(int)}
+	 *
+	 * @param object
+	 *            One of the PitchConstants.OBJECT_* values
+	 */
+	public static int mask(int object) {
+		return 1 << object;
+	}
+
+	/**
+	 * Gets the set of objects a colour belongs to
+	 *
+	 * @param rgb
+	 *            The colour, packed as 0xRRGGBB
+	 * @return A bitmask of {@link #mask(int)} values
+	 */
+	public int classify(int rgb) {
+		return this.table[index(rgb)];
+	}
+
+	/**
+	 * Tests whether a colour is within the thresholds for an object
+	 *
+	 * @param rgb
+	 *            The colour, packed as 0xRRGGBB
+	 * @param object
+	 *            One of the PitchConstants.OBJECT_* values
+	 */
+	public boolean isColour(int rgb, int object) {
+		return (classify(rgb) & mask(object)) != 0;
+	}
+
+	/**
+	 * Rebuilds the lookup table if the thresholds have changed since it was
+	 * last built. Called once per frame by Vision so that a burst of slider
+	 * changes only costs a single rebuild.
+	 */
+	public synchronized void refresh() {
+		if (!this.dirty)
+			return;
+		this.dirty = false;
+		// PitchConstants notifies for debug mode and pitch bounds changes too,
+		// which don't need a rebuild
+		if (!thresholdsUnchanged())
+			rebuild();
+	}
+
+	@Override
+	public void update(Observable o, Object arg) {
+		this.dirty = true;
+	}
+
+	private int index(int rgb) {
+		int r = (rgb >> 16) & 0xFF;
+		int g = (rgb >> 8) & 0xFF;
+		int b = rgb & 0xFF;
+		return ((r >> shift) << (2 * bits)) | ((g >> shift) << bits)
+				| (b >> shift);
+	}
+
+	private boolean thresholdsUnchanged() {
+		for (int obj = 0; obj < PitchConstants.NUM_OBJECTS; obj++) {
+			for (int ch = 0; ch < PitchConstants.NUM_CHANNELS; ch++) {
+				if (lower[obj][ch] != pitchConstants.getLowerThreshold(obj, ch)
+						|| upper[obj][ch] != pitchConstants.getUpperThreshold(
+								obj, ch)
+						|| inverted[obj][ch] != pitchConstants
+								.isThresholdInverted(obj, ch))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	private void rebuild() {
+		for (int obj = 0; obj < PitchConstants.NUM_OBJECTS; obj++) {
+			for (int ch = 0; ch < PitchConstants.NUM_CHANNELS; ch++) {
+				lower[obj][ch] = pitchConstants.getLowerThreshold(obj, ch);
+				upper[obj][ch] = pitchConstants.getUpperThreshold(obj, ch);
+				inverted[obj][ch] = pitchConstants.isThresholdInverted(obj, ch);
+			}
+		}
+
+		int levels = 1 << bits;
+		// Sample each bucket at its centre
+		int offset = shift == 0 ? 0 : 1 << (shift - 1);
+		byte[] newTable = new byte[levels * levels * levels];
+		float[] values = new float[PitchConstants.NUM_CHANNELS];
+		float[] hsv = new float[3];
+		int i = 0;
+		for (int rq = 0; rq < levels; rq++) {
+			int r = (rq << shift) + offset;
+			for (int gq = 0; gq < levels; gq++) {
+				int g = (gq << shift) + offset;
+				for (int bq = 0; bq < levels; bq++) {
+					int b = (bq << shift) + offset;
+					Color.RGBtoHSB(r, g, b, hsv);
+					values[PitchConstants.CHANNEL_RED] = r;
+					values[PitchConstants.CHANNEL_GREEN] = g;
+					values[PitchConstants.CHANNEL_BLUE] = b;
+					values[PitchConstants.CHANNEL_HUE] = hsv[0];
+					values[PitchConstants.CHANNEL_SATURATION] = hsv[1];
+					values[PitchConstants.CHANNEL_BRIGHTNESS] = hsv[2];
+					newTable[i++] = (byte) classify(values);
+				}
+			}
+		}
+		this.table = newTable;
+	}
+
+	private int classify(float[] values) {
+		int result = 0;
+		objects: for (int obj = 0; obj < PitchConstants.NUM_OBJECTS; obj++) {
+			for (int ch = 0; ch < PitchConstants.NUM_CHANNELS; ch++) {
+				if (!Vision.checkBounds(values[ch], lower[obj][ch],
+						upper[obj][ch], inverted[obj][ch]))
+					continue objects;
+			}
+			result |= mask(obj);
+		}
+		return result;
+	}
+}
@@ -1,12 +1,15 @@
 package pc.vision;
 
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.NoninvertibleTransformException;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
-import java.awt.image.Raster;
-import java.awt.image.WritableRaster;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.Observable;
@@ -25,10 +28,29 @@ public class DistortionFix implements VideoReceiver {
 	private final static int HEIGHT = 480;
 	private double barrelCorrectionX = -0.03;
 	private double barrelCorrectionY = -0.085;
-	private AffineTransform affineTransform;
+	private volatile AffineTransform affineTransform;
+
+	// Index of the source pixel for each pixel of the corrected image, or -1
+	// if it comes from outside the frame. Rebuilt when remapDirty is set.
+	private final int[] remap = new int[WIDTH * HEIGHT];
+	// Bilinear weights of the right and lower neighbours (out of 256) for
+	// each pixel, packed as x << 16 | y
+	private final int[] weights = new int[WIDTH * HEIGHT];
+	private volatile boolean remapDirty = true;
+	private boolean remapBilinear;
+	private volatile boolean bilinear = false;
+	private final BufferedImage[] outputs = {
+			new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB),
+			new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB) };
+	private int currentOutput = 0;
+	// Used to read frames of types without a fast path
+	private final PixelBuffer source = new PixelBuffer(WIDTH, HEIGHT);
 
 	private ArrayList<VideoReceiver> videoReceivers = new ArrayList<VideoReceiver>();
-	private boolean active = true;
+	private volatile boolean active = true;
+	// The latest frame from the video stream, and its correction if anything
+	// has asked for it yet
+	private BufferedImage latestFrame, correctedFrame;
 
 	public DistortionFix() {
 		affineTransform = new AffineTransform(); // Identity transformation
@@ -57,8 +79,13 @@ public class DistortionFix implements VideoReceiver {
 					rotateDegrees = (Double) rotateDegreesObj;
 				else
 					rotateDegrees = (Integer) rotateDegreesObj;
-				affineTransform = AffineTransform.getRotateInstance(
-						Math.toRadians(rotateDegrees), WIDTH / 2, HEIGHT / 2);
+				AffineTransform newTransform = AffineTransform
+						.getRotateInstance(Math.toRadians(rotateDegrees),
+								WIDTH / 2, HEIGHT / 2);
+				if (!newTransform.equals(affineTransform)) {
+					affineTransform = newTransform;
+					remapDirty = true;
+				}
 			}
 		});
 	}
@@ -82,62 +109,206 @@ public class DistortionFix implements VideoReceiver {
 	 */
 	public void setActive(boolean active) {
 		this.active = active;
+		synchronized (this) {
+			this.correctedFrame = null;
+		}
 	}
 
 	/**
-	 * Remove barrel distortion on whole image
+	 * Gets the latest frame from the video stream with the barrel distortion
+	 * removed. The frame is only corrected the first time this is called for
+	 * it, so displays should call this when they actually repaint and will
+	 * then share one correction per frame. Nothing is corrected if nothing
+	 * asks.
 	 * 
-	 * Buffers used so we only correct the pitch area not the useless background
-	 * area TODO: Actually use these buffers
+	 * @return the corrected frame (or the original frame if the correction
+	 *         is not active), or null if no frame has been received yet
+	 */
+	public synchronized BufferedImage getCorrectedFrame() {
+		if (this.correctedFrame == null && this.latestFrame != null)
+			this.correctedFrame = isActive() ? removeBarrelDistortion(this.latestFrame)
+					: this.latestFrame;
+		return this.correctedFrame;
+	}
+
+	/**
+	 * Determines whether the corrected image is interpolated between the four
+	 * nearest source pixels rather than taken from the nearest one
+	 */
+	public boolean isBilinear() {
+		return this.bilinear;
+	}
+
+	/**
+	 * Enables or disables bilinear interpolation of the corrected image. It
+	 * gets rid of most of the "duplicate" pixels, but costs more per frame.
 	 * 
-	 * TODO: find an efficient way to merge pixels based on rounding up/down to
-	 * avoid "duplicate" pixels - mostly aesthetic
+	 * @param bilinear
+	 *            true to interpolate, false to use the nearest pixel
+	 */
+	public void setBilinear(boolean bilinear) {
+		this.bilinear = bilinear;
+	}
+
+	/**
+	 * Remove barrel distortion on whole image
+	 * 
+	 * The source pixel for every pixel of the corrected image only depends on
+	 * the correction coefficients and the rotation, so it is worked out once
+	 * and kept in a remap table until one of those changes. Correcting a
+	 * frame is then a single pass copying pixels through the table.
 	 * 
 	 * @param image
 	 *            Frame to correct
-	 * @return A new image with no barrel distortion
+	 * @return An image with no barrel distortion. Two images are used in
+	 *         turn, so the result is overwritten by the call after next.
 	 */
-	public BufferedImage removeBarrelDistortion(BufferedImage image) {
-
-		BufferedImage newImage = new BufferedImage(WIDTH, HEIGHT,
-				BufferedImage.TYPE_INT_RGB);
-
-		// Strip image to a one-dimensional array
-		Raster raster = image.getData();
-		int[] array = null;
-		array = raster.getPixels(0, 0, WIDTH, HEIGHT, array);
-
-		// Array for the fixed image
-		int[] arrayNew = new int[921600];
+	public synchronized BufferedImage removeBarrelDistortion(BufferedImage image) {
+		boolean useBilinear = this.bilinear;
+		if (this.remapDirty || useBilinear != this.remapBilinear)
+			buildRemap(useBilinear);
+
+		this.currentOutput = 1 - this.currentOutput;
+		BufferedImage newImage = this.outputs[this.currentOutput];
+		int[] dst = ((DataBufferInt) newImage.getRaster().getDataBuffer())
+				.getData();
+
+		if (image.getType() == BufferedImage.TYPE_3BYTE_BGR
+				&& image.getWidth() == WIDTH && image.getHeight() == HEIGHT
+				&& ((ComponentSampleModel) image.getSampleModel())
+						.getScanlineStride() == 3 * WIDTH) {
+			byte[] src = ((DataBufferByte) image.getRaster().getDataBuffer())
+					.getData();
+			if (useBilinear)
+				gatherBilinear(src, dst);
+			else
+				gather(src, dst);
+		} else {
+			int[] src;
+			if (image.getType() == BufferedImage.TYPE_INT_RGB
+					&& image.getWidth() == WIDTH && image.getHeight() == HEIGHT
+					&& ((SinglePixelPackedSampleModel) image.getSampleModel())
+							.getScanlineStride() == WIDTH) {
+				src = ((DataBufferInt) image.getRaster().getDataBuffer())
+						.getData();
+			} else {
+				this.source.load(image, new Rectangle(0, 0, WIDTH, HEIGHT));
+				src = this.source.rgb;
+			}
+			if (useBilinear)
+				gatherBilinear(src, dst);
+			else
+				gather(src, dst);
+		}
+		return newImage;
+	}
 
+	private void buildRemap(boolean useBilinear) {
+		// Cleared first so a change while building triggers another rebuild
+		this.remapDirty = false;
 		Point2D.Double point = new Point2D.Double();
-		// Apply invBarrelCorrect() to every pixel
-		// array has three cells per pixel to represent RGB
-		for (int i = 0; i < array.length; i += 3) {
-
-			// Actual values for x,y
-			point.x = (i / 3) % (WIDTH);
-			point.y = (i / 3) / (WIDTH);
-
+		for (int i = 0; i < this.remap.length; i++) {
+			point.x = i % WIDTH;
+			point.y = i / WIDTH;
 			invBarrelCorrect(point);
 
-			// The first cell of the array for this pixel
-			int z = 3 * ((WIDTH) * (int) (point.y) + (int) (point.x));
+			if (useBilinear) {
+				int x = (int) Math.floor(point.x);
+				int y = (int) Math.floor(point.y);
+				if (x < 0 || x >= WIDTH || y < 0 || y >= HEIGHT) {
+					this.remap[i] = -1;
+				} else {
+					this.remap[i] = WIDTH * y + x;
+					int wx = (int) ((point.x - x) * 256);
+					int wy = (int) ((point.y - y) * 256);
+					// The last row and column have nothing to blend with
+					if (x == WIDTH - 1)
+						wx = 0;
+					if (y == HEIGHT - 1)
+						wy = 0;
+					this.weights[i] = wx << 16 | wy;
+				}
+			} else {
+				// Truncated rather than rounded, as it always has been
+				int x = (int) point.x;
+				int y = (int) point.y;
+				if (x < 0 || x >= WIDTH || y < 0 || y >= HEIGHT)
+					this.remap[i] = -1;
+				else
+					this.remap[i] = WIDTH * y + x;
+			}
+		}
+		this.remapBilinear = useBilinear;
+	}
 
-			if (0 <= z && z < arrayNew.length) {
-				arrayNew[i] = array[z]; // R
-				arrayNew[i + 1] = array[z + 1]; // G
-				arrayNew[i + 2] = array[z + 2]; // B
+	private void gather(byte[] src, int[] dst) {
+		for (int i = 0; i < dst.length; i++) {
+			int p = this.remap[i];
+			if (p < 0) {
+				dst[i] = 0;
+			} else {
+				int z = 3 * p;
+				dst[i] = (src[z + 2] & 0xFF) << 16 | (src[z + 1] & 0xFF) << 8
+						| (src[z] & 0xFF);
 			}
 		}
+	}
 
-		// Get new image from the fixed array
-		WritableRaster newRaster = (WritableRaster) newImage.getData();
-		newRaster.setPixels(0, 0, WIDTH, HEIGHT, arrayNew);
-		newImage.setData(newRaster);
+	private void gather(int[] src, int[] dst) {
+		for (int i = 0; i < dst.length; i++) {
+			int p = this.remap[i];
+			dst[i] = p < 0 ? 0 : src[p] & 0xFFFFFF;
+		}
+	}
 
-		return newImage;
+	private void gatherBilinear(byte[] src, int[] dst) {
+		for (int i = 0; i < dst.length; i++) {
+			int p = this.remap[i];
+			if (p < 0) {
+				dst[i] = 0;
+				continue;
+			}
+			int wx = this.weights[i] >>> 16;
+			int wy = this.weights[i] & 0xFFFF;
+			int right = wx == 0 ? 0 : 3;
+			int below = wy == 0 ? 0 : 3 * WIDTH;
+			int z = 3 * p;
+			int result = 0;
+			// Blue, green then red
+			for (int c = 0; c < 3; c++, z++) {
+				int top = (src[z] & 0xFF) * (256 - wx) + (src[z + right] & 0xFF)
+						* wx;
+				int bottom = (src[z + below] & 0xFF) * (256 - wx)
+						+ (src[z + below + right] & 0xFF) * wx;
+				result |= ((top * (256 - wy) + bottom * wy) >> 16) << (8 * c);
+			}
+			dst[i] = result;
+		}
+	}
 
+	private void gatherBilinear(int[] src, int[] dst) {
+		for (int i = 0; i < dst.length; i++) {
+			int p = this.remap[i];
+			if (p < 0) {
+				dst[i] = 0;
+				continue;
+			}
+			int wx = this.weights[i] >>> 16;
+			int wy = this.weights[i] & 0xFFFF;
+			int right = wx == 0 ? 0 : 1;
+			int below = wy == 0 ? 0 : WIDTH;
+			int tl = src[p], tr = src[p + right];
+			int bl = src[p + below], br = src[p + below + right];
+			int result = 0;
+			for (int shift = 0; shift < 24; shift += 8) {
+				int top = ((tl >> shift) & 0xFF) * (256 - wx)
+						+ ((tr >> shift) & 0xFF) * wx;
+				int bottom = ((bl >> shift) & 0xFF) * (256 - wx)
+						+ ((br >> shift) & 0xFF) * wx;
+				result |= ((top * (256 - wy) + bottom * wy) >> 16) << shift;
+			}
+			dst[i] = result;
+		}
 	}
 
 	/**
@@ -209,7 +380,9 @@ public class DistortionFix implements VideoReceiver {
 	}
 
 	/**
-	 * Used to send a frame to the distortion fix
+	 * Used to send a frame to the distortion fix. The frame is only corrected
+	 * straight away if there are receivers registered; otherwise it waits
+	 * for getCorrectedFrame().
 	 * 
 	 * @param frame
 	 *            The frame being sent
@@ -220,10 +393,14 @@ public class DistortionFix implements VideoReceiver {
 	 */
 	@Override
 	public void sendFrame(BufferedImage frame, float delta, int frameCounter, long timestamp) {
-		BufferedImage processedFrame = frame;
-		if (isActive())
-			processedFrame = removeBarrelDistortion(frame);
+		synchronized (this) {
+			this.latestFrame = frame;
+			this.correctedFrame = null;
+		}
+		if (this.videoReceivers.isEmpty())
+			return;
 
+		BufferedImage processedFrame = getCorrectedFrame();
 		for (VideoReceiver receiver : this.videoReceivers)
 			receiver.sendFrame(processedFrame, delta, frameCounter, timestamp);
 	}
@@ -0,0 +1,550 @@
+package pc.vision;
+
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import pc.vision.interfaces.StaticWorldStateReceiver;
+import pc.vision.interfaces.VideoReceiver;
+import pc.world.DirectedPoint;
+import pc.world.StaticWorldState;
+
+/**
+ * Stores every frame of a match, along with the positions vision found in it,
+ * in a directory of memory mapped segment files, so that frames can be
+ * appended during a match for little more than the cost of a copy and any
+ * frame can be looked at again afterwards.
+ *
+ * Each segment file holds a fixed number of frames. It starts with a header,
+ * followed by an index with a fixed size entry for every frame (its number,
+ * timestamp, delta, counter and positions), followed by the frames
+ * themselves as raw BGR pixels. Since everything is a fixed size, finding a
+ * frame from its number only takes arithmetic. The index entries are kept
+ * apart from the pixels so that searching by timestamp only touches the
+ * index.
+ *
+ * An archive can be limited to a number of segments, in which case it is a
+ * ring: once every segment is full, the oldest frames are overwritten.
+ *
+ * Only the few segments used most recently are kept mapped, so that a long
+ * match doesn't keep every frame it has archived in memory. A segment that
+ * has been let go is mapped again from its file when it is next read.
+ *
+ * One thread may append frames and positions while any number of others read.
+ * Frames are numbered from 0 in the order they were appended.
+ */
+public class FrameArchive implements VideoReceiver, StaticWorldStateReceiver {
+	public static final int MAGIC = 0x53445041; // "SDPA"
+	public static final int VERSION = 1;
+	/** The number of frames in each segment unless told otherwise */
+	public static final int DEFAULT_FRAMES_PER_SEGMENT = 500;
+
+	private static final int HEADER_SIZE = 64;
+	private static final int ENTRY_SIZE = 128;
+	// Offsets of the fields of an index entry. The frame number is stored
+	// plus one so that entries that were never written read as 0.
+	private static final int ENTRY_FRAME = 0;
+	private static final int ENTRY_TIMESTAMP = 8;
+	private static final int ENTRY_DELTA = 16;
+	private static final int ENTRY_COUNTER = 20;
+	private static final int ENTRY_STATE_FLAGS = 24;
+	private static final int ENTRY_BALL = 28;
+	private static final int ENTRY_ROBOTS = 36;
+	private static final int ROBOT_SIZE = 16;
+	// Bits of the state flags: whether the state was recorded at all, then
+	// whether each object was found
+	private static final int HAS_STATE = 1;
+	private static final int HAS_BALL = 2;
+	private static final int HAS_ROBOT = 4;
+	/**
+	 * How many of the most recent frames to look through for the frame a
+	 * state belongs to. States arrive a few frames behind the frames
+	 * themselves at most.
+	 */
+	private static final int STATE_SEARCH_DEPTH = 32;
+
+	/** How many segments are kept mapped at once */
+	private static final int MAPPED_SEGMENTS = 3;
+
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SEGMENT_SUFFIX = ".frames";
+
+	private final File directory;
+	private final boolean writable;
+	private final int width;
+	private final int height;
+	private final int framesPerSegment;
+	private final int maxSegments;
+	private final int frameSize;
+	private final int indexSize;
+	private final long segmentSize;
+
+	// Indexed by segment number, null where a segment isn't mapped
+	private final List<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+	// The numbers of the mapped segments, in the order they were mapped, so
+	// that the oldest mapping is let go first. Guarded by segments.
+	private final ArrayDeque<Integer> mappedOrder = new ArrayDeque<Integer>();
+	// The range of frame numbers that can be read. end is written last when
+	// a frame is appended, so a frame is complete by the time readers see it.
+	private volatile int firstFrame = 0;
+	private volatile int endFrame = 0;
+
+	// Used to convert frames that aren't TYPE_3BYTE_BGR, on the writer only
+	private int[] rgbRow;
+	private byte[] bgrRow;
+
+	private FrameArchive(File directory, boolean writable, int width,
+			int height, int framesPerSegment, int maxSegments) {
+		this.directory = directory;
+		this.writable = writable;
+		this.width = width;
+		this.height = height;
+		this.framesPerSegment = framesPerSegment;
+		this.maxSegments = maxSegments;
+		this.frameSize = 3 * width * height;
+		// Frames start on a page boundary
+		this.indexSize = (HEADER_SIZE + framesPerSegment * ENTRY_SIZE + 4095)
+				& ~4095;
+		this.segmentSize = this.indexSize + (long) framesPerSegment
+				* this.frameSize;
+	}
+
+	/**
+	 * Creates a new archive, replacing any archive already in the directory
+	 *
+	 * @param directory
+	 *            The directory to keep the segment files in, which is created
+	 *            if it doesn't exist
+	 * @param width
+	 *            The width of the frames
+	 * @param height
+	 *            The height of the frames
+	 * @param framesPerSegment
+	 *            The number of frames in each segment file. The whole of a
+	 *            segment must fit in a single mapping, so it can be no more
+	 *            than 2GB.
+	 * @param maxSegments
+	 *            The number of segments to keep before overwriting the oldest,
+	 *            or 0 to keep every frame
+	 * @throws IOException
+	 *             if the directory can't be created
+	 */
+	public static FrameArchive create(File directory, int width, int height,
+			int framesPerSegment, int maxSegments) throws IOException {
+		FrameArchive archive = new FrameArchive(directory, true, width, height,
+				framesPerSegment, maxSegments);
+		if (framesPerSegment <= 0 || archive.segmentSize > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Can't have "
+					+ framesPerSegment + " frames of " + width + "x" + height
+					+ " in a segment");
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Couldn't create " + directory);
+		for (File segment : listSegments(directory)) {
+			if (!segment.delete())
+				throw new IOException("Couldn't replace " + segment);
+		}
+		return archive;
+	}
+
+	/**
+	 * Opens an existing archive to read
+	 *
+	 * @throws IOException
+	 *             if the directory doesn't contain an archive, or it can't be
+	 *             read
+	 */
+	public static FrameArchive open(File directory) throws IOException {
+		File[] files = listSegments(directory);
+		if (files.length == 0)
+			throw new IOException(directory + " is not a frame archive");
+
+		// Segments are only mapped here to read their headers and find the
+		// range of frames from the index entries; reading maps them again
+		FrameArchive archive = null;
+		int first = Integer.MAX_VALUE, end = 0;
+		for (File file : files) {
+			MappedByteBuffer segment = map(file, FileChannel.MapMode.READ_ONLY,
+					0);
+			if (segment.getInt(0) != MAGIC)
+				throw new IOException(file + " is not part of a frame archive");
+			if (segment.getInt(4) != VERSION)
+				throw new IOException(file + " is a version "
+						+ segment.getInt(4) + " frame archive, expected version "
+						+ VERSION);
+			if (archive == null)
+				archive = new FrameArchive(directory, false, segment.getInt(8),
+						segment.getInt(12), segment.getInt(16),
+						segment.getInt(20));
+			for (int slot = 0; slot < archive.framesPerSegment; slot++) {
+				long stored = segment.getLong(archive.entryOffset(slot)
+						+ ENTRY_FRAME);
+				if (stored == 0)
+					continue;
+				first = Math.min(first, (int) stored - 1);
+				end = Math.max(end, (int) stored);
+			}
+		}
+		archive.firstFrame = end == 0 ? 0 : first;
+		archive.endFrame = end;
+		return archive;
+	}
+
+	private static File[] listSegments(File directory) {
+		File[] files = directory.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.startsWith(SEGMENT_PREFIX)
+						&& name.endsWith(SEGMENT_SUFFIX);
+			}
+		});
+		return files == null ? new File[0] : files;
+	}
+
+	private static MappedByteBuffer map(File file, FileChannel.MapMode mode,
+			long size) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file,
+				mode == FileChannel.MapMode.READ_ONLY ? "r" : "rw");
+		try {
+			if (size == 0)
+				size = raf.length();
+			// The mapping stays valid after the file is closed
+			return raf.getChannel().map(mode, 0, size);
+		} finally {
+			raf.close();
+		}
+	}
+
+	private File segmentFile(int number) {
+		return new File(this.directory, String.format("%s%04d%s",
+				SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+	}
+
+	/**
+	 * Remembers a segment's mapping, letting go of the one mapped longest ago
+	 * if too many are mapped. Called holding the lock on segments.
+	 */
+	private void addMapping(int number, MappedByteBuffer segment) {
+		while (this.segments.size() <= number)
+			this.segments.add(null);
+		this.segments.set(number, segment);
+		this.mappedOrder.addLast(number);
+		if (this.mappedOrder.size() > MAPPED_SEGMENTS)
+			this.segments.set(this.mappedOrder.removeFirst(), null);
+	}
+
+	/**
+	 * Gets the segment to append a frame to, creating it if necessary
+	 */
+	private MappedByteBuffer getSegmentForAppend(int frame) throws IOException {
+		int number = segmentNumber(frame);
+		MappedByteBuffer segment = segmentOf(frame);
+		if (segment == null) {
+			File file = segmentFile(number);
+			segment = map(file, FileChannel.MapMode.READ_WRITE,
+					this.segmentSize);
+			segment.putInt(0, MAGIC);
+			segment.putInt(4, VERSION);
+			segment.putInt(8, this.width);
+			segment.putInt(12, this.height);
+			segment.putInt(16, this.framesPerSegment);
+			segment.putInt(20, this.maxSegments);
+			segment.putInt(24, number);
+			synchronized (this.segments) {
+				addMapping(number, segment);
+			}
+		}
+		return segment;
+	}
+
+	private int entryOffset(int slot) {
+		return HEADER_SIZE + slot * ENTRY_SIZE;
+	}
+
+	private int frameOffset(int slot) {
+		return this.indexSize + slot * this.frameSize;
+	}
+
+	/**
+	 * Adds a frame to the end of the archive
+	 *
+	 * @return the number of the frame
+	 * @throws IOException
+	 *             if a new segment file couldn't be created
+	 */
+	public synchronized int append(BufferedImage frame, float delta,
+			int counter, long timestamp) throws IOException {
+		if (!this.writable)
+			throw new IllegalStateException(this.directory
+					+ " was opened to read");
+		if (frame.getWidth() != this.width || frame.getHeight() != this.height)
+			throw new IllegalArgumentException("Frame is " + frame.getWidth()
+					+ "x" + frame.getHeight() + " but the archive is "
+					+ this.width + "x" + this.height);
+
+		int number = this.endFrame;
+		MappedByteBuffer segment = getSegmentForAppend(number);
+		int slot = number % this.framesPerSegment;
+		int entry = entryOffset(slot);
+
+		// Mark the slot as empty while it is being written, so that anyone
+		// reading the frame it held before knows it has gone
+		if (this.maxSegments > 0)
+			this.firstFrame = Math.max(this.firstFrame, number + 1
+					- this.maxSegments * this.framesPerSegment);
+		segment.putLong(entry + ENTRY_FRAME, 0);
+
+		ByteBuffer pixels = segment.duplicate();
+		pixels.position(frameOffset(slot));
+		if (frame.getType() == BufferedImage.TYPE_3BYTE_BGR) {
+			// Already in the order they are stored in, so copy them straight
+			// across
+			byte[] data = ((DataBufferByte) frame.getRaster().getDataBuffer())
+					.getData();
+			pixels.put(data, 0, this.frameSize);
+		} else {
+			if (this.rgbRow == null) {
+				this.rgbRow = new int[this.width];
+				this.bgrRow = new byte[3 * this.width];
+			}
+			for (int y = 0; y < this.height; y++) {
+				frame.getRGB(0, y, this.width, 1, this.rgbRow, 0, this.width);
+				for (int x = 0, i = 0; x < this.width; x++) {
+					int rgb = this.rgbRow[x];
+					this.bgrRow[i++] = (byte) rgb;
+					this.bgrRow[i++] = (byte) (rgb >> 8);
+					this.bgrRow[i++] = (byte) (rgb >> 16);
+				}
+				pixels.put(this.bgrRow);
+			}
+		}
+
+		segment.putLong(entry + ENTRY_TIMESTAMP, timestamp);
+		segment.putFloat(entry + ENTRY_DELTA, delta);
+		segment.putInt(entry + ENTRY_COUNTER, counter);
+		segment.putInt(entry + ENTRY_STATE_FLAGS, 0);
+		segment.putLong(entry + ENTRY_FRAME, number + 1L);
+		this.endFrame = number + 1;
+		return number;
+	}
+
+	/**
+	 * Records the positions vision found in a frame
+	 *
+	 * @param frameCounter
+	 *            The counter the frame was appended with. Only the most
+	 *            recent frames are searched for it.
+	 * @return whether the frame was found
+	 */
+	public synchronized boolean setState(int frameCounter,
+			StaticWorldState state) {
+		int last = Math.max(this.firstFrame, this.endFrame
+				- STATE_SEARCH_DEPTH);
+		for (int number = this.endFrame - 1; number >= last; number--) {
+			MappedByteBuffer segment = segmentOf(number);
+			int entry = entryOffset(number % this.framesPerSegment);
+			if (segment.getInt(entry + ENTRY_COUNTER) != frameCounter)
+				continue;
+
+			int flags = HAS_STATE;
+			if (state.getBall() != null) {
+				flags |= HAS_BALL;
+				segment.putInt(entry + ENTRY_BALL, state.getBall().x);
+				segment.putInt(entry + ENTRY_BALL + 4, state.getBall().y);
+			}
+			DirectedPoint[] robots = { state.getAttacker(),
+					state.getDefender(), state.getEnemyAttacker(),
+					state.getEnemyDefender() };
+			for (int i = 0; i < robots.length; i++) {
+				if (robots[i] == null)
+					continue;
+				flags |= HAS_ROBOT << i;
+				int offset = entry + ENTRY_ROBOTS + i * ROBOT_SIZE;
+				segment.putInt(offset, robots[i].x);
+				segment.putInt(offset + 4, robots[i].y);
+				segment.putDouble(offset + 8, robots[i].getDirection());
+			}
+			segment.putInt(entry + ENTRY_STATE_FLAGS, flags);
+			return true;
+		}
+		return false;
+	}
+
+	private int segmentNumber(int frame) {
+		int number = frame / this.framesPerSegment;
+		return this.maxSegments > 0 ? number % this.maxSegments : number;
+	}
+
+	/**
+	 * Gets the index entry of a frame
+	 *
+	 * @return the offset of the entry in its segment
+	 * @throws IndexOutOfBoundsException
+	 *             if the frame is not in the archive
+	 */
+	private int checkedEntry(MappedByteBuffer segment, int frame) {
+		if (frame < this.firstFrame || frame >= this.endFrame
+				|| segment == null)
+			throw new IndexOutOfBoundsException("Frame " + frame
+					+ " is not in the archive");
+		return entryOffset(frame % this.framesPerSegment);
+	}
+
+	/**
+	 * Gets the segment a frame is in, mapping it again if it has been let go
+	 *
+	 * @return the segment, or null if it doesn't exist
+	 */
+	private MappedByteBuffer segmentOf(int frame) {
+		int number = segmentNumber(frame);
+		synchronized (this.segments) {
+			MappedByteBuffer segment = number < this.segments.size() ? this.segments
+					.get(number) : null;
+			if (segment != null)
+				return segment;
+			File file = segmentFile(number);
+			if (!file.exists())
+				return null;
+			try {
+				// States are still recorded in recent segments, so a writable
+				// archive maps them writable again
+				if (this.writable)
+					segment = map(file, FileChannel.MapMode.READ_WRITE,
+							this.segmentSize);
+				else
+					segment = map(file, FileChannel.MapMode.READ_ONLY, 0);
+			} catch (IOException e) {
+				System.err.println("Couldn't map " + file + ": "
+						+ e.getMessage());
+				return null;
+			}
+			addMapping(number, segment);
+			return segment;
+		}
+	}
+
+	public long getTimestamp(int frame) {
+		MappedByteBuffer segment = segmentOf(frame);
+		return segment.getLong(checkedEntry(segment, frame) + ENTRY_TIMESTAMP);
+	}
+
+	public float getDelta(int frame) {
+		MappedByteBuffer segment = segmentOf(frame);
+		return segment.getFloat(checkedEntry(segment, frame) + ENTRY_DELTA);
+	}
+
+	public int getCounter(int frame) {
+		MappedByteBuffer segment = segmentOf(frame);
+		return segment.getInt(checkedEntry(segment, frame) + ENTRY_COUNTER);
+	}
+
+	/**
+	 * Gets the positions recorded for a frame
+	 *
+	 * @return the positions, or null if none were recorded
+	 */
+	public StaticWorldState getState(int frame) {
+		MappedByteBuffer segment = segmentOf(frame);
+		int entry = checkedEntry(segment, frame);
+		int flags = segment.getInt(entry + ENTRY_STATE_FLAGS);
+		if ((flags & HAS_STATE) == 0)
+			return null;
+
+		StaticWorldState state = new StaticWorldState();
+		if ((flags & HAS_BALL) != 0)
+			state.setBall(new Point(segment.getInt(entry + ENTRY_BALL),
+					segment.getInt(entry + ENTRY_BALL + 4)));
+		DirectedPoint[] robots = new DirectedPoint[4];
+		for (int i = 0; i < robots.length; i++) {
+			if ((flags & (HAS_ROBOT << i)) == 0)
+				continue;
+			int offset = entry + ENTRY_ROBOTS + i * ROBOT_SIZE;
+			robots[i] = new DirectedPoint(segment.getInt(offset),
+					segment.getInt(offset + 4), segment.getDouble(offset + 8));
+		}
+		state.setAttacker(robots[0]);
+		state.setDefender(robots[1]);
+		state.setEnemyAttacker(robots[2]);
+		state.setEnemyDefender(robots[3]);
+		return state;
+	}
+
+	/**
+	 * Copies a frame's pixels into an image
+	 *
+	 * @param image
+	 *            A TYPE_3BYTE_BGR image the size of the archive's frames
+	 * @return false if the frame was overwritten while it was being copied
+	 */
+	public boolean readFrame(int frame, BufferedImage image) {
+		MappedByteBuffer segment = segmentOf(frame);
+		int entry = checkedEntry(segment, frame);
+		ByteBuffer pixels = segment.duplicate();
+		pixels.position(frameOffset(frame % this.framesPerSegment));
+		pixels.get(((DataBufferByte) image.getRaster().getDataBuffer())
+				.getData(), 0, this.frameSize);
+		return segment.getLong(entry + ENTRY_FRAME) == frame + 1L;
+	}
+
+	/**
+	 * Gets the number of the oldest frame still in the archive
+	 */
+	public int getFirstFrame() {
+		return this.firstFrame;
+	}
+
+	/**
+	 * Gets the number one past the newest frame in the archive
+	 */
+	public int getEndFrame() {
+		return this.endFrame;
+	}
+
+	public int getWidth() {
+		return this.width;
+	}
+
+	public int getHeight() {
+		return this.height;
+	}
+
+	@Override
+	public void sendFrame(BufferedImage frame, float delta, int frameCounter,
+			long timestamp) {
+		try {
+			append(frame, delta, frameCounter, timestamp);
+		} catch (IOException e) {
+			System.err.println("Couldn't archive frame " + frameCounter + ": "
+					+ e.getMessage());
+		}
+	}
+
+	@Override
+	public void sendStaticWorldState(StaticWorldState state,
+			int frameCounter, long timestamp) {
+		if (this.writable)
+			setState(frameCounter, state);
+	}
+
+	/**
+	 * Writes everything appended so far out to disk. Segments that have been
+	 * let go are left to the operating system to write.
+	 */
+	public void flush() {
+		synchronized (this.segments) {
+			for (MappedByteBuffer segment : this.segments) {
+				if (segment != null && this.writable)
+					segment.force();
+			}
+		}
+	}
+}
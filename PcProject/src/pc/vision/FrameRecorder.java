@@ -0,0 +1,236 @@
+package pc.vision;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import pc.vision.interfaces.VideoReceiver;
+
+/**
+ * Records the frames it receives to a file, so that they can be played back
+ * later by FrameReplay without a camera.
+ *
+ * The file starts with a header of four ints: MAGIC, VERSION, and the width
+ * and height of the frames. Every frame after that takes up the same number
+ * of bytes: the timestamp as a long, delta as a float and the frame counter as
+ * an int, followed by the pixels as 3 bytes each in BGR order, row by row.
+ * Frames are stored uncompressed so that recording costs little more than a
+ * copy, and so that any frame can be found from its index alone.
+ *
+ * Receiving a frame only copies its pixels; they are written to the file on
+ * the recorder's own thread, so that the disk never holds up the thread
+ * sending frames. If the disk falls behind, the frame waiting to be written
+ * is replaced by the newest one, and counted as dropped.
+ */
+public class FrameRecorder implements VideoReceiver {
+	public static final int MAGIC = 0x53445046; // "SDPF"
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 16;
+	/** The size of the timestamp, delta and counter before each frame */
+	public static final int FRAME_HEADER_SIZE = 16;
+
+	// One frame being copied, one waiting and one being written
+	private static final int BUFFER_COUNT = 3;
+
+	/**
+	 * A frame copied out of its image, waiting to be written
+	 */
+	private static class PendingFrame {
+		public final byte[] pixels;
+		public long timestamp;
+		public float delta;
+		public int counter;
+
+		public PendingFrame(int length) {
+			this.pixels = new byte[length];
+		}
+	}
+
+	private final File file;
+	// Only written to by the writer thread, and by close once it has stopped
+	private final DataOutputStream out;
+	private int width = -1, height = -1;
+	private int[] row;
+	private boolean closed = false;
+	private volatile boolean failed = false;
+	private volatile int framesWritten = 0;
+	private volatile int framesDropped = 0;
+
+	private final LatestSlot<PendingFrame> writeSlot = new LatestSlot<PendingFrame>();
+	private final ArrayBlockingQueue<PendingFrame> spareFrames = new ArrayBlockingQueue<PendingFrame>(
+			BUFFER_COUNT);
+
+	private final Thread writer = new Thread("Frame recorder") {
+		@Override
+		public void run() {
+			try {
+				PendingFrame pending;
+				while (!FrameRecorder.this.failed
+						&& (pending = writeSlot.take()) != null) {
+					write(pending);
+					spareFrames.offer(pending);
+				}
+			} catch (InterruptedException e) {
+				// Shutting down
+			}
+		}
+	};
+
+	/**
+	 * Creates a recorder which writes to a file, replacing anything already
+	 * in it
+	 *
+	 * @throws IOException
+	 *             if the file can't be opened for writing
+	 */
+	public FrameRecorder(File file) throws IOException {
+		this.file = file;
+		this.out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file), 1 << 20));
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * Gets the number of bytes each frame of the given size takes up in a
+	 * recording
+	 */
+	public static int getFrameStride(int width, int height) {
+		return FRAME_HEADER_SIZE + 3 * width * height;
+	}
+
+	@Override
+	public synchronized void sendFrame(BufferedImage frame, float delta,
+			int frameCounter, long timestamp) {
+		if (this.closed || this.failed)
+			return;
+		if (this.width < 0) {
+			this.width = frame.getWidth();
+			this.height = frame.getHeight();
+		} else if (frame.getWidth() != this.width
+				|| frame.getHeight() != this.height) {
+			System.err.println("Not recording frame " + frameCounter
+					+ ": it is " + frame.getWidth() + "x" + frame.getHeight()
+					+ " but the recording is " + this.width + "x"
+					+ this.height);
+			return;
+		}
+		PendingFrame pending = this.spareFrames.poll();
+		if (pending == null)
+			pending = new PendingFrame(3 * this.width * this.height);
+		copyBGR(frame, pending.pixels);
+		pending.timestamp = timestamp;
+		pending.delta = delta;
+		pending.counter = frameCounter;
+		PendingFrame stale = this.writeSlot.put(pending);
+		if (stale != null) {
+			this.framesDropped++;
+			this.spareFrames.offer(stale);
+		}
+	}
+
+	/**
+	 * Writes a frame to the file, starting with the file's header if it is
+	 * the first
+	 */
+	private void write(PendingFrame pending) {
+		if (this.failed)
+			return;
+		try {
+			if (this.framesWritten == 0) {
+				this.out.writeInt(MAGIC);
+				this.out.writeInt(VERSION);
+				this.out.writeInt(this.width);
+				this.out.writeInt(this.height);
+			}
+			this.out.writeLong(pending.timestamp);
+			this.out.writeFloat(pending.delta);
+			this.out.writeInt(pending.counter);
+			this.out.write(pending.pixels);
+			this.framesWritten++;
+		} catch (IOException e) {
+			System.err.println("Stopped recording to " + this.file + ": "
+					+ e.getMessage());
+			e.printStackTrace();
+			this.failed = true;
+		}
+	}
+
+	/**
+	 * Copies the frame's pixels in the order they are stored in the file.
+	 * TYPE_3BYTE_BGR images, which the raw capture modes produce, already
+	 * store them that way, so their data is copied as it is.
+	 */
+	private void copyBGR(BufferedImage frame, byte[] pixels) {
+		if (frame.getType() == BufferedImage.TYPE_3BYTE_BGR) {
+			byte[] data = ((DataBufferByte) frame.getRaster().getDataBuffer())
+					.getData();
+			if (data.length == pixels.length) {
+				System.arraycopy(data, 0, pixels, 0, data.length);
+				return;
+			}
+		}
+		if (this.row == null)
+			this.row = new int[this.width];
+		int i = 0;
+		for (int y = 0; y < this.height; y++) {
+			frame.getRGB(0, y, this.width, 1, this.row, 0, this.width);
+			for (int x = 0; x < this.width; x++) {
+				int rgb = this.row[x];
+				pixels[i++] = (byte) rgb;
+				pixels[i++] = (byte) (rgb >> 8);
+				pixels[i++] = (byte) (rgb >> 16);
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of frames recorded so far
+	 */
+	public int getFramesWritten() {
+		return this.framesWritten;
+	}
+
+	/**
+	 * Gets the number of frames that weren't recorded because the disk was
+	 * still writing earlier ones
+	 */
+	public int getFramesDropped() {
+		return this.framesDropped;
+	}
+
+	/**
+	 * Writes the frame still waiting, if any, and finishes the recording.
+	 * Frames received afterwards are ignored.
+	 */
+	public void close() {
+		synchronized (this) {
+			if (this.closed)
+				return;
+			this.closed = true;
+		}
+		PendingFrame remaining = this.writeSlot.close();
+		try {
+			this.writer.join();
+		} catch (InterruptedException e) {
+			// The writer may still be using the stream
+			Thread.currentThread().interrupt();
+			return;
+		}
+		if (remaining != null)
+			write(remaining);
+		try {
+			this.out.close();
+		} catch (IOException e) {
+			System.err.println("Couldn't finish recording to " + this.file
+					+ ": " + e.getMessage());
+		}
+		System.out.println("Recorded " + this.framesWritten + " frames to "
+				+ this.file + ", " + this.framesDropped + " dropped");
+	}
+}
@@ -0,0 +1,314 @@
+package pc.vision;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import pc.vision.interfaces.VideoReceiver;
+import pc.vision.interfaces.VideoSource;
+import pc.world.StaticWorldState;
+
+/**
+ * Plays back a recording made by FrameRecorder, or the frames in a
+ * FrameArchive, passing each frame to its receivers in the same way
+ * VideoStream does for frames from the camera.
+ *
+ * Frames can be played at the speed they were recorded at, using the gaps
+ * between their timestamps, or unthrottled, where each frame is sent as soon
+ * as the receivers have finished with the one before. Unthrottled playback
+ * measures how fast the receivers can process the recording. Both kinds of
+ * recording store frames at fixed sizes, so playback can be moved to any
+ * frame straight away with seek.
+ */
+public class FrameReplay implements VideoSource {
+	private final File file;
+	// Exactly one of these is used, depending on the kind of recording
+	private final RandomAccessFile input;
+	private final FrameArchive archive;
+	private final int width;
+	private final int height;
+	private final int firstFrame;
+	private final int frameCount;
+	private final byte[] frameHeader = new byte[FrameRecorder.FRAME_HEADER_SIZE];
+
+	private volatile boolean throttled = true;
+	private volatile boolean looping = false;
+	private volatile boolean running = true;
+	// The index of the next frame to play, from the start of the recording
+	private final AtomicInteger nextFrame = new AtomicInteger(0);
+	// Set by seek, so that playback speed is measured from the new frame
+	private volatile boolean seeked = false;
+	// The index of the frame being sent to the receivers, or -1 between
+	// frames
+	private volatile int currentFrame = -1;
+
+	// Images frames are read into, reused as VideoStream reuses its decode
+	// images. Only the replay thread reads frames, so one image is being
+	// sent while the receivers may still hold the one before.
+	private static final int IMAGE_POOL_SIZE = 2;
+	private final ArrayBlockingQueue<BufferedImage> spareImages = new ArrayBlockingQueue<BufferedImage>(
+			IMAGE_POOL_SIZE);
+
+	private List<VideoReceiver> videoReceivers = new CopyOnWriteArrayList<VideoReceiver>();
+	private final StageTiming timing = new StageTiming("replay");
+
+	private final Thread replayThread = new Thread("Video replay") {
+		@Override
+		public void run() {
+			try {
+				do {
+					replay();
+					if (FrameReplay.this.looping)
+						FrameReplay.this.nextFrame.set(0);
+				} while (FrameReplay.this.looping && FrameReplay.this.running);
+			} catch (IOException e) {
+				System.err.println("Couldn't read " + FrameReplay.this.file
+						+ ": " + e.getMessage());
+				e.printStackTrace();
+			} catch (InterruptedException e) {
+				// Shutting down
+			} finally {
+				try {
+					if (FrameReplay.this.input != null)
+						FrameReplay.this.input.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+			System.out.println("Replay of " + FrameReplay.this.file
+					+ " finished: " + FrameReplay.this.timing);
+		}
+	};
+
+	/**
+	 * Opens a recording. Nothing is played until start is called.
+	 *
+	 * @param file
+	 *            A file written by FrameRecorder, or a directory holding a
+	 *            FrameArchive
+	 * @throws IOException
+	 *             if the file can't be read or isn't a recording
+	 */
+	public FrameReplay(File file) throws IOException {
+		this.file = file;
+		if (file.isDirectory()) {
+			this.input = null;
+			this.archive = FrameArchive.open(file);
+			this.width = this.archive.getWidth();
+			this.height = this.archive.getHeight();
+			this.firstFrame = this.archive.getFirstFrame();
+			this.frameCount = this.archive.getEndFrame() - this.firstFrame;
+			this.replayThread.setDaemon(true);
+			return;
+		}
+		this.archive = null;
+		this.firstFrame = 0;
+		this.input = new RandomAccessFile(file, "r");
+		if (this.input.readInt() != FrameRecorder.MAGIC)
+			throw new IOException(file + " is not a frame recording");
+		int version = this.input.readInt();
+		if (version != FrameRecorder.VERSION)
+			throw new IOException(file + " is a version " + version
+					+ " frame recording, expected version "
+					+ FrameRecorder.VERSION);
+		this.width = this.input.readInt();
+		this.height = this.input.readInt();
+		// A frame left half written at the end is ignored
+		this.frameCount = (int) ((this.input.length() - FrameRecorder.HEADER_SIZE) / FrameRecorder
+				.getFrameStride(this.width, this.height));
+
+		this.replayThread.setDaemon(true);
+	}
+
+	/**
+	 * Plays the recording from the current frame to the end
+	 */
+	private void replay() throws IOException, InterruptedException {
+		long firstTimestamp = 0;
+		long startTime = System.nanoTime();
+		boolean first = true;
+		BufferedImage previous = null;
+		int i;
+		while ((i = this.nextFrame.getAndIncrement()) < this.frameCount
+				&& this.running) {
+			BufferedImage frame = this.spareImages.poll();
+			if (frame == null)
+				frame = new BufferedImage(this.width, this.height,
+						BufferedImage.TYPE_3BYTE_BGR);
+			long timestamp;
+			float delta;
+			int counter;
+			if (this.archive != null) {
+				int number = this.firstFrame + i;
+				if (!this.archive.readFrame(number, frame)) {
+					this.spareImages.offer(frame);
+					continue;
+				}
+				timestamp = this.archive.getTimestamp(number);
+				delta = this.archive.getDelta(number);
+				counter = this.archive.getCounter(number);
+			} else {
+				this.input.seek(FrameRecorder.HEADER_SIZE + (long) i
+						* FrameRecorder.getFrameStride(this.width, this.height));
+				this.input.readFully(this.frameHeader);
+				ByteBuffer header = ByteBuffer.wrap(this.frameHeader);
+				timestamp = header.getLong();
+				delta = header.getFloat();
+				counter = header.getInt();
+				this.input.readFully(((DataBufferByte) frame.getRaster()
+						.getDataBuffer()).getData());
+			}
+
+			if (first || this.seeked) {
+				first = false;
+				this.seeked = false;
+				firstTimestamp = timestamp;
+				startTime = System.nanoTime();
+			} else if (this.throttled) {
+				// Timestamps are in microseconds
+				long due = startTime + (timestamp - firstTimestamp) * 1000;
+				long wait = due - System.nanoTime();
+				if (wait > 0)
+					Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+			}
+
+			// The frame is sent as if it had just been captured, so that
+			// latencies measured from its timestamp make sense
+			long start = System.nanoTime();
+			this.currentFrame = i;
+			try {
+				for (VideoReceiver receiver : this.videoReceivers) {
+					receiver.sendFrame(frame, delta, counter, start / 1000);
+				}
+			} finally {
+				this.currentFrame = -1;
+			}
+			this.timing.record(System.nanoTime() - start);
+			// Receivers such as DistortionFix keep the latest frame for the
+			// GUI, so a frame is only reused once the next one has been sent
+			if (previous != null)
+				this.spareImages.offer(previous);
+			previous = frame;
+		}
+	}
+
+	/**
+	 * Starts playing the recording on its own thread
+	 */
+	public void start() {
+		this.replayThread.start();
+	}
+
+	/**
+	 * Moves playback to a frame. Takes effect from the next frame sent.
+	 *
+	 * @param frame
+	 *            The index of the frame, from 0 at the start of the
+	 *            recording
+	 */
+	public void seek(int frame) {
+		if (frame < 0 || frame >= this.frameCount)
+			throw new IndexOutOfBoundsException("Frame " + frame
+					+ " is not in the recording");
+		this.nextFrame.set(frame);
+		this.seeked = true;
+	}
+
+	/**
+	 * Gets the index of the frame being sent to the receivers, which is the
+	 * frame a receiver is handling when called from sendFrame. Unlike the
+	 * position seek moves, this doesn't change until the next frame is sent.
+	 *
+	 * @return the index, from 0 at the start of the recording, or -1 if no
+	 *         frame is being sent
+	 */
+	public int getCurrentFrame() {
+		return this.currentFrame;
+	}
+
+	/**
+	 * Gets the positions vision found in a frame when it was archived
+	 *
+	 * @param frame
+	 *            The index of the frame, from 0 at the start of the
+	 *            recording
+	 * @return the positions, or null if the recording is not an archive or
+	 *         none were recorded for the frame
+	 */
+	public StaticWorldState getArchivedState(int frame) {
+		return this.archive == null ? null : this.archive
+				.getState(this.firstFrame + frame);
+	}
+
+	/**
+	 * Waits for the recording to finish playing
+	 */
+	public void join() throws InterruptedException {
+		this.replayThread.join();
+	}
+
+	/**
+	 * Sets whether frames are sent at the speed they were recorded at (the
+	 * default), or as fast as the receivers can take them
+	 */
+	public void setThrottled(boolean throttled) {
+		this.throttled = throttled;
+	}
+
+	public boolean isThrottled() {
+		return this.throttled;
+	}
+
+	/**
+	 * Sets whether the recording starts again from the beginning when it
+	 * reaches the end
+	 */
+	public void setLooping(boolean looping) {
+		this.looping = looping;
+	}
+
+	public boolean isLooping() {
+		return this.looping;
+	}
+
+	public int getWidth() {
+		return this.width;
+	}
+
+	public int getHeight() {
+		return this.height;
+	}
+
+	/**
+	 * Gets the number of frames in the recording
+	 */
+	public int getFrameCount() {
+		return this.frameCount;
+	}
+
+	/**
+	 * Gets the time taken by the receivers for each frame, which is the
+	 * equivalent of VideoStream's recognise stage
+	 */
+	public StageTiming getTiming() {
+		return this.timing;
+	}
+
+	@Override
+	public void shutdown() {
+		this.running = false;
+		this.replayThread.interrupt();
+	}
+
+	@Override
+	public void addReceiver(VideoReceiver receiver) {
+		this.videoReceivers.add(receiver);
+	}
+}
@@ -0,0 +1,52 @@
+package pc.vision;
+
+/**
+ * A single-slot handoff between two threads where only the latest item
+ * matters. Putting an item replaces whatever is still waiting in the slot, so
+ * a slow consumer always gets the newest item instead of working through a
+ * backlog of stale ones.
+ */
+public class LatestSlot<T> {
+	private T item;
+	private boolean closed = false;
+
+	/**
+	 * Puts an item in the slot, replacing any item that hasn't been taken yet
+	 * 
+	 * @return the item that was replaced, or null if the slot was empty. The
+	 *         caller is responsible for releasing it if needed.
+	 */
+	public synchronized T put(T item) {
+		T replaced = this.item;
+		this.item = item;
+		notifyAll();
+		return replaced;
+	}
+
+	/**
+	 * Takes the item out of the slot, waiting for one to be put in if it is
+	 * empty
+	 * 
+	 * @return the item, or null if the slot has been closed
+	 */
+	public synchronized T take() throws InterruptedException {
+		while (this.item == null && !this.closed)
+			wait();
+		T result = this.item;
+		this.item = null;
+		return result;
+	}
+
+	/**
+	 * Closes the slot, waking up any thread waiting in take()
+	 * 
+	 * @return the item that was still in the slot, if any
+	 */
+	public synchronized T close() {
+		this.closed = true;
+		T remaining = this.item;
+		this.item = null;
+		notifyAll();
+		return remaining;
+	}
+}
@@ -106,6 +106,18 @@ public class PitchConstants extends Observable {
 		return pitchOutline;
 	}
 	
+	/**
+	 * Replaces the pitch walls, for instance with those of a simulated pitch.
+	 * @param outline the 8 Positions in the same order as getPitchOutline
+	 */
+	public static void setPitchOutline(Position[] outline) {
+		if (outline.length != 8) {
+			System.err.println("Pitch outline array not the right size to set!");
+		} else {
+			System.arraycopy(outline, 0, pitchOutline, 0, 8);
+		}
+	}
+	
 	public static int getPitchOutlineTop(){
 		return (pitchOutline[0].getY() + pitchOutline[1].getY()) / 2;
 	}
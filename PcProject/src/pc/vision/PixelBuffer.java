@@ -0,0 +1,167 @@
+package pc.vision;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+
+/**
+ * Packed pixel information for a whole frame. Replaces the PixelInfo[][] grid
+ * that used to be rebuilt for every frame: the RGB plane is allocated once and
+ * refilled in place by {@link #load(BufferedImage, Rectangle)}. HSV values are
+ * only needed by the tools, so they are computed on demand with
+ * {@link #getHSB(int, float[])}; thresholding goes through ColourClassifier.
+ *
+ * Pixels are stored row first, ie. the pixel at (column, row) lives at index
+ * {@code row * width + column} in every plane.
+ *
+ * Only the region passed to load() is filled in; use {@link #contains(int,
+ * int)} before reading a pixel that might lie outside it.
+ */
+public class PixelBuffer {
+	private final int width, height;
+	private final Rectangle region = new Rectangle();
+
+	/** Packed RGB values of each pixel, 0xRRGGBB */
+	public final int[] rgb;
+
+	private int[] rowBuffer;
+
+	public PixelBuffer(int width, int height) {
+		this.width = width;
+		this.height = height;
+		int size = width * height;
+		this.rgb = new int[size];
+	}
+
+	public int getWidth() {
+		return this.width;
+	}
+
+	public int getHeight() {
+		return this.height;
+	}
+
+	/**
+	 * Gets the region of the buffer that was filled in by the last call to
+	 * load()
+	 *
+	 * @return a copy of the loaded region
+	 */
+	public Rectangle getRegion() {
+		return new Rectangle(this.region);
+	}
+
+	/**
+	 * Tests whether a pixel lies within the region filled in by the last call
+	 * to load()
+	 */
+	public boolean contains(int column, int row) {
+		return this.region.contains(column, row);
+	}
+
+	/**
+	 * Gets the index of the pixel at (column, row) into the pixel planes
+	 */
+	public int index(int column, int row) {
+		return row * this.width + column;
+	}
+
+	public int getRed(int index) {
+		return (this.rgb[index] >> 16) & 0xFF;
+	}
+
+	public int getGreen(int index) {
+		return (this.rgb[index] >> 8) & 0xFF;
+	}
+
+	public int getBlue(int index) {
+		return this.rgb[index] & 0xFF;
+	}
+
+	/**
+	 * Converts a pixel to HSV
+	 *
+	 * @param index
+	 *            The index of the pixel
+	 * @param hsb
+	 *            Array of at least 3 elements to store the hue, saturation and
+	 *            brightness in, or null to allocate a new one
+	 * @return the hsb array
+	 */
+	public float[] getHSB(int index, float[] hsb) {
+		int p = this.rgb[index];
+		return Color.RGBtoHSB((p >> 16) & 0xFF, (p >> 8) & 0xFF, p & 0xFF, hsb);
+	}
+
+	/**
+	 * Refills the buffer from a frame. Only pixels inside the given region
+	 * (clipped to the buffer and frame sizes) are updated.
+	 *
+	 * @param frame
+	 *            The frame to read pixels from
+	 * @param bounds
+	 *            The part of the frame to read, usually the pitch bounds
+	 */
+	public void load(BufferedImage frame, Rectangle bounds) {
+		this.region.setBounds(bounds);
+		Rectangle.intersect(this.region, new Rectangle(0, 0, Math.min(
+				this.width, frame.getWidth()), Math.min(this.height,
+				frame.getHeight())), this.region);
+		if (this.region.isEmpty())
+			return;
+
+		int left = this.region.x;
+		int top = this.region.y;
+		int right = left + this.region.width;
+		int bottom = top + this.region.height;
+
+		if (frame.getType() == BufferedImage.TYPE_3BYTE_BGR) {
+			// Read straight out of the raster to avoid getRGB's colour model
+			// conversion
+			byte[] data = ((DataBufferByte) frame.getRaster().getDataBuffer())
+					.getData();
+			int stride = ((ComponentSampleModel) frame.getSampleModel())
+					.getScanlineStride();
+			for (int row = top; row < bottom; row++) {
+				int src = row * stride + 3 * left;
+				int dst = index(left, row);
+				for (int column = left; column < right; column++) {
+					this.rgb[dst++] = (data[src + 2] & 0xFF) << 16
+							| (data[src + 1] & 0xFF) << 8 | (data[src] & 0xFF);
+					src += 3;
+				}
+			}
+		} else if (frame.getType() == BufferedImage.TYPE_INT_RGB) {
+			int[] data = ((DataBufferInt) frame.getRaster().getDataBuffer())
+					.getData();
+			int stride = ((SinglePixelPackedSampleModel) frame.getSampleModel())
+					.getScanlineStride();
+			for (int row = top; row < bottom; row++) {
+				System.arraycopy(data, row * stride + left, this.rgb,
+						index(left, row), right - left);
+			}
+		} else {
+			if (this.rowBuffer == null || this.rowBuffer.length < this.width)
+				this.rowBuffer = new int[this.width];
+			for (int row = top; row < bottom; row++) {
+				frame.getRGB(left, row, right - left, 1, this.rowBuffer, 0,
+						this.width);
+				System.arraycopy(this.rowBuffer, 0, this.rgb,
+						index(left, row), right - left);
+			}
+		}
+
+		if (frame.getType() != BufferedImage.TYPE_3BYTE_BGR) {
+			// Drop any alpha bits
+			for (int row = top; row < bottom; row++) {
+				int i = index(left, row);
+				for (int column = left; column < right; column++, i++)
+					this.rgb[i] &= 0xFFFFFF;
+			}
+		}
+	}
+}
@@ -2,6 +2,8 @@ package pc.vision;
 
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.io.File;
+import java.io.IOException;
 
 import javax.swing.UIManager;
 
@@ -11,6 +13,7 @@ import org.apache.commons.cli.GnuParser;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 
+import pc.logging.LatencyMetrics;
 import pc.strategy.StrategyController;
 import pc.vision.gui.VisionGUI;
 import pc.vision.gui.tools.AlignmentTool;
@@ -18,6 +21,7 @@ import pc.vision.gui.tools.ColourThresholdConfigTool;
 import pc.vision.gui.tools.HistogramTool;
 import pc.vision.gui.tools.PitchModelView;
 import pc.vision.gui.tools.StrategySelectorTool;
+import pc.vision.interfaces.VideoSource;
 import pc.vision.recognisers.BallRecogniser;
 import pc.vision.recognisers.RobotRecogniser;
 import pc.world.DynamicWorldState;
@@ -36,6 +40,26 @@ public class RunVision {
 		cmdLineOptions = new Options();
 		cmdLineOptions.addOption("nobluetooth", false,
 				"Disable Bluetooth support");
+		cmdLineOptions.addOption("capture", true,
+				"How to take frames from the camera: jpeg (default), rgb or bgr");
+		cmdLineOptions.addOption("notracking", false,
+				"Search the whole pitch for every object in every frame");
+		cmdLineOptions.addOption("record", true,
+				"Record every frame to the given file");
+		cmdLineOptions.addOption("replay", true,
+				"Play back frames recorded with -record instead of using the camera");
+		cmdLineOptions.addOption("unthrottled", false,
+				"Play back frames as fast as they can be processed");
+		cmdLineOptions.addOption("loop", false,
+				"Play back frames over and over again");
+		cmdLineOptions.addOption("archive", true,
+				"Keep every frame and the positions found in it in the given directory");
+		cmdLineOptions.addOption("archivesegments", true,
+				"Only keep the most recent segments of "
+						+ FrameArchive.DEFAULT_FRAMES_PER_SEGMENT
+						+ " frames in the archive");
+		cmdLineOptions.addOption("latency", true,
+				"Print the latency from capture to commands every given number of seconds");
 	}
 
 	/**
@@ -46,6 +70,38 @@ public class RunVision {
 	 *            Program arguments.
 	 */
 	public static void main(String[] args) {
+		CommandLine cmdLine;
+		try {
+			CommandLineParser parser = new GnuParser();
+			cmdLine = parser.parse(cmdLineOptions, args);
+		} catch (ParseException e) {
+			System.err.println(e.getMessage());
+			return;
+		}
+
+		VideoStream.CaptureMode captureMode = VideoStream.CaptureMode.JPEG;
+		if (cmdLine.hasOption("capture")) {
+			try {
+				captureMode = VideoStream.CaptureMode.valueOf(cmdLine
+						.getOptionValue("capture").toUpperCase());
+			} catch (IllegalArgumentException e) {
+				System.err.println("Unknown capture mode: "
+						+ cmdLine.getOptionValue("capture"));
+				return;
+			}
+		}
+
+		if (cmdLine.hasOption("latency")) {
+			try {
+				LatencyMetrics.startDumping((long) (1000 * Double
+						.parseDouble(cmdLine.getOptionValue("latency"))));
+			} catch (NumberFormatException e) {
+				System.err.println("Not a number of seconds: "
+						+ cmdLine.getOptionValue("latency"));
+				return;
+			}
+		}
+
 		try {
 			UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
 		} catch (Exception e) {
@@ -76,20 +132,96 @@ public class RunVision {
 			StrategyController strategyController = null;
 			strategyController = new StrategyController();
 			Vision.addWorldStateReceiver(strategyController);
+			LatencyMetrics.addCommandQueue("attacker",
+					strategyController.bcsAttacker.getQueue());
+			LatencyMetrics.addCommandQueue("defender",
+					strategyController.bcsDefender.getQueue());
+
+			// Either frames come from the camera, or from a recording when
+			// there's no camera to use
+			final VideoStream vStream;
+			final FrameReplay replay;
+			final VideoSource videoSource;
+			if (cmdLine.hasOption("replay")) {
+				try {
+					replay = new FrameReplay(new File(
+							cmdLine.getOptionValue("replay")));
+				} catch (IOException e) {
+					System.err.println("Couldn't open recording: "
+							+ e.getMessage());
+					return;
+				}
+				replay.setThrottled(!cmdLine.hasOption("unthrottled"));
+				replay.setLooping(cmdLine.hasOption("loop"));
+				width = replay.getWidth();
+				height = replay.getHeight();
+				vStream = null;
+				videoSource = replay;
+			} else {
+				vStream = new VideoStream(videoDevice, width, height, channel,
+						videoStandard, compressionQuality, captureMode);
+				replay = null;
+				videoSource = vStream;
+			}
 
-			final VideoStream vStream = new VideoStream(videoDevice, width,
-					height, channel, videoStandard, compressionQuality);
+			if (vStream != null) {
+				for (StageTiming timing : vStream.getStageTimings())
+					LatencyMetrics.addStageTiming(timing);
+			} else {
+				LatencyMetrics.addStageTiming(replay.getTiming());
+			}
+			LatencyMetrics.addStageTiming(vision.getPublishTiming());
+
+			final FrameRecorder recorder;
+			if (cmdLine.hasOption("record")) {
+				recorder = new FrameRecorder(new File(
+						cmdLine.getOptionValue("record")));
+				videoSource.addReceiver(recorder);
+			} else {
+				recorder = null;
+			}
+
+			final FrameArchive archive;
+			if (cmdLine.hasOption("archive")) {
+				int maxSegments = 0;
+				if (cmdLine.hasOption("archivesegments")) {
+					try {
+						maxSegments = Integer.parseInt(cmdLine
+								.getOptionValue("archivesegments"));
+					} catch (NumberFormatException e) {
+						System.err.println("Not a number of segments: "
+								+ cmdLine.getOptionValue("archivesegments"));
+						return;
+					}
+				}
+				archive = FrameArchive.create(
+						new File(cmdLine.getOptionValue("archive")), width,
+						height, FrameArchive.DEFAULT_FRAMES_PER_SEGMENT,
+						maxSegments);
+				if (vStream != null)
+					vStream.setArchive(archive);
+				else
+					videoSource.addReceiver(archive);
+				vision.addStaticWorldStateReceiver(archive);
+			} else {
+				archive = null;
+			}
 
 			DistortionFix distortionFix = new DistortionFix(yamlConfig,
 					pitchConstants);
 
 			// Create the Control GUI for threshold setting/etc
-			VisionGUI gui = new VisionGUI(width, height, yamlConfig);
+			VisionGUI gui = new VisionGUI(width, height, yamlConfig,
+					distortionFix);
 
 			gui.addWindowListener(new WindowAdapter() {
 				@Override
 				public void windowClosed(WindowEvent e) {
-					vStream.shutdown();
+					videoSource.shutdown();
+					if (recorder != null)
+						recorder.close();
+					if (archive != null)
+						archive.flush();
 				}
 			});
 
@@ -111,11 +243,19 @@ public class RunVision {
 					dynamicWorldState, pitch));
 			pmvTool.addViewProvider(new RobotRecogniser.ViewProvider(
 					dynamicWorldState, pitch));
+			if (replay != null)
+				pmvTool.setReplay(replay);
 
-			vision.addRecogniser(new BallRecogniser(vision, worldState,
-					pitchConstants, distortionFix, pitch));
-			vision.addRecogniser(new RobotRecogniser(vision, worldState,
-					pitchConstants, distortionFix, pitch));
+			BallRecogniser ballRecogniser = new BallRecogniser(vision,
+					worldState, pitchConstants, distortionFix, pitch);
+			RobotRecogniser robotRecogniser = new RobotRecogniser(vision,
+					worldState, pitchConstants, distortionFix, pitch);
+			if (cmdLine.hasOption("notracking")) {
+				ballRecogniser.setTracking(false);
+				robotRecogniser.setTracking(false);
+			}
+			vision.addRecogniser(ballRecogniser);
+			vision.addRecogniser(robotRecogniser);
 			
 			vision.addRecogniser(histogramTool);
 
@@ -127,13 +267,15 @@ public class RunVision {
 			gui.addTool(alignmentTool, "Alignment");
 			vision.addRecogniser(alignmentTool.new FrameDisplay());
 
-			vStream.addReceiver(pmvTool);
-			vStream.addReceiver(distortionFix);
-			vStream.addReceiver(vision);
-			distortionFix.addReceiver(gui);
+			videoSource.addReceiver(pmvTool);
+			videoSource.addReceiver(distortionFix);
+			videoSource.addReceiver(gui);
+			videoSource.addReceiver(vision);
 			vision.addVisionDebugReceiver(gui);
 
 			gui.setVisible(true);
+			if (replay != null)
+				replay.start();
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
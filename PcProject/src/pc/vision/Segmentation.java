@@ -0,0 +1,146 @@
+package pc.vision;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * Labels the pitch pixels of a frame with the objects they could belong to,
+ * and splits the pitch into zones. The recognisers work from these labels
+ * instead of classifying the frame themselves.
+ *
+ * Pixels are labelled lazily, the first time they are asked for in a frame,
+ * so a recogniser that only looks at a small window around an object it is
+ * tracking doesn't pay for the rest of the pitch.
+ *
+ * Zones are numbered left to right, split by PitchConstants.getDividers().
+ */
+public class Segmentation {
+	/** The number of zones the pitch is split into by the dividers */
+	public static final int NUM_ZONES = 4;
+	/** The minimum number of pixels needed for an object to be detected */
+	public static final int MIN_POINTS = 10;
+
+	// Frame numbers are kept in the top bits of each label
+	private static final int FRAME_SHIFT = 8;
+	private static final int MAX_FRAME = (1 << (31 - FRAME_SHIFT)) - 1;
+	private static final int LABEL_MASK = (1 << FRAME_SHIFT) - 1;
+
+	private final int width;
+	// Object bitmask of each pixel along with the frame it was computed in,
+	// indexed the same way as PixelBuffer. Keeping both in one int means
+	// threads labelling overlapping areas can never see a half written label.
+	private final int[] labels;
+	private int frame;
+	private PixelBuffer pixels;
+	private ColourClassifier classifier;
+	private final Rectangle region = new Rectangle();
+	// Left edge of each zone, followed by the right edge of the last one
+	private final int[] zoneEdges = new int[NUM_ZONES + 1];
+
+	public Segmentation(int width, int height) {
+		this.width = width;
+		this.labels = new int[width * height];
+		this.frame = 0;
+	}
+
+	/**
+	 * Starts segmenting a new frame. Any labels from the previous frame are
+	 * discarded.
+	 *
+	 * Once this returns, the segmentation of the frame may be read from
+	 * several threads at once, as long as they were started (or handed work)
+	 * afterwards.
+	 *
+	 * @param pixels
+	 *            The pixel buffer for the frame
+	 * @param classifier
+	 *            The classifier to label pixels with
+	 * @param dividers
+	 *            The x values of the three zone dividers
+	 */
+	public void process(PixelBuffer pixels, ColourClassifier classifier,
+			int[] dividers) {
+		this.pixels = pixels;
+		this.classifier = classifier;
+		this.region.setBounds(pixels.getRegion());
+		int left = this.region.x;
+		int right = left + this.region.width;
+
+		this.zoneEdges[0] = left;
+		for (int z = 1; z < NUM_ZONES; z++)
+			this.zoneEdges[z] = Math.max(this.zoneEdges[z - 1],
+					Math.min(right, dividers[z - 1]));
+		this.zoneEdges[NUM_ZONES] = right;
+
+		if (++this.frame > MAX_FRAME) {
+			// Wrapped around, so old labels could look current
+			Arrays.fill(this.labels, 0);
+			this.frame = 1;
+		}
+	}
+
+	/**
+	 * Gets the object bitmask of a pixel, as returned by
+	 * {@link ColourClassifier#classify(int)}. Only valid for pixels inside the
+	 * pitch region of the last processed frame.
+	 */
+	public int getLabel(int column, int row) {
+		int i = row * this.width + column;
+		int label = this.labels[i];
+		if (label >>> FRAME_SHIFT != this.frame) {
+			// Two threads may both get here for the same pixel, but they will
+			// both store the same value
+			label = this.frame << FRAME_SHIFT
+					| this.classifier.classify(this.pixels.rgb[i]);
+			this.labels[i] = label;
+		}
+		return label & LABEL_MASK;
+	}
+
+	/**
+	 * Gets the pitch region covered by the last processed frame
+	 */
+	public Rectangle getRegion() {
+		return new Rectangle(this.region);
+	}
+
+	/**
+	 * Gets the x value of the left edge of a zone
+	 */
+	public int getZoneLeft(int zone) {
+		return this.zoneEdges[zone];
+	}
+
+	/**
+	 * Gets the x value just past the right edge of a zone
+	 */
+	public int getZoneRight(int zone) {
+		return this.zoneEdges[zone + 1];
+	}
+
+	/**
+	 * Colours the pixels of an object on the debug overlay, within the given
+	 * bounds.
+	 *
+	 * @param debugOverlay
+	 *            The image to draw on
+	 * @param object
+	 *            One of the PitchConstants.OBJECT_* values
+	 * @param argb
+	 *            The colour to draw the pixels in
+	 * @param bounds
+	 *            The area to draw in, clipped to the pitch region
+	 */
+	public void drawDebug(BufferedImage debugOverlay, int object, int argb,
+			Rectangle bounds) {
+		Rectangle area = bounds.intersection(this.region);
+		int mask = ColourClassifier.mask(object);
+		for (int row = area.y; row < area.y + area.height; row++) {
+			for (int column = area.x; column < area.x + area.width; column++) {
+				if ((getLabel(column, row) & mask) != 0)
+					debugOverlay.setRGB(column, row, argb);
+			}
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package pc.vision;
+
+/**
+ * Timing statistics for one stage of the video pipeline: how many frames it
+ * has handled, how long they took, and how many frames were dropped because
+ * a newer one arrived before the stage got to them.
+ */
+public class StageTiming {
+	private final String name;
+	private long count;
+	private long totalNanos;
+	private long maxNanos;
+	private long lastNanos;
+	private long dropped;
+
+	public StageTiming(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Records a frame that went through the stage
+	 * 
+	 * @param nanos
+	 *            How long the stage took for the frame, in nanoseconds
+	 */
+	public synchronized void record(long nanos) {
+		this.count++;
+		this.totalNanos += nanos;
+		this.lastNanos = nanos;
+		if (nanos > this.maxNanos)
+			this.maxNanos = nanos;
+	}
+
+	/**
+	 * Records a frame that was dropped before reaching the stage
+	 */
+	public synchronized void dropped() {
+		this.dropped++;
+	}
+
+	public String getName() {
+		return this.name;
+	}
+
+	public synchronized long getCount() {
+		return this.count;
+	}
+
+	public synchronized long getDropped() {
+		return this.dropped;
+	}
+
+	public synchronized double getMeanMillis() {
+		return this.count == 0 ? 0 : this.totalNanos / (1e6 * this.count);
+	}
+
+	public synchronized double getMaxMillis() {
+		return this.maxNanos / 1e6;
+	}
+
+	public synchronized double getLastMillis() {
+		return this.lastNanos / 1e6;
+	}
+
+	/**
+	 * Clears the statistics
+	 */
+	public synchronized void reset() {
+		this.count = 0;
+		this.totalNanos = 0;
+		this.maxNanos = 0;
+		this.lastNanos = 0;
+		this.dropped = 0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("%s: %d frames, mean %.2fms, max %.2fms, %d dropped",
+				this.name, this.count, getMeanMillis(), getMaxMillis(),
+				this.dropped);
+	}
+}
@@ -0,0 +1,76 @@
+package pc.vision;
+
+import java.awt.Rectangle;
+
+/**
+ * Keeps track of where an object was last seen in the frame, so that the next
+ * frame only needs to be searched in a window around it. The window is
+ * centred on the position predicted from the object's velocity between the
+ * last two frames it was seen in, and grows with that velocity.
+ *
+ * Positions are in frame coordinates, before any distortion correction.
+ */
+public class TrackingWindow {
+	/** Half the size of the window around an object that isn't moving */
+	public static final int MIN_HALF_SIZE = 20;
+	/**
+	 * How many frames worth of movement the window allows for in each
+	 * direction, on top of MIN_HALF_SIZE
+	 */
+	public static final float VELOCITY_SCALE = 2;
+
+	private boolean tracking = false;
+	private float x, y;
+	private float vx, vy;
+
+	/**
+	 * Gets the window to search for the object in
+	 *
+	 * @param bounds
+	 *            The area the object could be in at all, eg. its zone
+	 * @return the window, clipped to bounds, or null if the object was not
+	 *         found in the last frame and the whole of bounds must be searched
+	 */
+	public Rectangle getWindow(Rectangle bounds) {
+		if (!this.tracking)
+			return null;
+		int halfSize = MIN_HALF_SIZE
+				+ (int) Math.ceil(VELOCITY_SCALE
+						* Math.max(Math.abs(this.vx), Math.abs(this.vy)));
+		int cx = Math.round(this.x + this.vx);
+		int cy = Math.round(this.y + this.vy);
+		return new Rectangle(cx - halfSize, cy - halfSize, 2 * halfSize + 1,
+				2 * halfSize + 1).intersection(bounds);
+	}
+
+	/**
+	 * Records that the object was found in the current frame
+	 */
+	public void found(Vector2f position) {
+		if (this.tracking) {
+			this.vx = position.x - this.x;
+			this.vy = position.y - this.y;
+		} else {
+			this.vx = 0;
+			this.vy = 0;
+		}
+		this.x = position.x;
+		this.y = position.y;
+		this.tracking = true;
+	}
+
+	/**
+	 * Records that the object could not be found in the current frame, so the
+	 * next frame must be searched in full
+	 */
+	public void lost() {
+		this.tracking = false;
+	}
+
+	/**
+	 * Tests whether the object was found in the last frame
+	 */
+	public boolean isTracking() {
+		return this.tracking;
+	}
+}
@@ -2,13 +2,16 @@ package pc.vision;
 
 import java.awt.Dimension;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.IOException;
 import java.util.ArrayDeque;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 
-import pc.strategy.StrategyController;
-import pc.strategy.interfaces.Strategy;
 import pc.vision.interfaces.VideoReceiver;
+import pc.vision.interfaces.VideoSource;
 import au.edu.jcu.v4l4j.CaptureCallback;
 import au.edu.jcu.v4l4j.Control;
 import au.edu.jcu.v4l4j.DeviceInfo;
@@ -24,14 +27,15 @@ import au.edu.jcu.v4l4j.exceptions.V4L4JException;
  * 
  * @author Alex Adams (s1046358)
  */
-public class VideoStream {
+public class VideoStream implements VideoSource {
 	private String videoDevName;
-	private int width;
-	private int height;
+	private volatile int width;
+	private volatile int height;
 	private int channel;
 	private int videoStandard;
 	private int compressionQuality;
 	private ImageFormat imageFormat;
+	private final CaptureMode captureMode;
 
 	private int saturation;
 	private int brightness;
@@ -40,16 +44,91 @@ public class VideoStream {
 	private int chroma_gain;
 	private int chroma_agc;
 
+	/**
+	 * How frames are taken from the video device
+	 */
+	public enum CaptureMode {
+		/**
+		 * The device's frames are compressed to JPEG by v4l4j and decoded
+		 * again by ImageIO
+		 */
+		JPEG,
+		/**
+		 * v4l4j converts the device's frames to 24-bit RGB, which is copied
+		 * into a BGR image
+		 */
+		RGB,
+		/**
+		 * v4l4j converts the device's frames to 24-bit BGR, which is copied
+		 * straight into a BGR image
+		 */
+		BGR
+	}
+
 	private VideoDevice videoDev;
 	private FrameGrabber frameGrabber;
 
-	private ArrayList<VideoReceiver> videoReceivers = new ArrayList<VideoReceiver>();
+	// Receivers may be added while the recognise thread is running
+	private List<VideoReceiver> videoReceivers = new CopyOnWriteArrayList<VideoReceiver>();
 	// Used to calculate FPS
 	private ArrayDeque<Long> frameTimes = new ArrayDeque<Long>();
 	private static final int FPS_AVERAGE_WINDOW = 25;
 	public static final int FRAME_WIDTH = 640;
 	public static final int FRAME_HEIGHT = 480;
 
+	// Stages of the pipeline after capture, each on its own thread and
+	// handed the latest frame from the stage before through a LatestSlot
+	private final LatestSlot<CapturedFrame> decodeSlot = new LatestSlot<CapturedFrame>();
+	private final LatestSlot<DecodedFrame> recogniseSlot = new LatestSlot<DecodedFrame>();
+	private final StageTiming captureTiming = new StageTiming("capture");
+	private final StageTiming decodeTiming = new StageTiming("decode");
+	private final StageTiming recogniseTiming = new StageTiming("recognise");
+
+	// Images the raw capture modes decode into, reused so that a frame
+	// doesn't cost a new 900KB image. At most one frame is being decoded,
+	// one waits in recogniseSlot, one is being recognised and one is kept by
+	// the receivers after it has been sent, so four are enough to never
+	// allocate once warmed up.
+	private static final int IMAGE_POOL_SIZE = 4;
+	private final ArrayBlockingQueue<BufferedImage> spareImages = new ArrayBlockingQueue<BufferedImage>(
+			IMAGE_POOL_SIZE);
+
+	/**
+	 * A frame straight from the capture device, waiting to be decoded
+	 */
+	private static class CapturedFrame {
+		public final VideoFrame frame;
+		public final float delta;
+		public final int counter;
+		public final long timestamp;
+
+		public CapturedFrame(VideoFrame frame, float delta, int counter,
+				long timestamp) {
+			this.frame = frame;
+			this.delta = delta;
+			this.counter = counter;
+			this.timestamp = timestamp;
+		}
+	}
+
+	/**
+	 * A decoded frame, waiting to be sent to the receivers
+	 */
+	private static class DecodedFrame {
+		public final BufferedImage image;
+		public final float delta;
+		public final int counter;
+		public final long timestamp;
+
+		public DecodedFrame(BufferedImage image, float delta, int counter,
+				long timestamp) {
+			this.image = image;
+			this.delta = delta;
+			this.counter = counter;
+			this.timestamp = timestamp;
+		}
+	}
+
 	private final CaptureCallback frameGrabberCallback = new CaptureCallback() {
 		public void exceptionReceived(V4L4JException e) {
 			System.err.println("Unable to capture frame:");
@@ -57,12 +136,17 @@ public class VideoStream {
 		}
 
 		/**
-		 * Called by V4L4J when a new frame is generated
+		 * Called by V4L4J when a new frame is generated. Only hands the frame
+		 * on to the decode thread, so that slow processing further along
+		 * never holds up capture.
 		 * 
 		 * @param frame
 		 *            The frame that was generated
 		 */
 		public void nextFrame(VideoFrame frame) {
+			long start = System.nanoTime();
+			// v4l4j's capture times come from the driver's clock, which can't
+			// be compared with the JVM's, so frames are stamped on arrival
 			// Calculate frame rate based on time between calls
 			frameTimes.addLast(System.currentTimeMillis());
 			if (frameTimes.size() > FPS_AVERAGE_WINDOW)
@@ -74,42 +158,88 @@ public class VideoStream {
 			// Wait for video device to initialise properly before reading
 			// frames
 			if (VideoStream.this.ready) {
-				BufferedImage frameBuffer = frame.getBufferedImage();
-				// frameBuffer =
-				// DistortionFix.removeBarrelDistortion(frameBuffer, 0, 640, 0,
-				// 480);
-				// TODO: Should we blur?
-				// ColorProcessor cp = new ColorProcessor(frameBuffer);
-				// GaussianBlur gb = new GaussianBlur();
-				// gb.blurGaussian(cp, 2, 2, 0.02);
-				// frameBuffer = cp.getBufferedImage();
-				for (VideoReceiver receiver : VideoStream.this.videoReceivers) {
-					receiver.sendFrame(frameBuffer, delta,
-							VideoStream.this.frameCounter,
-							frame.getCaptureTime());
+				CapturedFrame stale = decodeSlot.put(new CapturedFrame(frame,
+						delta, VideoStream.this.frameCounter, start / 1000));
+				if (stale != null) {
+					stale.frame.recycle();
+					decodeTiming.dropped();
 				}
-				ArrayList<Strategy> currentStrategies = StrategyController
-						.getCurrentStrategies();
-				ArrayList<Strategy> removedStrategies = StrategyController
-						.getRemovedStrategies();
-				for (Strategy s : removedStrategies) {
-					Vision.removeWorldStateReciver(s);
+			} else {
+				if (VideoStream.this.frameCounter > 3)
+					VideoStream.this.ready = true;
+				frame.recycle();
+			}
+			++VideoStream.this.frameCounter;
+			captureTiming.record(System.nanoTime() - start);
+		}
+	};
+
+	private final Thread decodeThread = new Thread("Video decode") {
+		@Override
+		public void run() {
+			try {
+				CapturedFrame captured;
+				while ((captured = decodeSlot.take()) != null) {
+					long start = System.nanoTime();
+					BufferedImage frameBuffer;
+					long timestamp = captured.timestamp;
+					try {
+						frameBuffer = decode(captured.frame);
+					} finally {
+						captured.frame.recycle();
+					}
+					// TODO: Should we blur?
+					// ColorProcessor cp = new ColorProcessor(frameBuffer);
+					// GaussianBlur gb = new GaussianBlur();
+					// gb.blurGaussian(cp, 2, 2, 0.02);
+					// frameBuffer = cp.getBufferedImage();
+					DecodedFrame stale = recogniseSlot.put(new DecodedFrame(
+							frameBuffer, captured.delta, captured.counter,
+							timestamp));
+					if (stale != null) {
+						recycle(stale.image);
+						recogniseTiming.dropped();
+					}
+					archive(frameBuffer, captured.delta, captured.counter,
+							timestamp);
+					decodeTiming.record(System.nanoTime() - start);
 				}
-				removedStrategies = new ArrayList<Strategy>();
-				StrategyController.setRemovedStrategies(removedStrategies);
-				for (Strategy s : currentStrategies) {
-					Vision.addWorldStateReceiver(s);
+			} catch (InterruptedException e) {
+				// Shutting down
+			}
+		}
+	};
+
+	private final Thread recogniseThread = new Thread("Video recognise") {
+		@Override
+		public void run() {
+			try {
+				DecodedFrame decoded;
+				BufferedImage previous = null;
+				while ((decoded = recogniseSlot.take()) != null) {
+					long start = System.nanoTime();
+					for (VideoReceiver receiver : VideoStream.this.videoReceivers) {
+						receiver.sendFrame(decoded.image, decoded.delta,
+								decoded.counter, decoded.timestamp);
+					}
+					// Receivers such as DistortionFix keep the latest frame
+					// for the GUI, so a frame is only reused once the next
+					// one has been sent
+					recycle(previous);
+					previous = decoded.image;
+					recogniseTiming.record(System.nanoTime() - start);
 				}
-			} else if (VideoStream.this.frameCounter > 3) {
-				VideoStream.this.ready = true;
+			} catch (InterruptedException e) {
+				// Shutting down
 			}
-			++VideoStream.this.frameCounter;
-			frame.recycle();
 		}
 	};
 
-	private int frameCounter = 0;
-	private boolean ready = false;
+	// Every decoded frame is appended to this if it is set
+	private volatile FrameArchive archive;
+
+	private volatile int frameCounter = 0;
+	private volatile boolean ready = false;
 
 	/**
 	 * Constructs a VideoStream object connected to the specified video device
@@ -129,11 +259,42 @@ public class VideoStream {
 	 */
 	public VideoStream(String videoDevice, int width, int height, int channel,
 			int videoStandard, int compressionQuality) {
+		this(videoDevice, width, height, channel, videoStandard,
+				compressionQuality, CaptureMode.JPEG);
+	}
+
+	/**
+	 * Constructs a VideoStream object connected to the specified video device
+	 * 
+	 * @param videoDevice
+	 *            The name of the video device the stream is for
+	 * @param width
+	 *            The width in pixels of the stream source
+	 * @param height
+	 *            The height in pixels of the stream source
+	 * @param channel
+	 *            The video channel of the device
+	 * @param videoStandard
+	 *            The video standard of the device
+	 * @param compressionQuality
+	 *            The desired compression quality of the frames as a
+	 *            percentage, only used when capturing JPEG
+	 * @param captureMode
+	 *            How to take frames from the device
+	 */
+	public VideoStream(String videoDevice, int width, int height, int channel,
+			int videoStandard, int compressionQuality, CaptureMode captureMode) {
 		this.videoDevName = videoDevice;
+		this.captureMode = captureMode;
 		this.channel = channel;
 		this.videoStandard = videoStandard;
 		this.compressionQuality = compressionQuality;
 
+		this.decodeThread.setDaemon(true);
+		this.decodeThread.start();
+		this.recogniseThread.setDaemon(true);
+		this.recogniseThread.start();
+
 		try {
 			this.videoDev = new VideoDevice(videoDevice);
 			DeviceInfo deviceInfo = this.videoDev.getDeviceInfo();
@@ -142,16 +303,27 @@ public class VideoStream {
 				throw new ImageFormatException(
 						"Unable to detect any native formats for the device!");
 			}
-			this.imageFormat = deviceInfo.getFormatList()
-					.getYUVEncodableFormat(0);
-			this.frameGrabber = this.videoDev.getJPEGFrameGrabber(width,
-					height, channel, videoStandard, compressionQuality,
-					this.imageFormat);
-			this.frameGrabber.setCaptureCallback(this.frameGrabberCallback);
-			this.frameGrabber.startCapture();
-
+			switch (captureMode) {
+			case RGB:
+				this.imageFormat = deviceInfo.getFormatList()
+						.getRGBEncodableFormat(0);
+				break;
+			case BGR:
+				this.imageFormat = deviceInfo.getFormatList()
+						.getBGREncodableFormat(0);
+				break;
+			default:
+				this.imageFormat = deviceInfo.getFormatList()
+						.getYUVEncodableFormat(0);
+				break;
+			}
+			this.frameGrabber = createFrameGrabber(width, height);
+			// Needed to decode raw frames, so set before capture starts
 			this.width = this.frameGrabber.getWidth();
 			this.height = this.frameGrabber.getHeight();
+
+			this.frameGrabber.setCaptureCallback(this.frameGrabberCallback);
+			this.frameGrabber.startCapture();
 		} catch (V4L4JException e) {
 			System.err.println("Couldn't initialise the frame grabber: "
 					+ e.getMessage());
@@ -178,15 +350,117 @@ public class VideoStream {
 	 */
 	private void reinitialiseFrameGrabber() throws V4L4JException {
 		this.frameGrabber.stopCapture();
-		this.frameGrabber = this.videoDev.getJPEGFrameGrabber(this.width,
-				this.height, this.channel, this.videoStandard,
-				this.compressionQuality, this.imageFormat);
+		this.videoDev.releaseFrameGrabber();
+		this.frameGrabber = createFrameGrabber(this.width, this.height);
 		this.frameGrabber.setCaptureCallback(this.frameGrabberCallback);
 		this.frameGrabber.startCapture();
 	}
 
+	private FrameGrabber createFrameGrabber(int width, int height)
+			throws V4L4JException {
+		switch (this.captureMode) {
+		case RGB:
+			return this.videoDev.getRGBFrameGrabber(width, height,
+					this.channel, this.videoStandard, this.imageFormat);
+		case BGR:
+			return this.videoDev.getBGRFrameGrabber(width, height,
+					this.channel, this.videoStandard, this.imageFormat);
+		default:
+			return this.videoDev.getJPEGFrameGrabber(width, height,
+					this.channel, this.videoStandard,
+					this.compressionQuality, this.imageFormat);
+		}
+	}
+
+	/**
+	 * Turns a captured frame into an image that stays valid after the frame
+	 * is recycled. Uncompressed frames are copied into a TYPE_3BYTE_BGR
+	 * image from the pool, which is the layout PixelBuffer and DistortionFix
+	 * read fastest.
+	 */
+	private BufferedImage decode(VideoFrame frame) {
+		if (this.captureMode == CaptureMode.JPEG)
+			return frame.getBufferedImage();
+
+		BufferedImage image = this.spareImages.poll();
+		if (image == null || image.getWidth() != this.width
+				|| image.getHeight() != this.height)
+			image = new BufferedImage(this.width, this.height,
+					BufferedImage.TYPE_3BYTE_BGR);
+		byte[] dst = ((DataBufferByte) image.getRaster().getDataBuffer())
+				.getData();
+		byte[] src = frame.getBytes();
+		int length = Math.min(dst.length, frame.getFrameLength());
+		if (this.captureMode == CaptureMode.BGR) {
+			System.arraycopy(src, 0, dst, 0, length);
+		} else {
+			for (int i = 0; i + 2 < length; i += 3) {
+				dst[i] = src[i + 2];
+				dst[i + 1] = src[i + 1];
+				dst[i + 2] = src[i];
+			}
+		}
+		return image;
+	}
+
+	/**
+	 * Gives an image back to be decoded into again, once nothing will read
+	 * it. JPEG frames are decoded into new images by v4l4j, so aren't kept.
+	 */
+	private void recycle(BufferedImage image) {
+		if (image != null && this.captureMode != CaptureMode.JPEG)
+			this.spareImages.offer(image);
+	}
+
+	private void archive(BufferedImage frame, float delta, int counter,
+			long timestamp) {
+		FrameArchive archive = this.archive;
+		if (archive == null)
+			return;
+		try {
+			archive.append(frame, delta, counter, timestamp);
+		} catch (IOException e) {
+			System.err.println("Stopped archiving frames: " + e.getMessage());
+			e.printStackTrace();
+			this.archive = null;
+		}
+	}
+
+	/**
+	 * Sets an archive to append every frame to as soon as it is decoded, so
+	 * that frames the recognise stage drops are still kept. Frames are
+	 * appended on the decode thread, where copying them costs the least.
+	 * 
+	 * @param archive
+	 *            The archive, or null to stop archiving
+	 */
+	public void setArchive(FrameArchive archive) {
+		this.archive = archive;
+	}
+
+	/**
+	 * Gets the way frames are being taken from the video device
+	 */
+	public CaptureMode getCaptureMode() {
+		return this.captureMode;
+	}
+
+	@Override
 	public void shutdown() {
 		this.frameGrabber.stopCapture();
+		CapturedFrame remaining = this.decodeSlot.close();
+		if (remaining != null)
+			remaining.frame.recycle();
+		this.recogniseSlot.close();
+	}
+
+	/**
+	 * Gets the timing statistics of each stage of the pipeline, in order:
+	 * capture, decode and recognise (which includes running every receiver)
+	 */
+	public List<StageTiming> getStageTimings() {
+		return Arrays.asList(this.captureTiming, this.decodeTiming,
+				this.recogniseTiming);
 	}
 
 	/**
@@ -426,6 +700,7 @@ public class VideoStream {
 	 * @param receiver
 	 *            The object being registered
 	 */
+	@Override
 	public void addReceiver(VideoReceiver receiver) {
 		this.videoReceivers.add(receiver);
 	}
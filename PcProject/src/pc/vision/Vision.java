@@ -1,17 +1,27 @@
 package pc.vision;
 
-import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
+import pc.logging.FrameTiming;
 import pc.vision.interfaces.ObjectRecogniser;
+import pc.vision.interfaces.ParallelRecogniser;
+import pc.vision.interfaces.StaticWorldStateReceiver;
 import pc.vision.interfaces.VideoReceiver;
 import pc.vision.interfaces.VisionDebugReceiver;
 import pc.vision.interfaces.WorldStateReceiver;
 import pc.world.DynamicWorldState;
 import pc.world.StaticWorldState;
+import pc.world.WorldSnapshot;
 import pc.world.oldmodel.WorldState;
 
 /**
@@ -26,9 +36,68 @@ public class Vision implements VideoReceiver {
 	private final PitchConstants pitchConstants;
 	private final WorldState worldState;
 	private final DynamicWorldState dynamicWorldState;
-	private ArrayList<VisionDebugReceiver> visionDebugReceivers = new ArrayList<VisionDebugReceiver>();
-	private static ArrayList<WorldStateReceiver> worldStateReceivers = new ArrayList<WorldStateReceiver>();
+	private List<VisionDebugReceiver> visionDebugReceivers = new CopyOnWriteArrayList<VisionDebugReceiver>();
+	// Added to and removed from by the video thread while the publish thread
+	// goes through it
+	private static CopyOnWriteArrayList<WorldStateReceiver> worldStateReceivers = new CopyOnWriteArrayList<WorldStateReceiver>();
+	private List<StaticWorldStateReceiver> staticWorldStateReceivers = new CopyOnWriteArrayList<StaticWorldStateReceiver>();
 	private ArrayList<ObjectRecogniser> recognisers = new ArrayList<ObjectRecogniser>();
+	// Reused for every frame to avoid allocating per pixel
+	private final PixelBuffer pixels = new PixelBuffer(
+			VideoStream.FRAME_WIDTH, VideoStream.FRAME_HEIGHT);
+	private final ColourClassifier classifier;
+	private final Segmentation segmentation = new Segmentation(
+			VideoStream.FRAME_WIDTH, VideoStream.FRAME_HEIGHT);
+	// Results are handed to the publish thread so that the receivers never
+	// hold up recognition of the next frame. Only the latest frame's results
+	// are kept, and receivers get an immutable snapshot of the world state
+	// rather than the state the recognisers are updating.
+	private final LatestSlot<Published> publishSlot = new LatestSlot<Published>();
+	private final StageTiming publishTiming = new StageTiming("publish");
+	private final Thread publishThread = new Thread("Vision publish") {
+		@Override
+		public void run() {
+			try {
+				Published published;
+				while ((published = publishSlot.take()) != null) {
+					long start = System.nanoTime();
+					for (WorldStateReceiver receiver : Vision.worldStateReceivers)
+						receiver.sendWorldState(published.snapshot);
+					for (VisionDebugReceiver receiver : visionDebugReceivers)
+						receiver.sendDebugOverlay(published.debugOverlay);
+					publishTiming.record(System.nanoTime() - start);
+				}
+			} catch (InterruptedException e) {
+				// Shutting down
+			}
+		}
+	};
+	/**
+	 * The results of a frame waiting for the publish thread
+	 */
+	private static class Published {
+		public final BufferedImage debugOverlay;
+		public final WorldSnapshot snapshot;
+
+		public Published(BufferedImage debugOverlay, WorldSnapshot snapshot) {
+			this.debugOverlay = debugOverlay;
+			this.snapshot = snapshot;
+		}
+	}
+
+	// Runs the searches of ParallelRecognisers, one thread per core
+	private final ExecutorService searchPool = Executors.newFixedThreadPool(
+			Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+				private int count = 0;
+
+				@Override
+				public synchronized Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "Vision search "
+							+ (++this.count));
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
 
 	public Vision(WorldState worldState, PitchConstants pitchConstants,
 			DynamicWorldState dynamicWorldState) {
@@ -36,6 +105,9 @@ public class Vision implements VideoReceiver {
 		this.worldState = worldState;
 		this.pitchConstants = pitchConstants;
 		this.dynamicWorldState = dynamicWorldState;
+		this.classifier = new ColourClassifier(pitchConstants);
+		this.publishThread.setDaemon(true);
+		this.publishThread.start();
 		worldState.dividers = pitchConstants.getDividers();
 		worldState.leftGoal = pitchConstants.getLeftGoal();
 		worldState.rightGoal = pitchConstants.getRightGoal();
@@ -55,6 +127,17 @@ public class Vision implements VideoReceiver {
 		this.visionDebugReceivers.add(receiver);
 	}
 
+	/**
+	 * Registers an object to receive the positions found in each frame, as
+	 * soon as the frame has been processed
+	 * 
+	 * @param receiver
+	 *            The object being registered
+	 */
+	public void addStaticWorldStateReceiver(StaticWorldStateReceiver receiver) {
+		this.staticWorldStateReceivers.add(receiver);
+	}
+
 	/**
 	 * Registers an object to receive the world state from the vision system
 	 * 
@@ -62,7 +145,7 @@ public class Vision implements VideoReceiver {
 	 *            The object being registered
 	 */
 	public static void addWorldStateReceiver(WorldStateReceiver receiver) {
-		worldStateReceivers.add(receiver);
+		worldStateReceivers.addIfAbsent(receiver);
 	}
 
 	public static void removeWorldStateReciver(WorldStateReceiver reciver) {
@@ -73,10 +156,18 @@ public class Vision implements VideoReceiver {
 		this.recognisers.add(recogniser);
 	}
 
+	/**
+	 * Gets the segmentation of the frame currently being processed. Only valid
+	 * while the recognisers are being run from sendFrame.
+	 */
+	public Segmentation getSegmentation() {
+		return this.segmentation;
+	}
+
 	/**
 	 * Processes an input image, extracting the ball and robot positions and
-	 * robot orientations from it, and then displays the image (with some
-	 * additional graphics layered on top for debugging) in the vision frame.
+	 * robot orientations from it, and then hands the results to the publish
+	 * thread to be passed on to the world state and debug receivers.
 	 * 
 	 * @param frame
 	 *            The image to process and then show.
@@ -84,59 +175,66 @@ public class Vision implements VideoReceiver {
 	 *            The time between frames in seconds
 	 * @param counter
 	 *            The index of the current frame
+	 * @param timestamp
+	 *            When the frame was captured, in microseconds on the
+	 *            System.nanoTime clock
 	 */
 	public void sendFrame(BufferedImage frame, float delta, int counter,
 			long timestamp) {
+		FrameTiming timing = new FrameTiming(timestamp);
 		BufferedImage debugOverlay = new BufferedImage(frame.getWidth(),
 				frame.getHeight(), BufferedImage.TYPE_INT_ARGB);
 		Graphics2D debugGraphics = (Graphics2D) debugOverlay.getGraphics();
 		debugGraphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
 				RenderingHints.VALUE_ANTIALIAS_ON);
 
-		int top = pitchConstants.getPitchTop();
-		int left = pitchConstants.getPitchLeft();
-		int right = left + pitchConstants.getPitchWidth();
-		int bottom = top + pitchConstants.getPitchHeight();
-		PixelInfo[][] pixels = new PixelInfo[VideoStream.FRAME_WIDTH][VideoStream.FRAME_HEIGHT];
-		for (int row = top; row < bottom; row++) {
-			for (int column = left; column < right; column++) {
-				Color c = new Color(frame.getRGB(column, row));
-				PixelInfo p = new PixelInfo(c);
-				pixels[column][row] = p;
-			}
-		}
+		classifier.refresh();
+		pixels.load(frame, pitchConstants.getPitchBounds());
+		segmentation.process(pixels, classifier, pitchConstants.getDividers());
+		for (ObjectRecogniser recogniser : recognisers)
+			if (recogniser instanceof ParallelRecogniser)
+				((ParallelRecogniser) recogniser).submitSearches(searchPool,
+						debugOverlay);
 		StaticWorldState staticWorldState = new StaticWorldState();
 		for (ObjectRecogniser recogniser : recognisers)
 			recogniser.processFrame(pixels, frame, debugGraphics, debugOverlay,
 					staticWorldState);
 		dynamicWorldState.pushState(staticWorldState, timestamp);
+		for (StaticWorldStateReceiver receiver : staticWorldStateReceivers)
+			receiver.sendStaticWorldState(staticWorldState, counter, timestamp);
+		timing.recognised();
+		WorldSnapshot snapshot = worldState.publishSnapshot(counter, timestamp,
+				timing);
 
-		for (VisionDebugReceiver receiver : this.visionDebugReceivers)
-			receiver.sendDebugOverlay(debugOverlay);
-		for (WorldStateReceiver receiver : Vision.worldStateReceivers) {
-			receiver.sendWorldState(this.worldState);
-		}
+		if (this.publishSlot.put(new Published(debugOverlay, snapshot)) != null)
+			this.publishTiming.dropped();
 	}
 
 	/**
-	 * Returns the mean position of a list of points.
+	 * Gets the timing statistics of the thread that passes results on to the
+	 * world state and debug receivers
+	 */
+	public StageTiming getPublishTiming() {
+		return this.publishTiming;
+	}
+
+	/**
+	 * Waits for a search submitted by a ParallelRecogniser to finish
 	 * 
-	 * @param points
-	 * @return the mean position of the points
+	 * @param search
+	 *            The search to wait for
+	 * @return the result of the search, or null if it failed or the thread
+	 *         was interrupted
 	 */
-	public Vector2f calculatePosition(ArrayList<Position> points) {
-		if (points.size() < 10) {
-			return new Vector2f(0, 0);
-		} else {
-			int xsum = 0;
-			int ysum = 0;
-			for (Position p : points) {
-				xsum += p.getX();
-				ysum += p.getY();
-			}
-			float xmean = 1.0f * xsum / points.size();
-			float ymean = 1.0f * ysum / points.size();
-			return new Vector2f(xmean, ymean);
+	public static <T> T waitFor(Future<T> search) {
+		try {
+			return search.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			e.getCause().printStackTrace();
+			return null;
 		}
 	}
 
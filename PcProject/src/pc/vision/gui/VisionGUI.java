@@ -19,6 +19,7 @@ import javax.swing.ListSelectionModel;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 
+import pc.vision.DistortionFix;
 import pc.vision.YAMLConfig;
 import pc.vision.gui.tools.TextConfigPanel;
 import pc.vision.interfaces.VideoReceiver;
@@ -30,17 +31,31 @@ public class VisionGUI extends JFrame implements VideoReceiver,
 	private final int videoWidth;
 	private final int videoHeight;
 
-	// Stored to only have rendering happen in one place
-	private BufferedImage rawFrame, renderedFrame;
-	private float delta;
-	private int frameCounter;
+	// The frame is only corrected for display when the window repaints, so
+	// nothing but the overlay is stored here
+	private final DistortionFix distortionFix;
+	private volatile BufferedImage debugOverlay;
+	private volatile float delta;
+	private volatile int frameCounter;
 
 	private final JPanel videoDisplay = new JPanel() {
 		@Override
 		protected void paintComponent(Graphics g) {
 			super.paintComponent(g);
 			// The most recent frame is always drawn
-			g.drawImage(renderedFrame, 0, 0, null);
+			BufferedImage frame = distortionFix.getCorrectedFrame();
+			if (frame == null)
+				return;
+			g.drawImage(frame, 0, 0, null);
+			BufferedImage overlay = debugOverlay;
+			if (overlay != null)
+				g.drawImage(overlay, 0, 0, null);
+
+			// Draw frame info and worldstate on top of the result
+			// Display the FPS that the vision system is running at
+			g.setColor(Color.white);
+			g.drawString("Frame: " + frameCounter, 15, 15);
+			g.drawString("FPS: " + 1 / delta, 15, 30);
 		}
 	};
 	
@@ -60,10 +75,12 @@ public class VisionGUI extends JFrame implements VideoReceiver,
 		}
 	};
 
-	public VisionGUI(int videoWidth, int videoHeight, YAMLConfig yamlConfig) {
+	public VisionGUI(int videoWidth, int videoHeight, YAMLConfig yamlConfig,
+			DistortionFix distortionFix) {
 		super("Vision");
 		this.videoWidth = videoWidth;
 		this.videoHeight = videoHeight;
+		this.distortionFix = distortionFix;
 
 		getContentPane().setLayout(new BorderLayout());
 
@@ -134,25 +151,16 @@ public class VisionGUI extends JFrame implements VideoReceiver,
 
 	@Override
 	public void sendFrame(BufferedImage frame, float delta, int frameCounter, long timestamp) {
-		this.rawFrame = frame;
 		this.delta = delta;
 		this.frameCounter = frameCounter;
 	}
 
 	@Override
 	public void sendDebugOverlay(BufferedImage debugOverlay) {
-		// Draw overall composite to screen
-		Graphics frameGraphics = rawFrame.getGraphics();
-		frameGraphics.drawImage(debugOverlay, 0, 0, null);
-		
-		// Draw frame info and worldstate on top of the result
-		// Display the FPS that the vision system is running at
-		frameGraphics.setColor(Color.white);
-		frameGraphics.drawString("Frame: " + this.frameCounter, 15, 15);
-		frameGraphics.drawString("FPS: " + 1 / this.delta, 15, 30);
-		
-		renderedFrame = rawFrame;
-		videoDisplay.repaint();
+		this.debugOverlay = debugOverlay;
+		// Drawing (and correcting the frame) is left to paintComponent
+		if (isShowing())
+			videoDisplay.repaint();
 	}
 
 	private class ToolWrapper {
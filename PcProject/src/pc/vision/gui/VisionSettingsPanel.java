@@ -158,16 +158,21 @@ public class VisionSettingsPanel extends JPanel {
 		this.pitchConstants = pitchConstants;
 		this.distortionFix = distortionFix;
 		this.yamlConfig = yamlConfig;
-		this.camPanel = new CameraSettingsPanel(vStream,
-				System.getProperty("user.dir") + "/constants/pitch"
-						+ pitchConstants.getPitchNum() + "camera");
+		// There is no camera to configure when frames are being replayed
+		if (vStream != null)
+			this.camPanel = new CameraSettingsPanel(vStream,
+					System.getProperty("user.dir") + "/constants/pitch"
+							+ pitchConstants.getPitchNum() + "camera");
+		else
+			this.camPanel = null;
 
 		// The main (default) tab
 		this.mainTabPanel.setLayout(new BoxLayout(this.mainTabPanel, BoxLayout.Y_AXIS));
 		setUpMainPanel();
 
 		this.tabPane.addTab("Main", this.mainTabPanel);
-		this.tabPane.addTab("Camera", this.camPanel);
+		if (this.camPanel != null)
+			this.tabPane.addTab("Camera", this.camPanel);
 
 		this.add(this.tabPane);
 		this.setSize(this.getPreferredSize());
@@ -524,8 +529,9 @@ public class VisionSettingsPanel extends JPanel {
 
 				VisionSettingsPanel.this.pitchConstants.saveConstants(System.getProperty("user.dir")
 						+ "/constants/pitch" + pitchNum);
-				VisionSettingsPanel.this.camPanel.saveSettings(System.getProperty("user.dir")
-						+ "/constants/pitch" + pitchNum + "camera");
+				if (VisionSettingsPanel.this.camPanel != null)
+					VisionSettingsPanel.this.camPanel.saveSettings(System.getProperty("user.dir")
+							+ "/constants/pitch" + pitchNum + "camera");
 			}
 		});
 
@@ -549,8 +555,9 @@ public class VisionSettingsPanel extends JPanel {
 					return;
 
 				VisionSettingsPanel.this.pitchConstants.setPitchNum(pitchNum);
-				VisionSettingsPanel.this.camPanel.loadSettings(System.getProperty("user.dir")
-						+ "/constants/pitch" + pitchNum + "camera");
+				if (VisionSettingsPanel.this.camPanel != null)
+					VisionSettingsPanel.this.camPanel.loadSettings(System.getProperty("user.dir")
+							+ "/constants/pitch" + pitchNum + "camera");
 			}
 		});
 
@@ -7,7 +7,7 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.image.BufferedImage;
 
-import pc.vision.PixelInfo;
+import pc.vision.PixelBuffer;
 import pc.vision.gui.GUITool;
 import pc.vision.gui.VisionGUI;
 import pc.vision.interfaces.ObjectRecogniser;
@@ -54,7 +54,7 @@ public class AlignmentTool implements GUITool {
 	public class FrameDisplay implements ObjectRecogniser {
 
 		@Override
-		public void processFrame(PixelInfo[][] pixels, BufferedImage frame,
+		public void processFrame(PixelBuffer pixels, BufferedImage frame,
 				Graphics2D debugGraphics, BufferedImage debugOverlay,
 				StaticWorldState result) {
 			if (point != null) {
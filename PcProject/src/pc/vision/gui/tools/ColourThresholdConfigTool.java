@@ -15,7 +15,7 @@ import javax.swing.event.MouseInputAdapter;
 
 import pc.vision.DistortionFix;
 import pc.vision.PitchConstants;
-import pc.vision.PixelInfo;
+import pc.vision.PixelBuffer;
 import pc.vision.Position;
 import pc.vision.VideoStream;
 import pc.vision.YAMLConfig;
@@ -250,7 +250,7 @@ public class ColourThresholdConfigTool implements GUITool {
 	public class PitchBoundsDebugDisplay implements ObjectRecogniser {
 
 		@Override
-		public void processFrame(PixelInfo[][] pixels, BufferedImage frame,
+		public void processFrame(PixelBuffer pixels, BufferedImage frame,
 				Graphics2D debugGraphics, BufferedImage debugOverlay,
 				StaticWorldState staticWorldState) {
 			// Eliminating area around the pitch dimensions
@@ -294,7 +294,7 @@ public class ColourThresholdConfigTool implements GUITool {
 	public class DividerLineDebugDisplay implements ObjectRecogniser {
 
 		@Override
-		public void processFrame(PixelInfo[][] pixels, BufferedImage frame,
+		public void processFrame(PixelBuffer pixels, BufferedImage frame,
 				Graphics2D debugGraphics, BufferedImage debugOverlay,
 				StaticWorldState staticWorldState) {
 			// Drawing the dividing lines
@@ -326,7 +326,7 @@ public class ColourThresholdConfigTool implements GUITool {
 	public class GoalPositionDebugDisplay implements ObjectRecogniser {
 
 		@Override
-		public void processFrame(PixelInfo[][] pixels, BufferedImage frame,
+		public void processFrame(PixelBuffer pixels, BufferedImage frame,
 				Graphics2D debugGraphics, BufferedImage debugOverlay,
 				StaticWorldState staticWorldState) {
 			float[] lg = pitchConstants.getLeftGoal();
@@ -11,7 +11,6 @@ import java.awt.RenderingHints;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.image.BufferedImage;
-import java.awt.image.Raster;
 import java.util.Observable;
 import java.util.Observer;
 
@@ -29,7 +28,7 @@ import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 
 import pc.vision.PitchConstants;
-import pc.vision.PixelInfo;
+import pc.vision.PixelBuffer;
 import pc.vision.gui.GUITool;
 import pc.vision.gui.InvertibleRangeSlider;
 import pc.vision.gui.VisionGUI;
@@ -237,12 +236,12 @@ public class HistogramTool implements GUITool, ObjectRecogniser {
 	 * Draw the measuring circle and refresh the histograms (if necessary)
 	 */
 	@Override
-	public void processFrame(PixelInfo[][] pixels, BufferedImage frame,
+	public void processFrame(PixelBuffer pixels, BufferedImage frame,
 			Graphics2D debugGraphics, BufferedImage debugOverlay,
 			StaticWorldState staticWorldState) {
 		if (needsRefresh) {
 			needsRefresh = false;
-			BufferedImage[] histogramImages = refreshHistogram(frame);
+			BufferedImage[] histogramImages = refreshHistogram(pixels);
 			for (int i = 0; i < 6; i++)
 				histograms[i].histogramDisplay.updateImage(histogramImages[i]);
 		}
@@ -257,10 +256,10 @@ public class HistogramTool implements GUITool, ObjectRecogniser {
 	}
 
 	/**
-	 * Given a raw frame, creates a histogram for each channel and returns a
-	 * list of them.
+	 * Given the pixel buffer for a frame, creates a histogram for each channel
+	 * and returns a list of them.
 	 */
-	private BufferedImage[] refreshHistogram(BufferedImage frame) {
+	private BufferedImage[] refreshHistogram(PixelBuffer pixels) {
 		BufferedImage[] result = new BufferedImage[6];
 		for (int i = 0; i < 6; i++) {
 			result[i] = new BufferedImage(HistogramDisplay.HISTOGRAM_WIDTH,
@@ -272,26 +271,24 @@ public class HistogramTool implements GUITool, ObjectRecogniser {
 
 		int[][] valueCounts = new int[6][256];
 
+		// Only the pitch area of the frame is held in the pixel buffer
 		Rectangle selection = new Rectangle(centerPoint.x - radius,
 				centerPoint.y - radius, 2 * radius, 2 * radius);
-		selection = selection.intersection(new Rectangle(0, 0,
-				frame.getWidth(), frame.getHeight()));
+		selection = selection.intersection(pixels.getRegion());
 
 		// Gather data
-		Raster raster = frame.getData();
-		int[] rgb = new int[3]; // Preallocated array
 		float[] hsb = new float[3];
 		for (int y = (int) selection.getMinY(); y < selection.getMaxY(); y++) {
 			for (int x = (int) selection.getMinX(); x < selection.getMaxX(); x++) {
 				if (Math.hypot(x - centerPoint.x, y - centerPoint.y) < radius) {
 					// The pixel is inside the circle
-					raster.getPixel(x, y, rgb);
-					Color.RGBtoHSB(rgb[0], rgb[1], rgb[2], hsb);
+					int i = pixels.index(x, y);
 					// RGB processing
-					for (int channel = 0; channel < 3; channel++) {
-						valueCounts[channel][rgb[channel]]++;
-					}
+					valueCounts[0][pixels.getRed(i)]++;
+					valueCounts[1][pixels.getGreen(i)]++;
+					valueCounts[2][pixels.getBlue(i)]++;
 					// HSV processing
+					pixels.getHSB(i, hsb);
 					for (int channel = 0; channel < 3; channel++) {
 						valueCounts[channel + 3][(int) (255 * hsb[channel])]++;
 					}
@@ -16,6 +16,7 @@ import java.awt.RenderingHints;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
 import java.util.ArrayList;
@@ -25,10 +26,15 @@ import javax.swing.BoxLayout;
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
 import javax.swing.JFrame;
+import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JSlider;
+import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 
 import pc.vision.DistortionFix;
+import pc.vision.FrameReplay;
 import pc.vision.PitchConstants;
 import pc.vision.Vector2f;
 import pc.vision.YAMLConfig;
@@ -37,9 +43,11 @@ import pc.vision.gui.VisionGUI;
 import pc.vision.interfaces.PitchViewProvider;
 import pc.vision.interfaces.VideoReceiver;
 import pc.vision.interfaces.WorldStateReceiver;
+import pc.world.DirectedPoint;
 import pc.world.DynamicWorldState;
 import pc.world.DynamicWorldState.StateUpdateListener;
 import pc.world.Pitch;
+import pc.world.StaticWorldState;
 import pc.world.oldmodel.WorldState;
 
 public class PitchModelView implements GUITool, VideoReceiver,
@@ -58,8 +66,16 @@ public class PitchModelView implements GUITool, VideoReceiver,
 
 	private List<PitchViewProvider> viewProviders = new ArrayList<PitchViewProvider>();
 
-	private BufferedImage backgroundFrame, overlayFrame;
-	private boolean shouldUpdateFrame = false;
+	private BufferedImage overlayFrame;
+	private volatile boolean shouldUpdateFrame = false;
+
+	// Set when frames come from a recording, which the view can seek through
+	private FrameReplay replay;
+	private JSlider seekSlider;
+	private JLabel seekLabel;
+	// Set while the slider is being moved to follow playback, rather than by
+	// the user
+	private boolean followingReplay = false;
 
 	public PitchModelView(VisionGUI gui, PitchConstants pitchConstants,
 			Pitch pitch, DistortionFix distortionFix,
@@ -110,6 +126,12 @@ public class PitchModelView implements GUITool, VideoReceiver,
 				provider.drawOnPitch(g);
 			}
 
+			// Only outlined while the replay is sending the frame the state
+			// came from
+			int frame = replay == null ? -1 : replay.getCurrentFrame();
+			if (frame >= 0)
+				drawArchivedState(g, replay.getArchivedState(frame));
+
 			g.dispose();
 		}
 		pitchView.repaint();
@@ -119,14 +141,76 @@ public class PitchModelView implements GUITool, VideoReceiver,
 		viewProviders.add(provider);
 	}
 
+	/**
+	 * Adds a slider for moving playback of a recording to any frame. If the
+	 * recording is a FrameArchive, the positions vision found in each frame
+	 * when it was archived are outlined too, for comparison with what it
+	 * finds now.
+	 */
+	public void setReplay(final FrameReplay replay) {
+		this.replay = replay;
+		seekSlider = new JSlider(0, Math.max(0, replay.getFrameCount() - 1), 0);
+		seekSlider.addChangeListener(new ChangeListener() {
+			@Override
+			public void stateChanged(ChangeEvent e) {
+				updateSeekLabel();
+				if (!followingReplay && !seekSlider.getValueIsAdjusting())
+					replay.seek(seekSlider.getValue());
+			}
+		});
+		seekLabel = new JLabel();
+		updateSeekLabel();
+		subWindow.getContentPane().add(seekSlider);
+		subWindow.getContentPane().add(seekLabel);
+	}
+
+	private void updateSeekLabel() {
+		seekLabel.setText("Frame " + seekSlider.getValue() + " of "
+				+ replay.getFrameCount());
+	}
+
+	/**
+	 * Outlines the positions in a frame's archived state
+	 */
+	private static void drawArchivedState(Graphics2D g, StaticWorldState state) {
+		if (state == null)
+			return;
+		g.setColor(Color.CYAN);
+		g.setStroke(new BasicStroke(4));
+		if (state.getBall() != null)
+			drawOutline(g, state.getBall(), 20);
+		DirectedPoint[] robots = { state.getAttacker(), state.getDefender(),
+				state.getEnemyAttacker(), state.getEnemyDefender() };
+		for (DirectedPoint robot : robots) {
+			if (robot != null)
+				drawOutline(g, robot, 60);
+		}
+	}
+
+	private static void drawOutline(Graphics2D g, Point point, double radius) {
+		g.draw(new Ellipse2D.Double(point.x - radius, point.y - radius,
+				2 * radius, 2 * radius));
+	}
+
 	@Override
 	public void sendFrame(BufferedImage frame, float delta, int frameCounter,
 			long timestamp) {
-		if (shouldUpdateFrame) {
-			backgroundFrame = distortionFix.removeBarrelDistortion(frame);
+		// The frame itself is corrected when the view repaints
+		if (shouldUpdateFrame && subWindow.isShowing())
 			pitchView.repaint();
-		} else {
-			backgroundFrame = null;
+
+		final int position = replay == null ? -1 : replay.getCurrentFrame();
+		if (position >= 0 && subWindow.isShowing()) {
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					if (seekSlider.getValueIsAdjusting())
+						return;
+					followingReplay = true;
+					seekSlider.setValue(position);
+					followingReplay = false;
+				}
+			});
 		}
 	}
 
@@ -210,6 +294,8 @@ public class PitchModelView implements GUITool, VideoReceiver,
 				originalGraphics.drawImage(overlayFrame, 0, 0, null);
 			}
 
+			BufferedImage backgroundFrame = shouldUpdateFrame ? distortionFix
+					.getCorrectedFrame() : null;
 			if (backgroundFrame != null) {
 				AffineTransform at = new AffineTransform();
 				double frameScale = (double) pitch.getPitchWidth()
@@ -0,0 +1,22 @@
+package pc.vision.interfaces;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * An ObjectRecogniser whose searches of the frame can be run on Vision's
+ * worker pool, at the same time as other recognisers' searches.
+ *
+ * For every frame, Vision calls submitSearches on each of these recognisers
+ * once the frame has been segmented, and then calls processFrame on all of
+ * the recognisers in the order they were added as usual. processFrame should
+ * wait for the searches it submitted and then merge their results, so that
+ * the result does not depend on which search finished first.
+ */
+public interface ParallelRecogniser extends ObjectRecogniser {
+	/**
+	 * Submits the searches for the current frame. They may only read the
+	 * frame's Segmentation and draw on distinct parts of debugOverlay.
+	 */
+	void submitSearches(ExecutorService pool, BufferedImage debugOverlay);
+}
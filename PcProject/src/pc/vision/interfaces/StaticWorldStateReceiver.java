@@ -0,0 +1,16 @@
+package pc.vision.interfaces;
+
+import pc.world.StaticWorldState;
+
+/**
+ * An interface for classes which receive the positions vision found in each
+ * frame, along with the frame they were found in
+ */
+public interface StaticWorldStateReceiver {
+	/**
+	 * Called on the video thread as soon as a frame has been processed, so
+	 * it must return quickly
+	 */
+	public void sendStaticWorldState(StaticWorldState state, int frameCounter,
+			long timestamp);
+}
@@ -6,6 +6,10 @@ import java.awt.image.BufferedImage;
  * An interface for classes which receive video frames from a video stream or
  * other source (current sources are VideoStream and DistortionFix).
  * 
+ * The timestamp passed with each frame is when it was captured, in
+ * microseconds on the System.nanoTime clock, so that it can be compared with
+ * the time the frame's results are used.
+ * 
  * @author Alex Adams (s1046358)
  */
 public interface VideoReceiver {
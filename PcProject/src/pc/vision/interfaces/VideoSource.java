@@ -0,0 +1,21 @@
+package pc.vision.interfaces;
+
+/**
+ * An interface for classes which produce video frames and pass them on to
+ * VideoReceivers (current sources are VideoStream, which reads a video device,
+ * and FrameReplay, which reads a recording made by FrameRecorder).
+ */
+public interface VideoSource {
+	/**
+	 * Registers an object to receive frames from the source
+	 *
+	 * @param receiver
+	 *            The object being registered
+	 */
+	void addReceiver(VideoReceiver receiver);
+
+	/**
+	 * Stops producing frames
+	 */
+	void shutdown();
+}
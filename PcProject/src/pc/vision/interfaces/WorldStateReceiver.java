@@ -1,6 +1,6 @@
 package pc.vision.interfaces;
 
-import pc.world.oldmodel.WorldState;
+import pc.world.WorldSnapshot;
 
 //import world.state.WorldState;
 
@@ -11,5 +11,10 @@ import pc.world.oldmodel.WorldState;
  */
 public interface WorldStateReceiver {
 
-	public void sendWorldState(WorldState worldState);
+	/**
+	 * Receives the snapshot of the world state made from the latest frame.
+	 * Called from the vision publish thread; the snapshot never changes, so
+	 * it can be kept and read from any other thread.
+	 */
+	public void sendWorldState(WorldSnapshot worldState);
 }
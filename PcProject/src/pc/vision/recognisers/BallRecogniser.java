@@ -3,18 +3,24 @@ package pc.vision.recognisers;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.Shape;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
-import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
+import pc.vision.Blob;
+import pc.vision.BlobLabeller;
 import pc.vision.DistortionFix;
 import pc.vision.PitchConstants;
-import pc.vision.PixelInfo;
-import pc.vision.Position;
+import pc.vision.PixelBuffer;
+import pc.vision.Segmentation;
+import pc.vision.TrackingWindow;
 import pc.vision.Vector2f;
 import pc.vision.Vision;
-import pc.vision.interfaces.ObjectRecogniser;
+import pc.vision.interfaces.ParallelRecogniser;
 import pc.vision.interfaces.PitchViewProvider;
 import pc.world.DynamicWorldState;
 import pc.world.Pitch;
@@ -22,13 +28,18 @@ import pc.world.StaticWorldState;
 import pc.world.oldmodel.MovingObject;
 import pc.world.oldmodel.WorldState;
 
-public class BallRecogniser implements ObjectRecogniser {
+public class BallRecogniser implements ParallelRecogniser {
 	private Pitch pitch;
 	private Vision vision;
 	private WorldState worldState;
 	private PitchConstants pitchConstants;
 	private DistortionFix distortionFix;
 	private Vector2f previousBallPosition = new Vector2f(0, 0);
+	private BlobLabeller blobLabeller = new BlobLabeller();
+	private TrackingWindow ballWindow = new TrackingWindow();
+	private volatile boolean tracking = true;
+	// The search submitted for the current frame, if any
+	private Future<Blob> ballSearch;
 	private pc.logging.Logging logger;
 
 	public BallRecogniser(Vision vision, WorldState worldState,
@@ -42,48 +53,82 @@ public class BallRecogniser implements ObjectRecogniser {
 		logger = new pc.logging.Logging();
 	}
 
+	/**
+	 * Sets whether to search only around the ball's last position while it
+	 * can be found there, rather than the whole pitch every frame
+	 */
+	public void setTracking(boolean tracking) {
+		this.tracking = tracking;
+	}
+
 	@Override
-	public void processFrame(PixelInfo[][] pixels, BufferedImage frame,
+	public void submitSearches(ExecutorService pool, BufferedImage debugOverlay) {
+		final Segmentation segmentation = vision.getSegmentation();
+		this.ballSearch = pool.submit(new Callable<Blob>() {
+			@Override
+			public Blob call() {
+				return findBall(segmentation);
+			}
+		});
+	}
+
+	/**
+	 * Finds the ball blob, looking near where the ball was last seen first
+	 * and only searching the whole pitch if it isn't there
+	 * 
+	 * @return the ball blob, or null if the ball is not on the pitch
+	 */
+	private Blob findBall(Segmentation segmentation) {
+		Rectangle pitchRegion = segmentation.getRegion();
+		Rectangle window = this.tracking ? this.ballWindow
+				.getWindow(pitchRegion) : null;
+		Blob ballBlob = null;
+		if (window != null)
+			ballBlob = this.blobLabeller.findLargest(segmentation,
+					PitchConstants.OBJECT_BALL, window);
+		if (ballBlob == null)
+			ballBlob = this.blobLabeller.findLargest(segmentation,
+					PitchConstants.OBJECT_BALL, pitchRegion);
+		if (ballBlob == null)
+			this.ballWindow.lost();
+		else
+			this.ballWindow.found(ballBlob.getCentroid());
+		return ballBlob;
+	}
+
+	@Override
+	public void processFrame(PixelBuffer pixels, BufferedImage frame,
 			Graphics2D debugGraphics, BufferedImage debugOverlay,
 			StaticWorldState result) {
-		ArrayList<Position> ballPoints = new ArrayList<Position>();
-		int top = this.pitchConstants.getPitchTop();
-		int left = this.pitchConstants.getPitchLeft();
-		int right = left + this.pitchConstants.getPitchWidth();
-		int bottom = top + this.pitchConstants.getPitchHeight();
-
-		for (int row = top; row < bottom; row++) {
-			for (int column = left; column < right; column++) {
-				if (pixels[column][row] != null) {
-					if (vision.isColour(pixels[column][row],
-							PitchConstants.OBJECT_BALL)) {
-						ballPoints.add(new Position(column, row));
-						if (this.pitchConstants
-								.debugMode(PitchConstants.OBJECT_BALL)) {
-							debugOverlay.setRGB(column, row, 0xFF000000);
-						}
-					}
-				}
-			}
+		Segmentation segmentation = vision.getSegmentation();
+		if (this.pitchConstants.debugMode(PitchConstants.OBJECT_BALL)) {
+			segmentation.drawDebug(debugOverlay, PitchConstants.OBJECT_BALL,
+					0xFF000000, segmentation.getRegion());
 		}
 
-		Vector2f ballPosition = vision.calculatePosition(ballPoints);
-		
-		if (ballPosition.x != 0 || ballPosition.y != 0) {
-			debugGraphics.setColor(Color.red);
-			debugGraphics.drawLine(0, (int) ballPosition.y, 640,
-					(int) ballPosition.y);
-			debugGraphics.drawLine((int) ballPosition.x, 0, (int) ballPosition.x,
-					480);
+		Blob ballBlob;
+		if (this.ballSearch != null) {
+			ballBlob = Vision.waitFor(this.ballSearch);
+			this.ballSearch = null;
+		} else {
+			ballBlob = findBall(segmentation);
 		}
 
 		worldState.ballNotOnPitch = false;
-		
-		if (ballPosition.x == 0 && ballPosition.y == 0) {
+
+		Vector2f ballPosition;
+		if (ballBlob == null) {
 			ballPosition = previousBallPosition;
 			worldState.ballNotOnPitch = true;
 			// logger.Log("Ball Lost");
 		} else {
+			ballPosition = ballBlob.getCentroid();
+			debugGraphics.setColor(Color.red);
+			debugGraphics.drawLine(0, (int) ballPosition.y, 640,
+					(int) ballPosition.y);
+			debugGraphics.drawLine((int) ballPosition.x, 0, (int) ballPosition.x,
+					480);
+
 			// Distortion fixing
 			Point2D.Double point = new Point2D.Double(ballPosition.x,
 					ballPosition.y);
@@ -110,9 +155,15 @@ public class BallRecogniser implements ObjectRecogniser {
 		//update ball history
 		//worldState.updateBallPositionHistory(ball_m);
 
-		Point2D position = new Point2D.Double(ballPosition.x, ballPosition.y);
-		pitch.framePointToModel(position);
-		result.setBall(new Point((int) position.getX(), (int) position.getY()));
+		// Left out when missing, so that it is tracked on from where it was
+		// heading rather than held where it was last seen
+		if (!worldState.ballNotOnPitch) {
+			Point2D position = new Point2D.Double(ballPosition.x,
+					ballPosition.y);
+			pitch.framePointToModel(position);
+			result.setBall(new Point((int) position.getX(), (int) position
+					.getY()));
+		}
 	}
 
 	public static class ViewProvider implements PitchViewProvider {
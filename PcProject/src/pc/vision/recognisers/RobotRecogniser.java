@@ -10,14 +10,22 @@ import java.awt.Stroke;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
-
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import pc.vision.Blob;
+import pc.vision.BlobLabeller;
+import pc.vision.ColourClassifier;
 import pc.vision.DistortionFix;
 import pc.vision.PitchConstants;
-import pc.vision.PixelInfo;
-import pc.vision.Position;
+import pc.vision.PixelBuffer;
+import pc.vision.Segmentation;
+import pc.vision.TrackingWindow;
 import pc.vision.Vector2f;
 import pc.vision.Vision;
-import pc.vision.interfaces.ObjectRecogniser;
+import pc.vision.interfaces.ParallelRecogniser;
 import pc.vision.interfaces.PitchViewProvider;
 import pc.world.DirectedPoint;
 import pc.world.DynamicWorldState;
@@ -27,7 +35,7 @@ import pc.world.StaticWorldState;
 import pc.world.oldmodel.MovingObject;
 import pc.world.oldmodel.WorldState;
 
-public class RobotRecogniser implements ObjectRecogniser {
+public class RobotRecogniser implements ParallelRecogniser {
 	private Vision vision;
 	private WorldState worldState;
 	private PitchConstants pitchConstants;
@@ -37,6 +45,15 @@ public class RobotRecogniser implements ObjectRecogniser {
 	private SearchReturn yellowAtk = new SearchReturn();
 	private SearchReturn blueAtk = new SearchReturn();
 	private SearchReturn yellowDef = new SearchReturn();
+	// Each zone has its own labeller and window so the zones can be searched
+	// at the same time
+	private BlobLabeller[] blobLabellers = new BlobLabeller[Segmentation.NUM_ZONES];
+	// Where the plate in each zone was last seen
+	private TrackingWindow[] plateWindows = new TrackingWindow[Segmentation.NUM_ZONES];
+	private volatile boolean tracking = true;
+	// The searches submitted for the current frame, if any, in zone order
+	private List<Future<SearchReturn>> zoneSearches;
+	private boolean searchedLeftBlueFirst;
 	private SearchReturn blueDefPrev = new SearchReturn(),
 			yellowDefPrev = new SearchReturn(),
 			blueAtkPrev = new SearchReturn(),
@@ -52,10 +69,22 @@ public class RobotRecogniser implements ObjectRecogniser {
 		this.pitchConstants = pitchConstants;
 		this.distortionFix = distortionFix;
 		this.pitch = pitch;
+		for (int zone = 0; zone < Segmentation.NUM_ZONES; zone++) {
+			this.blobLabellers[zone] = new BlobLabeller();
+			this.plateWindows[zone] = new TrackingWindow();
+		}
+	}
+
+	/**
+	 * Sets whether to search only around each plate's last position while it
+	 * can be found there, rather than its whole column every frame
+	 */
+	public void setTracking(boolean tracking) {
+		this.tracking = tracking;
 	}
 
 	private static void drawRobotPos(Graphics2D debugGraphics, SearchReturn pos) {
-		if (pos.pos.x == 0 && pos.pos.y == 0)
+		if (pos == null)
 			return;
 		Graphics2D g = (Graphics2D) debugGraphics.create();
 		g.translate(pos.pos.x, pos.pos.y);
@@ -71,38 +100,67 @@ public class RobotRecogniser implements ObjectRecogniser {
 		g.dispose();
 	}
 
+	private boolean isLeftBlueFirst() {
+		return !(worldState.weAreBlue ^ worldState.weAreShootingRight);
+	}
+
+	// Blue and yellow plates alternate along the pitch
+	private static boolean isBlueZone(int zone, boolean leftBlueFirst) {
+		return (zone % 2 == 0) == leftBlueFirst;
+	}
+
 	@Override
-	public void processFrame(PixelInfo[][] pixels, BufferedImage frame,
+	public void submitSearches(ExecutorService pool,
+			final BufferedImage debugOverlay) {
+		final Segmentation segmentation = vision.getSegmentation();
+		this.searchedLeftBlueFirst = isLeftBlueFirst();
+		this.zoneSearches = new ArrayList<Future<SearchReturn>>();
+		for (int zone = 0; zone < Segmentation.NUM_ZONES; zone++) {
+			final int z = zone;
+			final boolean isBlue = isBlueZone(zone, this.searchedLeftBlueFirst);
+			this.zoneSearches.add(pool.submit(new Callable<SearchReturn>() {
+				@Override
+				public SearchReturn call() {
+					return searchColumn(segmentation, debugOverlay, z, isBlue);
+				}
+			}));
+		}
+	}
+
+	@Override
+	public void processFrame(PixelBuffer pixels, BufferedImage frame,
 			Graphics2D debugGraphics, BufferedImage debugOverlay,
 			StaticWorldState result) {
-		int leftBuffer = this.pitchConstants.getPitchLeft();
-		int rightBuffer = frame.getWidth() - leftBuffer
-				- this.pitchConstants.getPitchWidth();
-		int[] dividers = this.pitchConstants.getDividers();
+		Segmentation segmentation = vision.getSegmentation();
+
+		boolean leftBlueFirst;
+		SearchReturn[] plates = new SearchReturn[Segmentation.NUM_ZONES];
+		if (this.zoneSearches != null) {
+			leftBlueFirst = this.searchedLeftBlueFirst;
+			for (int zone = 0; zone < plates.length; zone++)
+				plates[zone] = Vision.waitFor(this.zoneSearches.get(zone));
+			this.zoneSearches = null;
+		} else {
+			leftBlueFirst = isLeftBlueFirst();
+			for (int zone = 0; zone < plates.length; zone++)
+				plates[zone] = searchColumn(segmentation, debugOverlay, zone,
+						isBlueZone(zone, leftBlueFirst));
+		}
 
-		boolean leftBlueFirst = !(worldState.weAreBlue ^ worldState.weAreShootingRight);
 		if (leftBlueFirst) {
 			// In order, ltr: Blue Defender, Yellow Attacker, Blue Attacker,
 			// Yellow Defender
-			blueDef = searchColumn(pixels, debugOverlay, leftBuffer,
-					dividers[0], true);
-			yellowAtk = searchColumn(pixels, debugOverlay, dividers[0],
-					dividers[1], false);
-			blueAtk = searchColumn(pixels, debugOverlay, dividers[1],
-					dividers[2], true);
-			yellowDef = searchColumn(pixels, debugOverlay, dividers[2],
-					frame.getWidth() - rightBuffer, false);
+			blueDef = plates[0];
+			yellowAtk = plates[1];
+			blueAtk = plates[2];
+			yellowDef = plates[3];
 		} else {
 			// In order, ltr: Yellow Defender, Blue Attacker, Yellow Attacker,
 			// Blue Defender
-			yellowDef = searchColumn(pixels, debugOverlay, leftBuffer,
-					dividers[0], false);
-			blueAtk = searchColumn(pixels, debugOverlay, dividers[0],
-					dividers[1], true);
-			yellowAtk = searchColumn(pixels, debugOverlay, dividers[1],
-					dividers[2], false);
-			blueDef = searchColumn(pixels, debugOverlay, dividers[2],
-					frame.getWidth() - rightBuffer, true);
+			yellowDef = plates[0];
+			blueAtk = plates[1];
+			yellowAtk = plates[2];
+			blueDef = plates[3];
 		}
 
 		// Debugging Graphics
@@ -118,7 +176,7 @@ public class RobotRecogniser implements ObjectRecogniser {
 		yellowDefNotOnPitch = false;
 
 		// Determine if the plates are on the pitch or not.
-		if (blueAtk.pos.x == 0 && blueAtk.pos.y == 0) {
+		if (blueAtk == null) {
 			blueAtk = blueAtkPrev;
 			blueAtkNotOnPitch = true;
 		} else {
@@ -130,7 +188,7 @@ public class RobotRecogniser implements ObjectRecogniser {
 			heightCorrection(blueAtk.pos, 2450, 175);
 		}
 
-		if (blueDef.pos.x == 0 && blueDef.pos.y == 0) {
+		if (blueDef == null) {
 			blueDef = blueDefPrev;
 			blueDefNotOnPitch = true;
 		} else {
@@ -142,7 +200,7 @@ public class RobotRecogniser implements ObjectRecogniser {
 			heightCorrection(blueDef.pos, 2450, 175);
 		}
 
-		if (yellowAtk.pos.x == 0 && yellowAtk.pos.y == 0) {
+		if (yellowAtk == null) {
 			yellowAtk = yellowAtkPrev;
 			yellowAtkNotOnPitch = true;
 		} else {
@@ -154,7 +212,7 @@ public class RobotRecogniser implements ObjectRecogniser {
 			heightCorrection(yellowAtk.pos, 2450, 175);
 		}
 
-		if (yellowDef.pos.x == 0 && yellowDef.pos.y == 0) {
+		if (yellowDef == null) {
 			yellowDef = yellowDefPrev;
 			yellowDefNotOnPitch = true;
 		} else {
@@ -208,10 +266,15 @@ public class RobotRecogniser implements ObjectRecogniser {
 		worldState.setEnemyAttackerRobot(enemyAttackerRobot);
 		worldState.setEnemyDefenderRobot(enemyDefenderRobot);
 
-		result.setAttacker(movingObjectToPoint(attackerRobot));
-		result.setDefender(movingObjectToPoint(defenderRobot));
-		result.setEnemyAttacker(movingObjectToPoint(enemyAttackerRobot));
-		result.setEnemyDefender(movingObjectToPoint(enemyDefenderRobot));
+		// Robots that are missing are left out, as for the ball
+		result.setAttacker(worldState.attackerNotOnPitch ? null
+				: movingObjectToPoint(attackerRobot));
+		result.setDefender(worldState.defenderNotOnPitch ? null
+				: movingObjectToPoint(defenderRobot));
+		result.setEnemyAttacker(worldState.enemyAttackerNotOnPitch ? null
+				: movingObjectToPoint(enemyAttackerRobot));
+		result.setEnemyDefender(worldState.enemyDefenderNotOnPitch ? null
+				: movingObjectToPoint(enemyDefenderRobot));
 	}
 
 	private DirectedPoint movingObjectToPoint(MovingObject movObj) {
@@ -241,102 +304,126 @@ public class RobotRecogniser implements ObjectRecogniser {
 	}
 
 	/**
-	 * Searches a particular column for a plate. Also searches for the pixels
-	 * that make up the ball, the grey circles on the plate, and deals with
-	 * setting the debugOverlay pixels as required.
+	 * Searches a particular column for a plate, taking the largest green blob
+	 * in the column as the plate and the largest blob of the marker colour on
+	 * it as the robot's position. Also finds the pixels that make up the grey
+	 * circle on the plate, and deals with setting the debugOverlay pixels as
+	 * required.
 	 * 
-	 * @param pixels
-	 *            - the pixel information for the current frame of video
+	 * @param segmentation
+	 *            - the segmentation of the current frame of video
 	 * @param debugOverlay
 	 *            - the image that will be overlayed for debugging
-	 * @param leftEdge
-	 *            - The x value of the left edge of the section
-	 * @param rightEdge
-	 *            - The x value of the right edge of the section
+	 * @param zone
+	 *            - The index of the zone to search, left to right
 	 * @param isBlue
 	 *            - True iff we are searching for a blue plate
+	 * @return the plate, or null if it could not be found
 	 * 
 	 * @author Peter Henderson (s1117205)
 	 */
-	private SearchReturn searchColumn(PixelInfo[][] pixels,
-			BufferedImage debugOverlay, int leftEdge, int rightEdge,
-			boolean isBlue) {
-
-		ArrayList<Position> greenPoints = new ArrayList<Position>();
-		int topBuffer = this.pitchConstants.getPitchTop();
-		int bottomBuffer = topBuffer + this.pitchConstants.getPitchHeight();
+	private SearchReturn searchColumn(Segmentation segmentation,
+			BufferedImage debugOverlay, int zone, boolean isBlue) {
+		int leftEdge = segmentation.getZoneLeft(zone);
+		int rightEdge = segmentation.getZoneRight(zone);
+		Rectangle pitchRegion = segmentation.getRegion();
+		int topBuffer = pitchRegion.y;
+		int bottomBuffer = topBuffer + pitchRegion.height;
 		int obj = isBlue ? PitchConstants.OBJECT_BLUE
 				: PitchConstants.OBJECT_YELLOW;
 
-		// Find the green plate pixels
-		for (int row = topBuffer; row < bottomBuffer; row++) {
-			for (int column = leftEdge; column < rightEdge; column++) {
-				if (pixels[column][row] != null) {
-					if (vision.isColour(pixels[column][row],
-							PitchConstants.OBJECT_GREEN)) {
-						greenPoints.add(new Position(column, row));
-						if (this.pitchConstants
-								.debugMode(PitchConstants.OBJECT_GREEN)) {
-							debugOverlay.setRGB(column, row, 0xFFFF0099);
-						}
-					}
-				}
-			}
+		Rectangle zoneArea = new Rectangle(leftEdge, topBuffer, rightEdge
+				- leftEdge, bottomBuffer - topBuffer);
+
+		if (this.pitchConstants.debugMode(PitchConstants.OBJECT_GREEN)) {
+			segmentation.drawDebug(debugOverlay, PitchConstants.OBJECT_GREEN,
+					0xFFFF0099, zoneArea);
 		}
 
-		// Green Plate centroid
-		Vector2f greenPlate = vision.calculatePosition(greenPoints);
+		// Green Plate centroid. Look near where the plate was last seen first,
+		// and only search the whole column if it isn't there.
+		BlobLabeller blobLabeller = this.blobLabellers[zone];
+		TrackingWindow plateWindow = this.plateWindows[zone];
+		Rectangle window = this.tracking ? plateWindow.getWindow(zoneArea) : null;
+		Blob plate = null;
+		if (window != null)
+			plate = blobLabeller.findLargest(segmentation,
+					PitchConstants.OBJECT_GREEN, window);
+		if (plate == null)
+			plate = blobLabeller.findLargest(segmentation,
+					PitchConstants.OBJECT_GREEN, zoneArea);
+		if (plate == null) {
+			plateWindow.lost();
+			return null;
+		}
+		Vector2f greenPlate = plate.getCentroid();
+		plateWindow.found(greenPlate);
 		int searchRadius = 14;
 
-		// For Debugging
-		debugOverlay.getGraphics().drawOval((int) greenPlate.x - searchRadius,
-				(int) greenPlate.y - searchRadius, searchRadius * 2,
-				searchRadius * 2);
+		// For Debugging. Other zones may be drawing at the same time.
+		synchronized (debugOverlay) {
+			debugOverlay.getGraphics().drawOval(
+					(int) greenPlate.x - searchRadius,
+					(int) greenPlate.y - searchRadius, searchRadius * 2,
+					searchRadius * 2);
+		}
 
-		// Find the yellow/blue coloured pixels within the plate bounds.
-		int cumulativeGreyX = 0, cumulativeGreyY = 0, numGreyPoints = 0;
+		// Only the square around the plate needs to be looked at
 		int gx = (int) greenPlate.x;
 		int gy = (int) greenPlate.y;
+		int top = Math.max(topBuffer, gy - searchRadius);
+		int bottom = Math.min(bottomBuffer, gy + searchRadius + 1);
+		int left = Math.max(leftEdge, gx - searchRadius);
+		int right = Math.min(rightEdge, gx + searchRadius + 1);
+		Rectangle plateArea = new Rectangle(left, top, right - left, bottom
+				- top);
+
+		// The yellow/blue marker is the largest blob of its colour on the plate
+		if (this.pitchConstants.debugMode(obj)) {
+			segmentation.drawDebug(debugOverlay, obj, 0xFFFF0099, plateArea);
+		}
+		Blob marker = blobLabeller.findLargest(segmentation, obj,
+				plateArea);
+		if (marker == null)
+			return null;
+		Vector2f pos = marker.getCentroid();
+
+		// Find the grey pixels within the plate bounds.
+		int cumulativeGreyX = 0, cumulativeGreyY = 0, numGreyPoints = 0;
 		int r2 = searchRadius * searchRadius;
 		int squareDist;
-		ArrayList<Position> colourPoints = new ArrayList<Position>();
-
-		for (int row = topBuffer; row < bottomBuffer; row++) {
-			for (int column = leftEdge; column < rightEdge; column++) {
+		int colourMask = ColourClassifier.mask(obj);
+		int greyMask = ColourClassifier.mask(PitchConstants.OBJECT_GREY);
+		for (int row = top; row < bottom; row++) {
+			for (int column = left; column < right; column++) {
 				squareDist = ((gx - column) * (gx - column))
 						+ ((gy - row) * (gy - row));
 				if (squareDist < r2) {
-					if (pixels[column][row] != null) {
-						if (vision.isColour(pixels[column][row], obj)) {
-							colourPoints.add(new Position(column, row));
-							if (this.pitchConstants.debugMode(obj)) {
-								debugOverlay.setRGB(column, row, 0xFFFF0099);
-							}
-						} else if (vision.isColour(pixels[column][row],
-								PitchConstants.OBJECT_GREY)) {
-							cumulativeGreyX += column;
-							cumulativeGreyY += row;
-							numGreyPoints++;
-							if (this.pitchConstants
-									.debugMode(PitchConstants.OBJECT_GREY)) {
-								debugOverlay.setRGB(column, row, 0xFFFF0099);
-							}
+					int colours = segmentation.getLabel(column, row);
+					if ((colours & colourMask) == 0
+							&& (colours & greyMask) != 0) {
+						cumulativeGreyX += column;
+						cumulativeGreyY += row;
+						numGreyPoints++;
+						if (this.pitchConstants
+								.debugMode(PitchConstants.OBJECT_GREY)) {
+							debugOverlay.setRGB(column, row, 0xFFFF0099);
 						}
 					}
 				}
 			}
 		}
 
-		Vector2f pos = vision.calculatePosition(colourPoints);
-
 		float returnAngle;
 		if (numGreyPoints > 0) {
 			float greyXMean = 1.0f * cumulativeGreyX / numGreyPoints;
 			float greyYMean = 1.0f * cumulativeGreyY / numGreyPoints;
 
 			// Debugging Code
-			debugOverlay.getGraphics().drawRect((int) greyXMean - 2,
-					(int) greyYMean - 2, 4, 4);
+			synchronized (debugOverlay) {
+				debugOverlay.getGraphics().drawRect((int) greyXMean - 2,
+						(int) greyYMean - 2, 4, 4);
+			}
 
 			float angle = (float) Math.toDegrees(Math.atan2(pos.y - greyYMean,
 					pos.x - greyXMean));
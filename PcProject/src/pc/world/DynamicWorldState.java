@@ -45,6 +45,15 @@ public class DynamicWorldState {
 		return enemyDefender;
 	}
 
+	/**
+	 * Moves every object on to a frame
+	 *
+	 * @param staticState
+	 *            What was found in the frame; objects that weren't found are
+	 *            null, and are carried on from their last estimates
+	 * @param timestamp
+	 *            When the frame was captured, in microseconds
+	 */
 	public void pushState(StaticWorldState staticState, long timestamp) {
 		ball.pushState(staticState.getBall(), timestamp);
 		attacker.pushState(staticState.getAttacker(), timestamp);
@@ -61,9 +70,130 @@ public class DynamicWorldState {
 		void stateUpdated();
 	}
 
+	/**
+	 * Filters the coordinates of one object from the frames it is seen in,
+	 * using the capture timestamps, and coasts on through the frames it
+	 * isn't seen in by prediction alone
+	 */
+	private static class Track {
+		// After this long unseen an object has most likely stopped, or been
+		// picked up, so its last estimate is held rather than carried on
+		private static final double MAX_COAST = 1.0; // seconds
+
+		private final KalmanFilter[] filters;
+		private long lastTimestamp;
+		private long lastSeen;
+
+		Track(KalmanFilter... filters) {
+			this.filters = filters;
+		}
+
+		/**
+		 * Moves the track on to a frame
+		 *
+		 * @param measurements
+		 *            The coordinates found in the frame, one for each
+		 *            filter, or null if the object wasn't found
+		 * @param timestamp
+		 *            When the frame was captured, in microseconds
+		 * @return whether there is an estimate, which there is from the first
+		 *         frame the object is found in
+		 */
+		boolean push(double[] measurements, long timestamp) {
+			if (!isStarted()) {
+				if (measurements == null)
+					return false;
+				start(measurements, timestamp);
+				return true;
+			}
+
+			// Frames are never older than the last, unless replayed; either
+			// way there is nothing to predict
+			double dt = (timestamp - this.lastTimestamp) / 1e6;
+			if (dt > 0) {
+				this.lastTimestamp = timestamp;
+				if ((timestamp - this.lastSeen) / 1e6 > MAX_COAST) {
+					// What it did before it was lost says nothing about
+					// where it is now
+					if (measurements != null) {
+						start(measurements, timestamp);
+						return true;
+					}
+					for (KalmanFilter filter : this.filters)
+						filter.stop();
+				}
+				for (KalmanFilter filter : this.filters)
+					filter.predict(dt);
+			}
+			if (measurements != null) {
+				for (int i = 0; i < this.filters.length; i++)
+					this.filters[i].update(measurements[i]);
+				this.lastSeen = timestamp;
+			}
+			return true;
+		}
+
+		private void start(double[] measurements, long timestamp) {
+			for (int i = 0; i < this.filters.length; i++)
+				this.filters[i].reset(measurements[i]);
+			this.lastTimestamp = this.lastSeen = timestamp;
+		}
+
+		boolean isStarted() {
+			return this.filters[0].isInitialised();
+		}
+
+		KalmanFilter get(int i) {
+			return this.filters[i];
+		}
+
+		double getTimeUnseen() {
+			return (this.lastTimestamp - this.lastSeen) / 1e6;
+		}
+
+		Point2D getPosition() {
+			return new Point2D.Double(this.filters[0].getValue(),
+					this.filters[1].getValue());
+		}
+
+		Point2D getVelocity() {
+			return new Point2D.Double(this.filters[0].getVelocity(),
+					this.filters[1].getVelocity());
+		}
+
+		Point2D extrapolate(double seconds) {
+			return new Point2D.Double(this.filters[0].extrapolate(seconds),
+					this.filters[1].extrapolate(seconds));
+		}
+
+		/**
+		 * Gets the covariance of x and y, or of their velocities, which the
+		 * filters treat as independent
+		 */
+		double[][] getCovariance(int derivative) {
+			return new double[][] {
+					{ this.filters[0].getCovariance(derivative, derivative), 0 },
+					{ 0, this.filters[1].getCovariance(derivative, derivative) } };
+		}
+	}
+
 	public static class Robot {
+		// Robots speed up and slow down quickly compared to the frame rate,
+		// so their acceleration is tracked too
+		private static final double POSITION_VARIANCE = 8 * 8; // mm^2
+		private static final double JERK_NOISE = 5e6; // mm^2/s^5
+		private static final double HEADING_VARIANCE = 0.1 * 0.1; // rad^2
+		private static final double ANGULAR_ACCELERATION_NOISE = 5; // rad^2/s^3
+
 		private final RobotModel model;
-		private DirectedPoint pos;
+		private final Track track = new Track(new KalmanFilter(
+				KalmanFilter.CONSTANT_ACCELERATION, JERK_NOISE,
+				POSITION_VARIANCE), new KalmanFilter(
+				KalmanFilter.CONSTANT_ACCELERATION, JERK_NOISE,
+				POSITION_VARIANCE), new KalmanFilter(
+				KalmanFilter.CONSTANT_VELOCITY, ANGULAR_ACCELERATION_NOISE,
+				HEADING_VARIANCE, true));
+		private Point2D pos;
 		private Shape extents;
 		private Shape catcher;
 		private Shape plate;
@@ -73,11 +203,21 @@ public class DynamicWorldState {
 			this.model = model;
 		}
 
+		/**
+		 * @param newPos
+		 *            Where the robot was found, or null if it wasn't
+		 * @param timestamp
+		 *            When the frame was captured, in microseconds
+		 */
 		public void pushState(DirectedPoint newPos, long timestamp) {
-			pos = newPos;
+			if (!track.push(newPos == null ? null : new double[] {
+					newPos.getX(), newPos.getY(), newPos.getDirection() },
+					timestamp))
+				return;
+			pos = track.getPosition();
 			AffineTransform at = new AffineTransform();
-			at.translate(newPos.getX(), newPos.getY());
-			at.rotate(newPos.getDirection() + Math.PI / 2);
+			at.translate(pos.getX(), pos.getY());
+			at.rotate(getHeading() + Math.PI / 2);
 			plate = at.createTransformedShape(model.getPlate());
 			at.translate(model.getPlate().getCenterX(), model.getPlate()
 					.getCenterY());
@@ -86,12 +226,70 @@ public class DynamicWorldState {
 			catcher = at.createTransformedShape(model.getCatcher());
 		}
 
+		/**
+		 * Gets the filtered position, in millimetres, or null if the robot
+		 * has never been seen
+		 */
 		public Point2D getCenter() {
 			return pos;
 		}
 
+		/**
+		 * Gets the filtered heading, in radians between -pi and pi
+		 */
 		public double getHeading() {
-			return pos.getDirection();
+			return Math.IEEEremainder(track.get(2).getValue(), 2 * Math.PI);
+		}
+
+		/** Gets the velocity in millimetres per second */
+		public Point2D getVelocity() {
+			return track.getVelocity();
+		}
+
+		/** Gets the acceleration in millimetres per second squared */
+		public Point2D getAcceleration() {
+			return new Point2D.Double(track.get(0).getAcceleration(), track
+					.get(1).getAcceleration());
+		}
+
+		/** Gets the rate of turn in radians per second */
+		public double getHeadingRate() {
+			return track.get(2).getVelocity();
+		}
+
+		/**
+		 * Gets the covariance of the position, in millimetres squared
+		 */
+		public double[][] getCovariance() {
+			return track.getCovariance(0);
+		}
+
+		/**
+		 * Gets the covariance of the velocity, in (mm/s)^2
+		 */
+		public double[][] getVelocityCovariance() {
+			return track.getCovariance(1);
+		}
+
+		/** Gets the variance of the heading, in radians squared */
+		public double getHeadingVariance() {
+			return track.get(2).getCovariance(0, 0);
+		}
+
+		/**
+		 * Gets how long the estimate has been coasting without the robot
+		 * being seen, in seconds; 0 if it was seen in the last frame
+		 */
+		public double getTimeUnseen() {
+			return track.getTimeUnseen();
+		}
+
+		/**
+		 * Gets where the robot is expected to be some seconds after the last
+		 * frame, if it carries on as it is
+		 */
+		public Point2D predictCenter(double seconds) {
+			return track.isStarted() ? track.extrapolate(seconds) : null;
 		}
 
 		public Shape getExtents() {
@@ -113,20 +311,77 @@ public class DynamicWorldState {
 
 	public static class Ball {
 		private final static double RADIUS = 16; // millimetres
+		// The ball rolls freely between kicks and bounces, so a constant
+		// velocity with room for those is enough
+		private static final double POSITION_VARIANCE = 5 * 5; // mm^2
+		private static final double ACCELERATION_NOISE = 1e5; // mm^2/s^3
 
-		private Point pos;
+		private final Track track = new Track(new KalmanFilter(
+				KalmanFilter.CONSTANT_VELOCITY, ACCELERATION_NOISE,
+				POSITION_VARIANCE), new KalmanFilter(
+				KalmanFilter.CONSTANT_VELOCITY, ACCELERATION_NOISE,
+				POSITION_VARIANCE));
+		private Point2D pos;
 		private Shape shape;
 
+		/**
+		 * @param newPos
+		 *            Where the ball was found, or null if it wasn't
+		 * @param timestamp
+		 *            When the frame was captured, in microseconds
+		 */
 		public void pushState(Point newPos, long timestamp) {
-			pos = newPos;
-			shape = new Ellipse2D.Double(newPos.getX() - RADIUS, newPos.getY()
+			if (!track.push(newPos == null ? null : new double[] {
+					newPos.getX(), newPos.getY() }, timestamp))
+				return;
+			pos = track.getPosition();
+			shape = new Ellipse2D.Double(pos.getX() - RADIUS, pos.getY()
 					- RADIUS, 2 * RADIUS, 2 * RADIUS);
 		}
 
+		/**
+		 * Gets the filtered position, in millimetres, or null if the ball has
+		 * never been seen
+		 */
 		public Point2D getPoint() {
 			return pos;
 		}
 
+		/** Gets the velocity in millimetres per second */
+		public Point2D getVelocity() {
+			return track.getVelocity();
+		}
+
+		/**
+		 * Gets the covariance of the position, in millimetres squared
+		 */
+		public double[][] getCovariance() {
+			return track.getCovariance(0);
+		}
+
+		/**
+		 * Gets the covariance of the velocity, in (mm/s)^2
+		 */
+		public double[][] getVelocityCovariance() {
+			return track.getCovariance(1);
+		}
+
+		/**
+		 * Gets how long the estimate has been coasting without the ball being
+		 * seen, in seconds; 0 if it was seen in the last frame
+		 */
+		public double getTimeUnseen() {
+			return track.getTimeUnseen();
+		}
+
+		/**
+		 * Gets where the ball is expected to be some seconds after the last
+		 * frame, if it rolls on as it is
+		 */
+		public Point2D predictPoint(double seconds) {
+			return track.isStarted() ? track.extrapolate(seconds) : null;
+		}
+
 		public Shape getShape() {
 			return shape;
 		}
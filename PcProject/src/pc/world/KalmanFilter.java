@@ -0,0 +1,239 @@
+package pc.world;
+
+/**
+ * A Kalman filter for one coordinate of a moving object, which is measured
+ * directly but noisily, such as the x of the ball or the heading of a robot.
+ *
+ * The state is the coordinate and its derivatives: velocity under the
+ * constant velocity model, and velocity and acceleration under the constant
+ * acceleration model. The highest derivative is assumed to change by white
+ * noise, whose spectral density is the process noise; the measurements have
+ * the measurement variance. Time steps may be of any length, so the capture
+ * timestamps of frames can be used as they are, and a missed measurement is
+ * just a prediction with no update.
+ *
+ * An angular filter wraps the difference between each measurement and its
+ * prediction into [-pi, pi], so that the estimate turns smoothly through a
+ * whole revolution rather than jumping back; the estimate itself is not
+ * wrapped.
+ */
+public class KalmanFilter {
+	/** Tracks the coordinate and its velocity */
+	public static final int CONSTANT_VELOCITY = 2;
+	/** Tracks the coordinate, its velocity and its acceleration */
+	public static final int CONSTANT_ACCELERATION = 3;
+
+	// The variance of the derivatives before anything is known about them
+	private static final double UNKNOWN_VARIANCE = 1e6;
+
+	private final int order;
+	private final double processNoise;
+	private final double measurementVariance;
+	private final boolean angular;
+
+	private final double[] state;
+	private final double[][] covariance;
+	// Scratch space, so that filtering allocates nothing
+	private final double[][] transition;
+	private final double[][] product;
+	private final double[] gain;
+	private final double[] firstRow;
+
+	private boolean initialised = false;
+
+	/**
+	 * @param order
+	 *            CONSTANT_VELOCITY or CONSTANT_ACCELERATION
+	 * @param processNoise
+	 *            The spectral density of the white noise changing the
+	 *            highest derivative, in units squared per second cubed for
+	 *            constant velocity, or per second to the fifth for constant
+	 *            acceleration
+	 * @param measurementVariance
+	 *            The variance of each measurement, in units squared
+	 * @param angular
+	 *            Whether the coordinate is an angle in radians
+	 */
+	public KalmanFilter(int order, double processNoise,
+			double measurementVariance, boolean angular) {
+		if (order != CONSTANT_VELOCITY && order != CONSTANT_ACCELERATION)
+			throw new IllegalArgumentException("Unknown order " + order);
+		this.order = order;
+		this.processNoise = processNoise;
+		this.measurementVariance = measurementVariance;
+		this.angular = angular;
+		this.state = new double[order];
+		this.covariance = new double[order][order];
+		this.transition = new double[order][order];
+		this.product = new double[order][order];
+		this.gain = new double[order];
+		this.firstRow = new double[order];
+	}
+
+	public KalmanFilter(int order, double processNoise,
+			double measurementVariance) {
+		this(order, processNoise, measurementVariance, false);
+	}
+
+	/**
+	 * Starts again from a single measurement, with the derivatives unknown
+	 */
+	public void reset(double measurement) {
+		for (int i = 0; i < this.order; i++) {
+			this.state[i] = 0;
+			for (int j = 0; j < this.order; j++)
+				this.covariance[i][j] = 0;
+			this.covariance[i][i] = UNKNOWN_VARIANCE;
+		}
+		this.state[0] = measurement;
+		this.covariance[0][0] = this.measurementVariance;
+		this.initialised = true;
+	}
+
+	/**
+	 * Whether there has been a measurement since the filter was made
+	 */
+	public boolean isInitialised() {
+		return this.initialised;
+	}
+
+	/**
+	 * Moves the estimate on in time, growing its uncertainty
+	 *
+	 * @param dt
+	 *            The time step in seconds
+	 */
+	public void predict(double dt) {
+		if (dt <= 0)
+			return;
+		int n = this.order;
+		// F: each derivative contributes its Taylor term to those below it
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++)
+				this.transition[i][j] = j < i ? 0 : taylor(dt, j - i);
+		}
+
+		for (int i = 0; i < n; i++) {
+			double sum = 0;
+			for (int j = i; j < n; j++)
+				sum += this.transition[i][j] * this.state[j];
+			this.state[i] = sum;
+		}
+
+		// P = F P F' + Q
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				double sum = 0;
+				for (int k = i; k < n; k++)
+					sum += this.transition[i][k] * this.covariance[k][j];
+				this.product[i][j] = sum;
+			}
+		}
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				double sum = 0;
+				for (int k = j; k < n; k++)
+					sum += this.product[i][k] * this.transition[j][k];
+				// Continuous white noise on the highest derivative, integrated
+				// over the step
+				int power = 2 * n - 1 - i - j;
+				this.covariance[i][j] = sum + this.processNoise
+						* Math.pow(dt, power)
+						/ (factorial(n - 1 - i) * factorial(n - 1 - j) * power);
+			}
+		}
+	}
+
+	/**
+	 * Corrects the estimate with a measurement of the coordinate
+	 */
+	public void update(double measurement) {
+		if (!this.initialised) {
+			reset(measurement);
+			return;
+		}
+		double innovation = measurement - this.state[0];
+		if (this.angular)
+			innovation = Math.IEEEremainder(innovation, 2 * Math.PI);
+		double innovationVariance = this.covariance[0][0]
+				+ this.measurementVariance;
+
+		int n = this.order;
+		for (int i = 0; i < n; i++) {
+			this.gain[i] = this.covariance[i][0] / innovationVariance;
+			this.state[i] += this.gain[i] * innovation;
+		}
+		// P = (I - K H) P, using the first row before it changes
+		System.arraycopy(this.covariance[0], 0, this.firstRow, 0, n);
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++)
+				this.covariance[i][j] -= this.gain[i] * this.firstRow[j];
+		}
+	}
+
+	/**
+	 * Sets the derivatives to zero, leaving the coordinate and the
+	 * uncertainty as they are, for an object that has not been seen for so
+	 * long that it has most likely stopped
+	 */
+	public void stop() {
+		for (int i = 1; i < this.order; i++)
+			this.state[i] = 0;
+	}
+
+	/** Gets the estimated coordinate */
+	public double getValue() {
+		return this.state[0];
+	}
+
+	/** Gets the estimated rate of change of the coordinate per second */
+	public double getVelocity() {
+		return this.state[1];
+	}
+
+	/**
+	 * Gets the estimated acceleration per second squared, which is always 0
+	 * under the constant velocity model
+	 */
+	public double getAcceleration() {
+		return this.order > 2 ? this.state[2] : 0;
+	}
+
+	/**
+	 * Gets an element of the covariance of the estimate
+	 *
+	 * @param i
+	 *            0 for the coordinate, 1 for velocity, 2 for acceleration
+	 * @param j
+	 *            As for i
+	 */
+	public double getCovariance(int i, int j) {
+		return i < this.order && j < this.order ? this.covariance[i][j] : 0;
+	}
+
+	/**
+	 * Gets where the model expects the coordinate to be after some time,
+	 * without changing the estimate
+	 *
+	 * @param dt
+	 *            The time ahead in seconds
+	 */
+	public double extrapolate(double dt) {
+		double value = 0;
+		for (int i = 0; i < this.order; i++)
+			value += this.state[i] * taylor(dt, i);
+		return value;
+	}
+
+	/** dt^k / k! */
+	private static double taylor(double dt, int k) {
+		return Math.pow(dt, k) / factorial(k);
+	}
+
+	private static int factorial(int k) {
+		int result = 1;
+		for (int i = 2; i <= k; i++)
+			result *= i;
+		return result;
+	}
+}
@@ -186,6 +186,15 @@ public class Pitch extends Observable {
 				scale * (point.getY() - getPitchCenterFrameY()));
 	}
 
+	/**
+	 * Converts a given point from millimetres to pixels.
+	 */
+	public void modelPointToFrame(Point2D point) {
+		double scale = (double) getPitchFrameWidth() / getPitchWidth();
+		point.setLocation(scale * point.getX() + getPitchCenterFrameX(),
+				scale * point.getY() + getPitchCenterFrameY());
+	}
+
 	public int getZoneDividerWidth() {
 		return zoneDividerWidth;
 	}
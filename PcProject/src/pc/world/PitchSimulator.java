@@ -0,0 +1,642 @@
+package pc.world;
+
+import java.awt.Point;
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Point2D;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import pc.comms.BrickCommServer;
+import pc.comms.EmulatedLink;
+import pc.comms.SimulatedBrick;
+import pc.vision.PitchConstants;
+import pc.vision.Position;
+import pc.vision.interfaces.WorldStateReceiver;
+import pc.world.oldmodel.MovingObject;
+import pc.world.oldmodel.WorldState;
+
+/**
+ * A simulated pitch, for trying strategies out without a pitch, robots or a
+ * camera. It stands in for both vision and the robots: the four robots are
+ * SimulatedBricks, connected to BrickCommServers over in-memory links, which
+ * carry out whatever commands the strategies send; the ball rolls, slows down
+ * and bounces off the walls and the robots, and robots catch and kick it.
+ * publish then fills in the world states as vision would after a frame.
+ *
+ * The simulation keeps its own time, which only moves on when advance is
+ * called, so it runs as fast as the strategies can decide. Before each step
+ * it waits for every command sent so far to reach its brick, so the same
+ * commands take effect at the same simulated time however fast it runs.
+ *
+ * The pitch is the Pitch's, in millimetres about its centre, with y down as
+ * in the frame: the bounds polygon, the goals and the zone dividers. We are
+ * blue and shoot right, so from the left the zones belong to our defender,
+ * their attacker, our attacker and their defender. Each robot has the
+ * attacker's RobotModel, the only one with a catcher, and is kept to its own
+ * zone. Its kicker being down closes the catcher, so the robot catches a ball
+ * in the catcher when it lowers the kicker.
+ */
+public class PitchSimulator {
+	/** How fast the rolling ball slows down, in mm/s^2 */
+	public static final double ROLLING_FRICTION = 400;
+	/** The fraction of its speed the ball keeps when it bounces */
+	public static final double RESTITUTION = 0.6;
+	/** How fast a kick at speed 100 sends the ball, in mm/s */
+	public static final double MAX_KICK_SPEED = 2500;
+	/** The longest step advance takes, in seconds */
+	public static final double MAX_STEP = 0.005;
+
+	private static final RobotModel MODEL = RobotModel.ATTACKER_ROBOT;
+
+	/**
+	 * A robot on the simulated pitch
+	 */
+	private static class Robot implements SimulatedBrick.KickListener {
+		final SimulatedBrick brick;
+		// The zone the robot is kept to, and where it starts facing
+		final double minX, maxX;
+		final double startDirection;
+		BrickCommServer server;
+		boolean wasKickerDown;
+		// Guarded by this
+		private int kick = -1;
+
+		Robot(SimulatedBrick brick, double minX, double maxX,
+				double startDirection) {
+			this.brick = brick;
+			this.minX = minX;
+			this.maxX = maxX;
+			this.startDirection = startDirection;
+			this.brick.addKickListener(this);
+		}
+
+		@Override
+		public synchronized void kicked(SimulatedBrick brick, int speed) {
+			this.kick = speed;
+		}
+
+		/**
+		 * Gets the speed of the kick since the last call, or -1 if there
+		 * wasn't one
+		 */
+		synchronized int takeKick() {
+			int speed = this.kick;
+			this.kick = -1;
+			return speed;
+		}
+
+		/**
+		 * Waits for the commands sent so far to reach the brick
+		 */
+		void settle() throws InterruptedException {
+			if (this.server == null)
+				return;
+			this.server.waitUntilSent();
+			this.brick.waitUntilIdle(this.server.getFramesSent());
+		}
+
+		// The brick has y up and headings anticlockwise, the pitch y down
+		double getX() {
+			return this.brick.getX();
+		}
+
+		double getY() {
+			return -this.brick.getY();
+		}
+
+		/** Gets the direction the robot faces in radians, as on the pitch */
+		double getDirection() {
+			return -Math.toRadians(this.brick.getHeading());
+		}
+
+		void setPose(double x, double y, double direction) {
+			this.brick.setPose(x, -y, -Math.toDegrees(direction));
+		}
+
+		double getVelocityX() {
+			return this.brick.getVelocity() * Math.cos(getDirection());
+		}
+
+		double getVelocityY() {
+			return this.brick.getVelocity() * Math.sin(getDirection());
+		}
+
+		/**
+		 * Gets the transform from the robot's plate centre, with the robot
+		 * facing -y, to the pitch, as DynamicWorldState.Robot has it
+		 */
+		AffineTransform getTransform() {
+			AffineTransform at = new AffineTransform();
+			at.translate(getX(), getY());
+			at.rotate(getDirection() + Math.PI / 2);
+			at.translate(MODEL.getPlate().getCenterX(), MODEL.getPlate()
+					.getCenterY());
+			return at;
+		}
+	}
+
+	private final Pitch pitch;
+	private final PitchConstants pitchConstants;
+	private final Robot attacker, defender, enemyAttacker, enemyDefender;
+	private final Robot[] robots;
+
+	private final WorldState worldState;
+	private final WorldState enemyWorldState;
+	private final DynamicWorldState dynamicWorldState = new DynamicWorldState();
+	private final List<WorldStateReceiver> receivers = new CopyOnWriteArrayList<WorldStateReceiver>();
+
+	private Polygon bounds;
+	private double time = 0;
+	private double matchStart = 0;
+	private int frame = 0;
+	private int goals = 0, enemyGoals = 0;
+
+	// The ball, and the robot holding it if any
+	private double ballX, ballY, ballVelocityX, ballVelocityY;
+	private Robot holder;
+
+	/**
+	 * Sets up the pitch and puts the ball with our defender. The pitch
+	 * constants are set to the pitch's walls, goals and dividers as the
+	 * camera would see them, since the strategies read them from there.
+	 */
+	public PitchSimulator(Pitch pitch, PitchConstants pitchConstants) {
+		this.pitch = pitch;
+		this.pitchConstants = pitchConstants;
+		double halfWidth = pitch.getPitchWidth() / 2.0;
+		double offset = pitch.getZoneDividerOffset();
+		this.defender = new Robot(newKeeper(), -halfWidth, -offset, 0);
+		this.enemyAttacker = new Robot(newStriker(), -offset, 0, Math.PI);
+		this.attacker = new Robot(newStriker(), 0, offset, 0);
+		this.enemyDefender = new Robot(newKeeper(), offset, halfWidth,
+				Math.PI);
+		this.robots = new Robot[] { this.defender, this.enemyAttacker,
+				this.attacker, this.enemyDefender };
+
+		this.worldState = new WorldState(pitch);
+		this.worldState.weAreBlue = true;
+		this.worldState.weAreShootingRight = true;
+		this.enemyWorldState = new WorldState(pitch);
+		this.enemyWorldState.weAreBlue = false;
+		this.enemyWorldState.weAreShootingRight = false;
+		reset(true);
+	}
+
+	private static SimulatedBrick newStriker() {
+		return new SimulatedBrick(SimulatedBrick.STRIKER_TRACK_WIDTH);
+	}
+
+	private static SimulatedBrick newKeeper() {
+		return new SimulatedBrick(SimulatedBrick.KEEPER_TRACK_WIDTH,
+				SimulatedBrick.KEEPER_TRAVEL_RATIO,
+				SimulatedBrick.KEEPER_ROTATE_RATIO);
+	}
+
+	/**
+	 * Connects the robots to the servers that send them commands. Call this
+	 * once; a robot with no server never moves.
+	 */
+	public void connect(BrickCommServer attacker, BrickCommServer defender,
+			BrickCommServer enemyAttacker, BrickCommServer enemyDefender) {
+		connect(this.attacker, attacker);
+		connect(this.defender, defender);
+		connect(this.enemyAttacker, enemyAttacker);
+		connect(this.enemyDefender, enemyDefender);
+	}
+
+	private void connect(Robot robot, BrickCommServer server) {
+		if (server == null)
+			return;
+		EmulatedLink link = EmulatedLink.inMemory();
+		robot.brick.connect(link);
+		robot.server = server;
+		server.connect(link.getPcEnd());
+	}
+
+	/**
+	 * Disconnects the robots and stops their bricks
+	 */
+	public void close() {
+		for (Robot robot : this.robots) {
+			if (robot.server != null)
+				robot.server.close();
+			robot.brick.close();
+		}
+	}
+
+	public void addWorldStateReceiver(WorldStateReceiver receiver) {
+		this.receivers.add(receiver);
+	}
+
+	public void removeWorldStateReceiver(WorldStateReceiver receiver) {
+		this.receivers.remove(receiver);
+	}
+
+	/**
+	 * Starts a new match: the score goes back to nothing and the robots and
+	 * ball to their places, with the ball given to one of the defenders. Also
+	 * picks up any changes to the pitch.
+	 *
+	 * @param ourBall
+	 *            Whether our defender has the ball
+	 */
+	public void reset(boolean ourBall) {
+		this.bounds = this.pitch.getBoundsPolygon();
+		projectPitch();
+		this.matchStart = this.time;
+		this.goals = 0;
+		this.enemyGoals = 0;
+		kickOff(ourBall);
+	}
+
+	/**
+	 * Sets the pitch constants to the pitch as the camera would see it
+	 */
+	private void projectPitch() {
+		double halfWidth = this.pitch.getPitchWidth() / 2.0;
+		double halfGoal = this.pitch.getGoalHeight() / 2.0;
+		double offset = this.pitch.getZoneDividerOffset();
+		this.pitchConstants.setDividers(new int[] {
+				(int) toFrame(-offset, 0).getX(), (int) toFrame(0, 0).getX(),
+				(int) toFrame(offset, 0).getX() });
+		this.pitchConstants.setLeftGoal(new float[] {
+				(float) toFrame(-halfWidth, -halfGoal).getY(),
+				(float) toFrame(-halfWidth, 0).getY(),
+				(float) toFrame(-halfWidth, halfGoal).getY() });
+		this.pitchConstants.setRightGoal(new float[] {
+				(float) toFrame(halfWidth, -halfGoal).getY(),
+				(float) toFrame(halfWidth, 0).getY(),
+				(float) toFrame(halfWidth, halfGoal).getY() });
+		Position[] outline = new Position[this.bounds.npoints];
+		for (int i = 0; i < outline.length; i++) {
+			Point2D corner = toFrame(this.bounds.xpoints[i],
+					this.bounds.ypoints[i]);
+			outline[i] = new Position((int) corner.getX(),
+					(int) corner.getY());
+		}
+		PitchConstants.setPitchOutline(outline);
+
+		for (WorldState state : new WorldState[] { this.worldState,
+				this.enemyWorldState }) {
+			state.dividers = this.pitchConstants.getDividers();
+			state.leftGoal = this.pitchConstants.getLeftGoal();
+			state.rightGoal = this.pitchConstants.getRightGoal();
+		}
+	}
+
+	/**
+	 * Puts every robot in the middle of its zone, and the ball beside one of
+	 * the defenders, as the referee does after a goal
+	 */
+	private void kickOff(boolean ourBall) {
+		for (Robot robot : this.robots)
+			robot.setPose((robot.minX + robot.maxX) / 2, 0,
+					robot.startDirection);
+		Robot defender = ourBall ? this.defender : this.enemyDefender;
+		this.holder = null;
+		this.ballX = (defender.minX + defender.maxX) / 2;
+		this.ballY = this.pitch.getPitchHeight() / 4.0;
+		this.ballVelocityX = 0;
+		this.ballVelocityY = 0;
+	}
+
+	/**
+	 * Moves the simulation on, in steps of at most MAX_STEP
+	 *
+	 * @param seconds
+	 *            The simulated time to pass
+	 */
+	public void advance(double seconds) throws InterruptedException {
+		while (seconds > 1e-9) {
+			double dt = Math.min(seconds, MAX_STEP);
+			step(dt);
+			seconds -= dt;
+		}
+	}
+
+	private void step(double dt) throws InterruptedException {
+		for (Robot robot : this.robots)
+			robot.settle();
+
+		for (Robot robot : this.robots) {
+			double x = robot.getX(), y = robot.getY();
+			double direction = robot.getDirection();
+			robot.brick.step(dt);
+			// Walls and zone lines stop the robot where it was
+			if (!isAllowed(robot))
+				robot.setPose(x, y, direction);
+		}
+
+		for (Robot robot : this.robots) {
+			int kick = robot.takeKick();
+			if (kick >= 0 && (this.holder == robot || inCatcher(robot)))
+				kick(robot, kick);
+			boolean kickerDown = robot.brick.isKickerDown();
+			if (kickerDown && !robot.wasKickerDown && this.holder == null
+					&& inCatcher(robot))
+				this.holder = robot;
+			else if (!kickerDown && this.holder == robot)
+				this.holder = null;
+			robot.wasKickerDown = kickerDown;
+		}
+
+		if (this.holder != null) {
+			Point2D held = catcherCentre(this.holder);
+			this.ballX = held.getX();
+			this.ballY = held.getY();
+			this.ballVelocityX = this.holder.getVelocityX();
+			this.ballVelocityY = this.holder.getVelocityY();
+		} else {
+			roll(dt);
+			for (Robot robot : this.robots)
+				bounceOffRobot(robot);
+			bounceOffWalls();
+			checkGoal();
+		}
+		this.time += dt;
+	}
+
+	private boolean isAllowed(Robot robot) {
+		if (robot.getX() < robot.minX || robot.getX() > robot.maxX)
+			return false;
+		Rectangle extents = MODEL.getExtents();
+		double[] corners = { extents.getMinX(), extents.getMinY(),
+				extents.getMaxX(), extents.getMinY(), extents.getMaxX(),
+				extents.getMaxY(), extents.getMinX(), extents.getMaxY() };
+		robot.getTransform().transform(corners, 0, corners, 0, 4);
+		for (int i = 0; i < corners.length; i += 2)
+			if (!this.bounds.contains(corners[i], corners[i + 1]))
+				return false;
+		return true;
+	}
+
+	private boolean inCatcher(Robot robot) {
+		Point2D local = toRobot(robot, this.ballX, this.ballY);
+		return MODEL.getCatcher().contains(local.getX(), local.getY());
+	}
+
+	private static Point2D catcherCentre(Robot robot) {
+		Rectangle catcher = MODEL.getCatcher();
+		return robot.getTransform().transform(
+				new Point2D.Double(catcher.getCenterX(), catcher.getCenterY()),
+				null);
+	}
+
+	private static Point2D toRobot(Robot robot, double x, double y) {
+		try {
+			return robot.getTransform().inverseTransform(
+					new Point2D.Double(x, y), null);
+		} catch (NoninvertibleTransformException e) {
+			// Rotations and translations always have inverses
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private void kick(Robot robot, int speed) {
+		this.holder = null;
+		double ballSpeed = speed / 100.0 * MAX_KICK_SPEED;
+		this.ballVelocityX = robot.getVelocityX() + ballSpeed
+				* Math.cos(robot.getDirection());
+		this.ballVelocityY = robot.getVelocityY() + ballSpeed
+				* Math.sin(robot.getDirection());
+	}
+
+	private void roll(double dt) {
+		double speed = Math.hypot(this.ballVelocityX, this.ballVelocityY);
+		double slowed = Math.max(0, speed - ROLLING_FRICTION * dt);
+		if (speed > 0) {
+			this.ballVelocityX *= slowed / speed;
+			this.ballVelocityY *= slowed / speed;
+		}
+		this.ballX += this.ballVelocityX * dt;
+		this.ballY += this.ballVelocityY * dt;
+	}
+
+	/**
+	 * Pushes the ball out of a robot it has run into, or that has run into
+	 * it, and bounces it off. The catcher is open while the kicker is up, and
+	 * the ball can roll into it as far as its middle.
+	 */
+	private void bounceOffRobot(Robot robot) {
+		Point2D local = toRobot(robot, this.ballX, this.ballY);
+		double x = local.getX(), y = local.getY();
+		double r = Pitch.BALL_RADIUS;
+		Rectangle extents = MODEL.getExtents();
+		Rectangle catcher = MODEL.getCatcher();
+		if (x <= extents.getMinX() - r || x >= extents.getMaxX() + r
+				|| y <= extents.getMinY() - r || y >= extents.getMaxY() + r)
+			return;
+
+		// Each side the ball can leave by, as an outward normal and how far
+		// the ball has to go
+		double normalX, normalY, depth;
+		if (!robot.brick.isKickerDown() && x > catcher.getMinX()
+				&& x < catcher.getMaxX() && y < catcher.getCenterY()) {
+			return;
+		} else if (!robot.brick.isKickerDown() && x > catcher.getMinX()
+				&& x < catcher.getMaxX() && y < catcher.getMaxY()) {
+			normalX = 0;
+			normalY = -1;
+			depth = y - catcher.getCenterY();
+		} else {
+			double[] depths = { x - (extents.getMinX() - r),
+					extents.getMaxX() + r - x, y - (extents.getMinY() - r),
+					extents.getMaxY() + r - y };
+			int side = 0;
+			for (int i = 1; i < depths.length; i++)
+				if (depths[i] < depths[side])
+					side = i;
+			normalX = side == 0 ? -1 : side == 1 ? 1 : 0;
+			normalY = side == 2 ? -1 : side == 3 ? 1 : 0;
+			depth = depths[side];
+		}
+
+		AffineTransform transform = robot.getTransform();
+		Point2D out = transform.transform(new Point2D.Double(x + normalX
+				* depth, y + normalY * depth), null);
+		this.ballX = out.getX();
+		this.ballY = out.getY();
+		Point2D normal = transform.deltaTransform(new Point2D.Double(normalX,
+				normalY), null);
+		bounce(normal.getX(), normal.getY(), robot.getVelocityX(),
+				robot.getVelocityY());
+	}
+
+	/**
+	 * Bounces the ball off a surface moving at a velocity, if the ball is
+	 * moving into it
+	 *
+	 * @param normalX
+	 *            The unit normal pointing out of the surface towards the ball
+	 */
+	private void bounce(double normalX, double normalY, double surfaceX,
+			double surfaceY) {
+		double relativeX = this.ballVelocityX - surfaceX;
+		double relativeY = this.ballVelocityY - surfaceY;
+		double towards = relativeX * normalX + relativeY * normalY;
+		if (towards >= 0)
+			return;
+		this.ballVelocityX -= (1 + RESTITUTION) * towards * normalX;
+		this.ballVelocityY -= (1 + RESTITUTION) * towards * normalY;
+	}
+
+	/**
+	 * Bounces the ball off the edges of the bounds polygon, except where the
+	 * goals are
+	 */
+	private void bounceOffWalls() {
+		double halfWidth = this.pitch.getPitchWidth() / 2.0;
+		double halfGoal = this.pitch.getGoalHeight() / 2.0;
+		double r = Pitch.BALL_RADIUS;
+		int n = this.bounds.npoints;
+		for (int i = 0; i < n; i++) {
+			double x1 = this.bounds.xpoints[i], y1 = this.bounds.ypoints[i];
+			double x2 = this.bounds.xpoints[(i + 1) % n];
+			double y2 = this.bounds.ypoints[(i + 1) % n];
+			double length = Math.hypot(x2 - x1, y2 - y1);
+			// The polygon is convex and centred on the origin, so the normal
+			// facing it points in
+			double normalX = (y1 - y2) / length, normalY = (x2 - x1) / length;
+			if (normalX * x1 + normalY * y1 > 0) {
+				normalX = -normalX;
+				normalY = -normalY;
+			}
+			double distance = (this.ballX - x1) * normalX
+					+ (this.ballY - y1) * normalY;
+			double along = ((this.ballX - x1) * (x2 - x1) + (this.ballY - y1)
+					* (y2 - y1))
+					/ (length * length);
+			if (distance >= r || along < 0 || along > 1)
+				continue;
+			if (x1 == x2 && Math.abs(x1) >= halfWidth
+					&& Math.abs(this.ballY) < halfGoal)
+				continue;
+			this.ballX += (r - distance) * normalX;
+			this.ballY += (r - distance) * normalY;
+			bounce(normalX, normalY, 0, 0);
+		}
+	}
+
+	/**
+	 * Counts a goal once the ball is all the way over a goal line, and kicks
+	 * off again
+	 */
+	private void checkGoal() {
+		double line = this.pitch.getPitchWidth() / 2.0 + Pitch.BALL_RADIUS;
+		if (this.ballX > line) {
+			this.goals++;
+			kickOff(false);
+		} else if (this.ballX < -line) {
+			this.enemyGoals++;
+			kickOff(true);
+		}
+	}
+
+	private Point2D toFrame(double x, double y) {
+		Point2D point = new Point2D.Double(x, y);
+		this.pitch.modelPointToFrame(point);
+		return point;
+	}
+
+	private MovingObject toMovingObject(Robot robot) {
+		Point2D position = toFrame(robot.getX(), robot.getY());
+		float angle = (float) Math.toDegrees(robot.getDirection());
+		return new MovingObject((float) position.getX(),
+				(float) position.getY(), angle < 0 ? angle + 360 : angle);
+	}
+
+	private static DirectedPoint toDirectedPoint(Robot robot) {
+		double direction = robot.getDirection();
+		return new DirectedPoint((int) robot.getX(), (int) robot.getY(),
+				direction < 0 ? direction + 2 * Math.PI : direction);
+	}
+
+	/**
+	 * Updates the world states from the simulation, as Vision does after a
+	 * frame, and passes our snapshot to the receivers. The camera always
+	 * sees the robots and the ball, even in a catcher.
+	 *
+	 * @return our snapshot
+	 */
+	public WorldSnapshot publish() {
+		this.frame++;
+		// In microseconds, as if the simulated time were the nanoTime clock
+		long timestamp = (long) (this.time * 1e6);
+		Point2D ball = toFrame(this.ballX, this.ballY);
+		update(this.worldState, this.attacker, this.defender,
+				this.enemyAttacker, this.enemyDefender, ball);
+		update(this.enemyWorldState, this.enemyAttacker, this.enemyDefender,
+				this.attacker, this.defender, ball);
+
+		StaticWorldState staticWorldState = new StaticWorldState();
+		staticWorldState.setBall(new Point((int) this.ballX, (int) this.ballY));
+		staticWorldState.setAttacker(toDirectedPoint(this.attacker));
+		staticWorldState.setDefender(toDirectedPoint(this.defender));
+		staticWorldState.setEnemyAttacker(toDirectedPoint(this.enemyAttacker));
+		staticWorldState.setEnemyDefender(toDirectedPoint(this.enemyDefender));
+		this.dynamicWorldState.pushState(staticWorldState, timestamp);
+
+		this.enemyWorldState.publishSnapshot(this.frame, timestamp, null);
+		WorldSnapshot snapshot = this.worldState.publishSnapshot(this.frame,
+				timestamp, null);
+		for (WorldStateReceiver receiver : this.receivers)
+			receiver.sendWorldState(snapshot);
+		return snapshot;
+	}
+
+	private void update(WorldState state, Robot attacker, Robot defender,
+			Robot enemyAttacker, Robot enemyDefender, Point2D ball) {
+		state.setAttackerRobot(toMovingObject(attacker));
+		state.setDefenderRobot(toMovingObject(defender));
+		state.setEnemyAttackerRobot(toMovingObject(enemyAttacker));
+		state.setEnemyDefenderRobot(toMovingObject(enemyDefender));
+		state.setBall(new MovingObject((float) ball.getX(), (float) ball
+				.getY()));
+		state.ballNotOnPitch = false;
+		state.attackerNotOnPitch = false;
+		state.defenderNotOnPitch = false;
+		state.enemyAttackerNotOnPitch = false;
+		state.enemyDefenderNotOnPitch = false;
+	}
+
+	/**
+	 * Gets our world state, which publish updates
+	 */
+	public WorldState getWorldState() {
+		return this.worldState;
+	}
+
+	/**
+	 * Gets the world state as the other team sees it, shooting left
+	 */
+	public WorldState getEnemyWorldState() {
+		return this.enemyWorldState;
+	}
+
+	public DynamicWorldState getDynamicWorldState() {
+		return this.dynamicWorldState;
+	}
+
+	/** Gets the simulated time since the simulator started, in seconds */
+	public double getTime() {
+		return this.time;
+	}
+
+	/** Gets the simulated time since the match started, in seconds */
+	public double getMatchTime() {
+		return this.time - this.matchStart;
+	}
+
+	/** Gets the goals we have scored this match */
+	public int getGoals() {
+		return this.goals;
+	}
+
+	/** Gets the goals the other team has scored this match */
+	public int getEnemyGoals() {
+		return this.enemyGoals;
+	}
+}
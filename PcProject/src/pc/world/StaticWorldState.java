@@ -2,6 +2,10 @@ package pc.world;
 
 import java.awt.Point;
 
+/**
+ * Where the ball and robots were found in a single frame, in millimetres on
+ * the pitch model. Anything that wasn't found is null.
+ */
 public class StaticWorldState {
 	private Point ball;
 	private DirectedPoint attacker, defender;
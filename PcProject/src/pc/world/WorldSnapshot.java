@@ -0,0 +1,118 @@
+package pc.world;
+
+import pc.logging.FrameTiming;
+import pc.world.oldmodel.MovingObject;
+import pc.world.oldmodel.WorldState;
+
+/**
+ * An unchanging copy of the WorldState as it was after a single frame, which
+ * can be read from any thread without locking. Vision makes one after
+ * every frame and publishes it through WorldState.getSnapshot, as well as
+ * passing it to every WorldStateReceiver.
+ *
+ * The fields are named as in WorldState and MovingObject so that code
+ * written against those reads the same. The arrays are copies made for the
+ * snapshot and must not be modified.
+ */
+public class WorldSnapshot {
+	/**
+	 * The position and orientation of the ball or a robot
+	 */
+	public static class Body {
+		public final float x;
+		public final float y;
+		public final float orientation_angle;
+
+		public Body(float x, float y, float orientation_angle) {
+			this.x = x;
+			this.y = y;
+			this.orientation_angle = orientation_angle;
+		}
+
+		static Body of(MovingObject object) {
+			return object == null ? null : new Body(object.x, object.y,
+					object.orientation_angle);
+		}
+	}
+
+	/** Counts up by one for every snapshot published by a WorldState */
+	public final long version;
+	/** The counter of the frame the snapshot was made from */
+	public final int frame;
+	/**
+	 * When the frame was captured, in microseconds on the System.nanoTime
+	 * clock
+	 */
+	public final long timestamp;
+
+	private final Body ball;
+	private final Body attackerRobot, defenderRobot;
+	private final Body enemyAttackerRobot, enemyDefenderRobot;
+	private final FrameTiming frameTiming;
+
+	public final boolean ballNotOnPitch;
+	public final boolean attackerNotOnPitch, defenderNotOnPitch;
+	public final boolean enemyAttackerNotOnPitch, enemyDefenderNotOnPitch;
+	public final boolean weAreBlue, weAreShootingRight;
+	public final int[] dividers;
+	public final float[] leftGoal;
+	public final float[] rightGoal;
+
+	/**
+	 * Copies the current state of a WorldState. Only call this while nothing
+	 * is changing the WorldState.
+	 */
+	public WorldSnapshot(WorldState worldState, long version, int frame,
+			long timestamp, FrameTiming frameTiming) {
+		this.version = version;
+		this.frame = frame;
+		this.timestamp = timestamp;
+		this.frameTiming = frameTiming;
+		this.ball = Body.of(worldState.getBall());
+		this.attackerRobot = Body.of(worldState.getAttackerRobot());
+		this.defenderRobot = Body.of(worldState.getDefenderRobot());
+		this.enemyAttackerRobot = Body.of(worldState.getEnemyAttackerRobot());
+		this.enemyDefenderRobot = Body.of(worldState.getEnemyDefenderRobot());
+		this.ballNotOnPitch = worldState.ballNotOnPitch;
+		this.attackerNotOnPitch = worldState.attackerNotOnPitch;
+		this.defenderNotOnPitch = worldState.defenderNotOnPitch;
+		this.enemyAttackerNotOnPitch = worldState.enemyAttackerNotOnPitch;
+		this.enemyDefenderNotOnPitch = worldState.enemyDefenderNotOnPitch;
+		this.weAreBlue = worldState.weAreBlue;
+		this.weAreShootingRight = worldState.weAreShootingRight;
+		this.dividers = worldState.dividers == null ? null
+				: worldState.dividers.clone();
+		this.leftGoal = worldState.leftGoal == null ? null : worldState.leftGoal
+				.clone();
+		this.rightGoal = worldState.rightGoal == null ? null
+				: worldState.rightGoal.clone();
+	}
+
+	public Body getBall() {
+		return this.ball;
+	}
+
+	public Body getAttackerRobot() {
+		return this.attackerRobot;
+	}
+
+	public Body getDefenderRobot() {
+		return this.defenderRobot;
+	}
+
+	public Body getEnemyAttackerRobot() {
+		return this.enemyAttackerRobot;
+	}
+
+	public Body getEnemyDefenderRobot() {
+		return this.enemyDefenderRobot;
+	}
+
+	/**
+	 * Gets the timing of the frame the snapshot was made from, or null if it
+	 * wasn't made from a frame
+	 */
+	public FrameTiming getFrameTiming() {
+		return this.frameTiming;
+	}
+}
@@ -8,8 +8,12 @@ package pc.world.oldmodel;
 
 import java.awt.Point;
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+import pc.logging.FrameTiming;
 import pc.prediction.*;
 import pc.world.Pitch;
+import pc.world.WorldSnapshot;
 
 public class WorldState {
 	
@@ -48,6 +52,10 @@ public class WorldState {
 
 	//Oracle for prediction
 	private Oracle predictor = null;
+
+	// The state as it was after the last frame, for other threads to read
+	private final AtomicReference<WorldSnapshot> snapshot = new AtomicReference<WorldSnapshot>();
+	private long snapshotVersion = 0;
 	/**
 	 * Added for legacy purposes
 	 * */
@@ -184,6 +192,37 @@ public class WorldState {
 	}
 
 
+	/**
+	 * Makes a snapshot of the state as it is now and publishes it to
+	 * getSnapshot. Called by vision once it has finished updating the state
+	 * from a frame, and only from that thread.
+	 * 
+	 * @param frame
+	 *            The counter of the frame the state was updated from
+	 * @param timestamp
+	 *            When the frame was captured, in microseconds on the
+	 *            System.nanoTime clock
+	 * @param frameTiming
+	 *            The timing of the frame
+	 * @return the snapshot
+	 */
+	public WorldSnapshot publishSnapshot(int frame, long timestamp,
+			FrameTiming frameTiming) {
+		WorldSnapshot published = new WorldSnapshot(this, ++snapshotVersion,
+				frame, timestamp, frameTiming);
+		this.snapshot.set(published);
+		return published;
+	}
+
+	/**
+	 * Gets the snapshot of the state after the latest frame, or null if no
+	 * frame has been processed. Can be called from any thread without
+	 * locking.
+	 */
+	public WorldSnapshot getSnapshot() {
+		return this.snapshot.get();
+	}
+
 	public ArrayList<Point2> getBallPositionHistory() {
 		return ballPositionHistory;
 	}
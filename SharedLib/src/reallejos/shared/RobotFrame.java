@@ -0,0 +1,140 @@
+package reallejos.shared;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * The wire format for commands sent from the PC to the brick.
+ *
+ * Commands are sent in frames, and each frame is flushed on its own. A frame
+ * starts with a two byte header: the format version, then the length of the
+ * rest of the frame in bytes (0-255). The rest of the frame is one or more
+ * commands, each a one byte RobotOpcode followed by its arguments:
+ *
+ * <pre>
+ * KICK            speed (byte, 0-100)
+ * ROTATE_BY       angle (short, degrees), speed (fixed), immediate return (byte)
+ * ARC_FORWARDS    radius (short), distance (short), speed (short)
+ * TRAVEL          distance (short), speed (short)
+ * TESTINT         int
+ * TESTDOUBLE      double
+ * TESTINTANDDOUBLE int, double
+ * SEQUENCE        length (byte)
+ * WAIT            time (short, milliseconds)
+ * STATUS          see RobotStatus
+ * </pre>
+ *
+ * Every other opcode has no arguments. Shorts are big-endian and saturate
+ * rather than wrap; fixed point values are shorts in tenths.
+ *
+ * A SEQUENCE is followed by its steps: length bytes of commands, counted in
+ * the length of the frame too, which the brick carries out one after the
+ * other as a single manoeuvre. Motions in a sequence finish before the next
+ * step starts, whatever the immediate return of a ROTATE_BY says.
+ *
+ * The brick replies in frames of the same format holding STATUS commands,
+ * laid out as described in RobotStatus.
+ *
+ * The first byte of the old format, an int opcode, is always 0, so a brick
+ * running this format can tell when it is talking to an old PC and the
+ * other way round.
+ */
+public class RobotFrame {
+	public static final int VERSION = 2;
+	public static final int HEADER_SIZE = 2;
+	public static final int MAX_LENGTH = 255;
+	public static final int FIXED_POINT_SCALE = 10;
+
+	private RobotFrame() {
+	}
+
+	/**
+	 * Gets the size in bytes of the arguments following an opcode, or -1 if
+	 * the opcode is unknown
+	 */
+	public static int argumentSize(int opcode) {
+		switch (opcode) {
+		case RobotOpcode.STOP:
+		case RobotOpcode.FORWARDS:
+		case RobotOpcode.BACKWARDS:
+		case RobotOpcode.ROTATE_LEFT:
+		case RobotOpcode.ROTATE_RIGHT:
+		case RobotOpcode.QUIT:
+		case RobotOpcode.CATCH:
+		case RobotOpcode.RESET_CATCHER:
+		case RobotOpcode.TEST:
+			return 0;
+		case RobotOpcode.KICK:
+		case RobotOpcode.SEQUENCE:
+			return 1;
+		case RobotOpcode.WAIT:
+			return 2;
+		case RobotOpcode.ROTATE_BY:
+			return 5;
+		case RobotOpcode.ARC_FORWARDS:
+			return 6;
+		case RobotOpcode.TRAVEL:
+			return 4;
+		case RobotOpcode.TESTINT:
+			return 4;
+		case RobotOpcode.TESTDOUBLE:
+			return 8;
+		case RobotOpcode.TESTINTANDDOUBLE:
+			return 12;
+		case RobotOpcode.STATUS:
+			return RobotStatus.SIZE;
+		default:
+			return -1;
+		}
+	}
+
+	/**
+	 * Writes the header of a frame, which must be followed by exactly length
+	 * bytes of commands
+	 */
+	public static void writeHeader(DataOutputStream output, int length)
+			throws IOException {
+		if (length < 0 || length > MAX_LENGTH)
+			throw new IllegalArgumentException("Frame too long: " + length);
+		output.writeByte(VERSION);
+		output.writeByte(length);
+	}
+
+	/**
+	 * Reads the header of a frame
+	 *
+	 * @return the number of bytes of commands that follow
+	 * @throws IOException
+	 *             if the frame is from a different version of the format
+	 */
+	public static int readHeader(DataInputStream input) throws IOException {
+		int version = input.readUnsignedByte();
+		if (version != VERSION)
+			throw new IOException("Wrong frame version " + version);
+		return input.readUnsignedByte();
+	}
+
+	/**
+	 * Writes a value as a short, rounding it and saturating at the ends of
+	 * the range
+	 */
+	public static void writeShort(DataOutputStream output, double value)
+			throws IOException {
+		long rounded = Math.round(value);
+		if (rounded > Short.MAX_VALUE)
+			rounded = Short.MAX_VALUE;
+		else if (rounded < Short.MIN_VALUE)
+			rounded = Short.MIN_VALUE;
+		output.writeShort((int) rounded);
+	}
+
+	public static void writeFixed(DataOutputStream output, double value)
+			throws IOException {
+		writeShort(output, value * FIXED_POINT_SCALE);
+	}
+
+	public static double readFixed(DataInputStream input) throws IOException {
+		return input.readShort() / (double) FIXED_POINT_SCALE;
+	}
+}
@@ -17,4 +17,7 @@ public class RobotOpcode {
 	public static final int TESTINT = 15;
 	public static final int TESTDOUBLE = 16;
 	public static final int TESTINTANDDOUBLE = 17;
+	public static final int SEQUENCE = 18;
+	public static final int WAIT = 19;
+	public static final int STATUS = 20;
 }
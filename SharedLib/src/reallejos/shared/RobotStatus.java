@@ -0,0 +1,105 @@
+package reallejos.shared;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * The state of the brick, which it sends to the PC after carrying out each
+ * frame of commands and every so often in between.
+ *
+ * The arguments of a STATUS command are:
+ *
+ * <pre>
+ * acknowledged    short, the number of frames carried out, modulo 2^16
+ * x, y            short each, odometry position in millimetres
+ * heading         fixed, odometry heading in degrees
+ * flags           byte, MOVING | KICKER_DOWN | FAILED
+ * battery         short, millivolts
+ * </pre>
+ *
+ * FAILED is set if the brick couldn't make sense of the last frame it
+ * acknowledged, such as one with an unknown opcode, so carried out none or
+ * only the start of it. The frame is still counted, so that the frames
+ * after it are acknowledged by their own numbers.
+ *
+ * Odometry starts from zero when the brick starts up.
+ */
+public class RobotStatus {
+	public static final int SIZE = 11;
+
+	private static final int MOVING = 1;
+	private static final int KICKER_DOWN = 2;
+	private static final int FAILED = 4;
+
+	public final int acknowledged;
+	public final float x, y, heading;
+	public final boolean moving, kickerDown;
+	/** Whether the last acknowledged frame couldn't be carried out */
+	public final boolean failed;
+	public final int batteryMillivolts;
+
+	public RobotStatus(int acknowledged, float x, float y, float heading,
+			boolean moving, boolean kickerDown, int batteryMillivolts,
+			boolean failed) {
+		this.acknowledged = acknowledged & 0xFFFF;
+		this.x = x;
+		this.y = y;
+		this.heading = heading;
+		this.moving = moving;
+		this.kickerDown = kickerDown;
+		this.batteryMillivolts = batteryMillivolts;
+		this.failed = failed;
+	}
+
+	/**
+	 * Checks whether a frame has been carried out
+	 *
+	 * @param frame
+	 *            The number of frames sent up to and including the frame
+	 */
+	public boolean hasAcknowledged(int frame) {
+		// Frame numbers wrap, but never get more than 2^15 ahead
+		return ((this.acknowledged - frame) & 0xFFFF) < 0x8000;
+	}
+
+	/**
+	 * Writes the status as a STATUS command
+	 */
+	public void write(DataOutputStream output) throws IOException {
+		output.writeByte(RobotOpcode.STATUS);
+		output.writeShort(this.acknowledged);
+		RobotFrame.writeShort(output, this.x);
+		RobotFrame.writeShort(output, this.y);
+		RobotFrame.writeFixed(output, this.heading);
+		output.writeByte((this.moving ? MOVING : 0)
+				| (this.kickerDown ? KICKER_DOWN : 0)
+				| (this.failed ? FAILED : 0));
+		RobotFrame.writeShort(output, this.batteryMillivolts);
+	}
+
+	/**
+	 * Reads the arguments of a STATUS command whose opcode has just been read
+	 */
+	public static RobotStatus read(DataInputStream input) throws IOException {
+		int acknowledged = input.readUnsignedShort();
+		float x = input.readShort();
+		float y = input.readShort();
+		float heading = (float) RobotFrame.readFixed(input);
+		int flags = input.readUnsignedByte();
+		int battery = input.readShort();
+		return new RobotStatus(acknowledged, x, y, heading,
+				(flags & MOVING) != 0, (flags & KICKER_DOWN) != 0, battery,
+				(flags & FAILED) != 0);
+	}
+
+	@Override
+	public String toString() {
+		return "acknowledged " + this.acknowledged
+				+ (this.failed ? " (failed)" : "") + ", pose (" + this.x
+				+ ", " + this.y + ", " + this.heading + "), "
+				+ (this.moving ? "moving" : "stopped") + ", kicker "
+				+ (this.kickerDown ? "down" : "up") + ", battery "
+				+ this.batteryMillivolts + "mV";
+	}
+}